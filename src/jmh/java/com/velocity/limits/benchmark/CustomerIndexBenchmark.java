@@ -0,0 +1,94 @@
+package com.velocity.limits.benchmark;
+
+import com.velocity.limits.util.CustomerDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up a customer's index in a {@link CustomerDictionary} against looking it up in
+ * the {@code ConcurrentHashMap<String, ?>} per-customer state used to be kept in, with
+ * uniformly probed customer ids parsed afresh, as they are from each request.
+ * <p>
+ * Setup prints the heap each structure retains per million customers, measured as the
+ * used heap after a full GC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CustomerIndexBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000000", "10000000"})
+    public int customers;
+
+    private CustomerDictionary dictionary;
+    private ConcurrentHashMap<String, Integer> map;
+    private char[][] probes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        long before = usedHeap();
+        dictionary = new CustomerDictionary();
+        for (int i = 0; i < customers; i++) {
+            dictionary.intern(customerId(i));
+        }
+        long dictionaryBytes = usedHeap() - before;
+
+        before = usedHeap();
+        map = new ConcurrentHashMap<>();
+        for (int i = 0; i < customers; i++) {
+            map.put(customerId(i), i);
+        }
+        long mapBytes = usedHeap() - before;
+
+        System.out.printf("%nPer million customers: dictionary %d MiB (%d MiB reported), map %d MiB%n",
+                dictionaryBytes * 1_000_000 / customers >> 20,
+                dictionary.memoryBytes() * 1_000_000 / customers >> 20, mapBytes * 1_000_000 / customers >> 20);
+
+        Random random = new Random(42);
+        probes = new char[PROBES][];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = customerId(random.nextInt(customers)).toCharArray();
+        }
+    }
+
+    @Benchmark
+    public int dictionaryIndexOf() {
+        return dictionary.indexOf(new String(probes[next++ & (PROBES - 1)]));
+    }
+
+    @Benchmark
+    public Integer concurrentHashMapGet() {
+        return map.get(new String(probes[next++ & (PROBES - 1)]));
+    }
+
+    private static String customerId(int i) {
+        return "customer-" + i;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
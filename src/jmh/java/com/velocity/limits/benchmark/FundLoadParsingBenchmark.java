@@ -0,0 +1,80 @@
+package com.velocity.limits.benchmark;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.config.JacksonConfig;
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.util.AmountDeserializer;
+import com.velocity.limits.util.FundLoadLineParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing cost of a single fund load line: the Jackson path with {@link AmountDeserializer}
+ * and the {@code @JsonFormat} timestamp, against the byte-level {@link FundLoadLineParser}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class FundLoadParsingBenchmark {
+
+    private static final int LINES = 1024;
+
+    private final ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+    private final AmountDeserializer amountDeserializer = new AmountDeserializer();
+
+    private String[] lines;
+    private byte[][] lineBytes;
+    private byte[][] amountBytes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticLoads loads = new SyntheticLoads(10_000, 1.0, 42);
+        lines = new String[LINES];
+        lineBytes = new byte[LINES][];
+        amountBytes = new byte[LINES][];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = loads.nextLine();
+            lineBytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+            long cents = loads.nextCents();
+            amountBytes[i] = ("\"$" + cents / 100 + "." + String.format("%02d", cents % 100) + "\"")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal amountDeserializer() throws IOException {
+        try (JsonParser parser = objectMapper.createParser(amountBytes[next++ & (LINES - 1)])) {
+            parser.nextToken();
+            return amountDeserializer.deserialize(parser, null);
+        }
+    }
+
+    @Benchmark
+    public FundLoadRequest jacksonReadValue() throws IOException {
+        return objectMapper.readValue(lines[next++ & (LINES - 1)], FundLoadRequest.class);
+    }
+
+    @Benchmark
+    public FundLoadRequest fastPathParse() {
+        byte[] line = lineBytes[next++ & (LINES - 1)];
+        return FundLoadLineParser.parse(line, 0, line.length);
+    }
+}
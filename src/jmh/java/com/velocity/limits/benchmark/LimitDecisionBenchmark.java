@@ -0,0 +1,113 @@
+package com.velocity.limits.benchmark;
+
+import com.velocity.limits.dto.LoadPrecheck;
+import com.velocity.limits.dto.LoadPrecheckRequest;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.rules.RuleDefinition;
+import com.velocity.limits.rules.RuleMetric;
+import com.velocity.limits.rules.RulePlan;
+import com.velocity.limits.rules.WindowType;
+import com.velocity.limits.service.FundLoadService;
+import com.velocity.limits.service.LoadAggregateStore;
+import com.velocity.limits.util.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link FundLoadService#isLoadAccepted} and of the what-if
+ * {@link FundLoadService#precheck} as a function of how many loads each
+ * customer already has, with the default calendar rules alone and with rolling windows added.
+ * <p>
+ * History is recorded straight into the {@link LoadAggregateStore}, so no database is
+ * involved. Probed customers follow a skewed distribution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class LimitDecisionBenchmark {
+
+    private static final int CUSTOMERS = 1_000;
+    private static final int PROBES = 4096;
+
+    @Param({"1", "100", "10000"})
+    public int historyDepth;
+
+    @Param({"calendar", "rolling"})
+    public String rules;
+
+    private FundLoadService fundLoadService;
+    private FundLoad[] probes;
+    private LoadPrecheckRequest[] precheckProbes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<RuleDefinition> definitions = new ArrayList<>(List.of(
+                new RuleDefinition("daily-count", RuleMetric.COUNT, WindowType.DAY, 0, "3"),
+                new RuleDefinition("daily-amount", RuleMetric.AMOUNT, WindowType.DAY, 0, "5000"),
+                new RuleDefinition("weekly-count", RuleMetric.COUNT, WindowType.WEEK, 0, "3"),
+                new RuleDefinition("weekly-amount", RuleMetric.AMOUNT, WindowType.WEEK, 0, "20000")));
+        if (rules.equals("rolling")) {
+            definitions.add(new RuleDefinition("rolling-24h", RuleMetric.AMOUNT, WindowType.ROLLING, 24, "5000"));
+            definitions.add(new RuleDefinition("rolling-7d", RuleMetric.AMOUNT, WindowType.ROLLING, 168, "20000"));
+        }
+        RulePlan rulePlan = RulePlan.compile(definitions);
+        LoadAggregateStore store = new LoadAggregateStore(rulePlan);
+        fundLoadService = new FundLoadService();
+        fundLoadService.setFundLoadStore(Mockito.mock(FundLoadStore.class));
+        fundLoadService.setLoadAggregateStore(store);
+        fundLoadService.setFundLoadMetrics(new FundLoadMetrics(new SimpleMeterRegistry(), rulePlan));
+
+        SyntheticLoads loads = new SyntheticLoads(CUSTOMERS, 1.0, 42);
+        for (int customer = 0; customer < CUSTOMERS; customer++) {
+            for (int i = 0; i < historyDepth; i++) {
+                store.record(String.valueOf(customer), loads.nextTime(), loads.nextCents());
+            }
+        }
+        probes = new FundLoad[PROBES];
+        precheckProbes = new LoadPrecheckRequest[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            FundLoad probe = new FundLoad();
+            probe.setId("probe-" + i);
+            probe.setCustomerId(loads.nextCustomerId());
+            probe.setLoadAmount(Money.fromCents(loads.nextCents()));
+            probe.setTime(loads.nextTime());
+            probes[i] = probe;
+            LoadPrecheckRequest precheckProbe = new LoadPrecheckRequest();
+            precheckProbe.setCustomer_id(probe.getCustomerId());
+            precheckProbe.setLoad_amount(probe.getLoadAmount());
+            precheckProbe.setTime(probe.getTime());
+            precheckProbes[i] = precheckProbe;
+        }
+    }
+
+    @Benchmark
+    public boolean isLoadAccepted() {
+        return fundLoadService.isLoadAccepted(probes[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public LoadPrecheck precheck() {
+        return fundLoadService.precheck(precheckProbes[next++ & (PROBES - 1)]);
+    }
+}
@@ -0,0 +1,114 @@
+package com.velocity.limits.benchmark;
+
+import com.velocity.limits.LimitsApplication;
+import com.velocity.limits.controller.FundsController;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.repository.FundLoadRepository;
+import com.velocity.limits.service.LoadAggregateStore;
+import com.velocity.limits.service.LoadIdFilter;
+import jakarta.servlet.ServletInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-file ingest through {@link FundsController#loadFromFile}: parsing, partitioned
+ * processing, batched inserts and the response list, for synthetic files of 10k to 10M
+ * lines with a skewed customer distribution.
+ * <p>
+ * Each invocation processes the file once against an emptied database and aggregate store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LoadFromFileBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int lines;
+
+    private ConfigurableApplicationContext context;
+    private FundsController fundsController;
+    private FundLoadRepository fundLoadRepository;
+    private LoadAggregateStore loadAggregateStore;
+    private LoadIdFilter loadIdFilter;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = new SpringApplicationBuilder(LimitsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN")
+                .run();
+        fundsController = context.getBean(FundsController.class);
+        fundLoadRepository = context.getBean(FundLoadRepository.class);
+        loadAggregateStore = context.getBean(LoadAggregateStore.class);
+        loadIdFilter = context.getBean(LoadIdFilter.class);
+        file = new SyntheticLoads(Math.max(100, lines / 20), 1.0, 42).writeFile(lines);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        fundLoadRepository.deleteAllInBatch();
+        loadAggregateStore.rebuild();
+        loadIdFilter.seed();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<List<FundStatus>> loadFromFile() {
+        return fundsController.loadFromFile(new FileUploadRequest(file));
+    }
+
+    /**
+     * An upload request whose body is a file on disk, so large uploads are not held in memory.
+     */
+    private static final class FileUploadRequest extends MockHttpServletRequest {
+
+        private final Path path;
+
+        FileUploadRequest(Path path) {
+            super("POST", "/api/v1/fund-loads/loadFromFile");
+            this.path = path;
+            setContentType("text/plain");
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            try {
+                return new DelegatingServletInputStream(Files.newInputStream(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
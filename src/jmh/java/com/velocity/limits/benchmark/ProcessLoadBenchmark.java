@@ -0,0 +1,106 @@
+package com.velocity.limits.benchmark;
+
+import com.velocity.limits.LimitsApplication;
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.service.FundLoadService;
+import com.velocity.limits.util.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end {@link FundLoadService#processLoad} against each persistence backend:
+ * rule evaluation, the persist of accepted loads and the aggregate update.
+ * {@code processLoad} makes every accepted load durable on its own;
+ * {@code processLoadBatched} writes loads in the background and flushes the store
+ * once per {@value #BATCH_SIZE} loads, as file uploads do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProcessLoadBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"jpa", "wal"})
+    public String persistence;
+
+    private Path walDirectory;
+    private ConfigurableApplicationContext context;
+    private FundLoadService fundLoadService;
+    private FundLoadStore fundLoadStore;
+    private SyntheticLoads loads;
+    private long nextId;
+
+    @Setup
+    public void setUp() throws IOException {
+        walDirectory = Files.createTempDirectory("fund-load-wal");
+        context = new SpringApplicationBuilder(LimitsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN")
+                .run("--fund.load.persistence=" + persistence, "--fund.load.wal.directory=" + walDirectory);
+        fundLoadService = context.getBean(FundLoadService.class);
+        fundLoadStore = context.getBean(FundLoadStore.class);
+        loads = new SyntheticLoads(10_000, 1.0, 42);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> paths = Files.walk(walDirectory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public FundStatus processLoad() {
+        return fundLoadService.processLoad(nextRequest());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int processLoadBatched() {
+        int accepted = 0;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            accepted += fundLoadService.processLoadBatched(nextRequest()).isAccepted() ? 1 : 0;
+        }
+        fundLoadStore.flush();
+        return accepted;
+    }
+
+    private FundLoadRequest nextRequest() {
+        FundLoadRequest request = new FundLoadRequest();
+        request.setId(String.valueOf(nextId++));
+        request.setCustomer_id(loads.nextCustomerId());
+        request.setLoad_amount(Money.fromCents(loads.nextCents()));
+        request.setTime(loads.nextTime());
+        return request;
+    }
+}
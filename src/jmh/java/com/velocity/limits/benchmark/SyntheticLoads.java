@@ -0,0 +1,97 @@
+package com.velocity.limits.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates synthetic fund load lines with a skewed customer distribution.
+ * <p>
+ * Customers are drawn from a Zipf distribution, so a few customers send most of the
+ * loads, as in production. Load times advance by a few minutes per line from
+ * 2000-01-01, and amounts are uniform between $1 and $3000.
+ */
+public class SyntheticLoads {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private final Random random;
+    private final double[] cumulative;
+    private LocalDateTime time = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private long nextId;
+
+    /**
+     * @param customers The number of distinct customers.
+     * @param skew      The Zipf exponent; {@code 0} is uniform, around {@code 1} is heavily skewed.
+     * @param seed      The random seed.
+     */
+    public SyntheticLoads(int customers, double skew, long seed) {
+        this.random = new Random(seed);
+        this.cumulative = new double[customers];
+        double total = 0;
+        for (int i = 0; i < customers; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < customers; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    /**
+     * @return A customer ID drawn from the distribution.
+     */
+    public String nextCustomerId() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return String.valueOf(index < 0 ? -index - 1 : index);
+    }
+
+    /**
+     * @return An amount in cents between $1 and $3000.
+     */
+    public long nextCents() {
+        return 100 + random.nextInt(300_000);
+    }
+
+    /**
+     * @return The time of the next load, a few minutes after the previous one.
+     */
+    public LocalDateTime nextTime() {
+        time = time.plusSeconds(random.nextInt(600));
+        return time;
+    }
+
+    /**
+     * @return The next fund load as a JSON line, without the line terminator.
+     */
+    public String nextLine() {
+        long cents = nextCents();
+        return "{\"id\":\"" + nextId++ + "\",\"customer_id\":\"" + nextCustomerId()
+                + "\",\"load_amount\":\"$" + cents / 100 + "." + String.format("%02d", cents % 100)
+                + "\",\"time\":\"" + TIME_FORMAT.format(nextTime()) + "\"}";
+    }
+
+    /**
+     * Writes a newline-delimited file of synthetic fund loads.
+     *
+     * @param lines The number of lines.
+     * @return The temporary file, deleted on exit.
+     */
+    public Path writeFile(int lines) throws IOException {
+        Path file = Files.createTempFile("fund-loads-" + lines, ".txt");
+        file.toFile().deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write(nextLine());
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,95 @@
+package com.velocity.limits.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.config.JacksonConfig;
+import com.velocity.limits.util.FundLoadFileConverter;
+import com.velocity.limits.util.FundLoadRequestSource;
+import com.velocity.limits.util.UploadFormat;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest throughput of each {@link UploadFormat}: reading every fund load request of an
+ * in-memory upload of {@value #LINES} synthetic loads, as {@code loadFromFile} does
+ * before deciding them.
+ * <p>
+ * Besides files per second, the {@code ndjsonMegabytes} counter reports the rate in
+ * megabytes of the equivalent plain NDJSON, comparable across formats, and
+ * {@code uploadMegabytes} the rate in megabytes actually uploaded in the format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UploadFormatBenchmark {
+
+    private static final int LINES = 200_000;
+
+    @Param({"NDJSON", "GZIP", "ZSTD", "BINARY"})
+    public UploadFormat format;
+
+    private final ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+
+    private byte[] upload;
+    private long ndjsonBytes;
+
+    /**
+     * Megabytes read per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Megabytes {
+        public double ndjsonMegabytes;
+        public double uploadMegabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ndjsonMegabytes = 0;
+            uploadMegabytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Path ndjson = new SyntheticLoads(10_000, 1.0, 42).writeFile(LINES);
+        Path converted = Files.createTempFile("fund-loads", "." + format.name().toLowerCase());
+        converted.toFile().deleteOnExit();
+        FundLoadFileConverter.convert(ndjson, UploadFormat.NDJSON, converted, format);
+        ndjsonBytes = Files.size(ndjson);
+        upload = Files.readAllBytes(converted);
+        System.out.printf("%n%s upload: %d bytes, %.1f%% of NDJSON%n", format, upload.length,
+                100.0 * upload.length / ndjsonBytes);
+    }
+
+    @Benchmark
+    public int read(Megabytes megabytes) throws IOException {
+        int loads = 0;
+        try (FundLoadRequestSource source = format.open(new ByteArrayInputStream(upload), objectMapper)) {
+            while (source.next() != null) {
+                loads++;
+            }
+        }
+        megabytes.ndjsonMegabytes += ndjsonBytes / 1e6;
+        megabytes.uploadMegabytes += upload.length / 1e6;
+        return loads;
+    }
+}
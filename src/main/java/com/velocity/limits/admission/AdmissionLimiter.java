@@ -0,0 +1,315 @@
+package com.velocity.limits.admission;
+
+import com.velocity.limits.exception.OverloadedException;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.metrics.FundLoadMetrics.Stage;
+import com.velocity.limits.persistence.ConnectionPermits;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for the requests that decide fund loads: bounds how many run at
+ * once, queues a bounded number more, and turns the rest away at once with a 429 or
+ * 503 and a {@code Retry-After}, so that a slow database sheds load instead of piling
+ * requests up on the request threads until they time out.
+ * <p>
+ * The concurrency limit adapts to the store latency sampled every
+ * {@code fund.load.admission.adjust-interval-ms}: the highest of the average repository
+ * call through the {@link ConnectionPermits}, used by the JPA persistence, and the
+ * average {@link Stage#PERSIST persist} and {@link Stage#FLUSH flush}, timed with either
+ * persistence. When it is above {@code fund.load.admission.target-latency-ms} the limit
+ * is cut by a quarter, down to {@code min-limit}, and otherwise, if requests were held
+ * back by it, raised by one, up to {@code max-limit}.
+ * <p>
+ * Requests deciding a single load have their own {@link Lane} and queue, and
+ * {@code fund.load.admission.single-reserve} permits of the limit that bulk requests
+ * never take, so single loads keep being decided while files are processed. Queued
+ * single-load requests are also woken first when a permit is released. A request
+ * waits at most {@code fund.load.admission.queue-timeout-ms}; one arriving at a full
+ * queue is rejected with 429, and one that waited in vain with 503.
+ */
+@Component
+public class AdmissionLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionLimiter.class);
+
+    /**
+     * The lanes requests are admitted in.
+     */
+    public enum Lane {
+        /** Requests deciding one fund load. */
+        SINGLE,
+        /** Requests deciding a file or batch of fund loads, or a shard forwarded from one. */
+        BULK
+    }
+
+    /**
+     * A held admission, released when closed.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Lane lane;
+        private boolean released;
+
+        private Permit(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                if (lane != null) {
+                    release(lane);
+                }
+            }
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition[] turns = {lock.newCondition(), lock.newCondition()};
+    private final int[] inFlight = new int[Lane.values().length];
+    private final int[] queued = new int[Lane.values().length];
+
+    /**
+     * The current concurrency limit, shared by both lanes.
+     */
+    private int limit;
+
+    /**
+     * Whether a request was held back by the limit since the last adjustment.
+     */
+    private boolean saturated;
+
+    @Autowired
+    private ConnectionPermits connectionPermits;
+
+    @Autowired(required = false)
+    private FundLoadMetrics fundLoadMetrics;
+
+    @Value("${fund.load.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${fund.load.admission.min-limit:2}")
+    private int minLimit;
+
+    @Value("${fund.load.admission.max-limit:64}")
+    private int maxLimit;
+
+    @Value("${fund.load.admission.single-reserve:4}")
+    private int singleReserve;
+
+    @Value("${fund.load.admission.target-latency-ms:100}")
+    private long targetLatencyMillis;
+
+    @Value("${fund.load.admission.adjust-interval-ms:500}")
+    private long adjustIntervalMillis;
+
+    @Value("${fund.load.admission.single-queue:256}")
+    private int singleQueue;
+
+    @Value("${fund.load.admission.bulk-queue:16}")
+    private int bulkQueue;
+
+    @Value("${fund.load.admission.queue-timeout-ms:1000}")
+    private long queueTimeoutMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (minLimit <= 0 || maxLimit < minLimit || singleReserve < 0 || singleQueue < 0 || bulkQueue < 0) {
+            throw new IllegalArgumentException("Invalid admission limits: min " + minLimit + ", max " + maxLimit
+                    + ", single reserve " + singleReserve + ", queues " + singleQueue + "/" + bulkQueue);
+        }
+        limit = maxLimit;
+        if (fundLoadMetrics != null) {
+            fundLoadMetrics.monitor(this);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admission-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjust, adjustIntervalMillis, adjustIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Admits a request, waiting in its lane's queue if the limit is reached.
+     *
+     * @param lane The lane of the request.
+     * @return The permit, to be closed when the request is done.
+     * @throws OverloadedException If the lane's queue is full, or the request was not admitted in time.
+     */
+    public Permit acquire(Lane lane) {
+        if (!enabled) {
+            return new Permit(null);
+        }
+        int laneIndex = lane.ordinal();
+        lock.lock();
+        try {
+            if (queued[laneIndex] == 0 && admits(lane)) {
+                inFlight[laneIndex]++;
+                return new Permit(lane);
+            }
+            saturated = true;
+            if (queued[laneIndex] >= (lane == Lane.SINGLE ? singleQueue : bulkQueue)) {
+                throw reject(lane, HttpStatus.TOO_MANY_REQUESTS, "queue is full");
+            }
+            queued[laneIndex]++;
+            try {
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+                while (!admits(lane)) {
+                    if (remainingNanos <= 0) {
+                        throw reject(lane, HttpStatus.SERVICE_UNAVAILABLE, "not admitted within "
+                                + queueTimeoutMillis + " ms");
+                    }
+                    remainingNanos = turns[laneIndex].awaitNanos(remainingNanos);
+                }
+                inFlight[laneIndex]++;
+                return new Permit(lane);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject(lane, HttpStatus.SERVICE_UNAVAILABLE, "interrupted while queued");
+            } finally {
+                queued[laneIndex]--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The current concurrency limit.
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param lane The lane.
+     * @return The number of requests of the lane being processed.
+     */
+    public int inFlight(Lane lane) {
+        lock.lock();
+        try {
+            return inFlight[lane.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param lane The lane.
+     * @return The number of requests of the lane waiting to be admitted.
+     */
+    public int queued(Lane lane) {
+        lock.lock();
+        try {
+            return queued[lane.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the limit by the store latency of the last interval.
+     */
+    void adjust() {
+        long latencyNanos = connectionPermits.sampleLatencyNanos();
+        if (fundLoadMetrics != null) {
+            latencyNanos = Math.max(latencyNanos, Math.max(fundLoadMetrics.sampleAverageNanos(Stage.PERSIST),
+                    fundLoadMetrics.sampleAverageNanos(Stage.FLUSH)));
+        }
+        lock.lock();
+        try {
+            int previous = limit;
+            if (latencyNanos > TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis)) {
+                limit = Math.max(minLimit, Math.min(limit - 1, limit * 3 / 4));
+            } else if (saturated && limit < maxLimit) {
+                limit++;
+                signalWaiters(true);
+            }
+            saturated = false;
+            if (limit != previous) {
+                logger.debug("Admission limit {} -> {} at store latency {} us", previous, limit,
+                        TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Lane lane) {
+        lock.lock();
+        try {
+            inFlight[lane.ordinal()]--;
+            signalWaiters(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes queued requests, single-load ones first.
+     */
+    private void signalWaiters(boolean all) {
+        for (Lane lane : Lane.values()) {
+            if (queued[lane.ordinal()] > 0) {
+                if (all) {
+                    turns[lane.ordinal()].signalAll();
+                } else {
+                    turns[lane.ordinal()].signal();
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the limit leaves room for another request of the lane; bulk requests
+     * leave the single-load reserve free.
+     */
+    private boolean admits(Lane lane) {
+        int total = inFlight[Lane.SINGLE.ordinal()] + inFlight[Lane.BULK.ordinal()];
+        if (lane == Lane.SINGLE) {
+            return total < limit;
+        }
+        return total < limit && inFlight[Lane.BULK.ordinal()] < Math.max(1, limit - singleReserve);
+    }
+
+    private OverloadedException reject(Lane lane, HttpStatus status, String reason) {
+        if (fundLoadMetrics != null) {
+            fundLoadMetrics.admissionRejected(lane, status);
+        }
+        long retryAfterSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(queueTimeoutMillis + 999));
+        return new OverloadedException(status, retryAfterSeconds,
+                "Over capacity: " + lane.name().toLowerCase() + " request " + reason);
+    }
+}
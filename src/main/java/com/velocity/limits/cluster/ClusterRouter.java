@@ -0,0 +1,319 @@
+package com.velocity.limits.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.dto.LoadPrecheck;
+import com.velocity.limits.dto.LoadPrecheckRequest;
+import com.velocity.limits.exception.MisroutedException;
+import com.velocity.limits.exception.OverloadedException;
+import com.velocity.limits.service.FundLoadBatchProcessor;
+import com.velocity.limits.service.FundLoadService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes fund load requests to the node owning their customer.
+ * <p>
+ * Limits are only safe to decide where a customer's aggregates live, so in cluster mode
+ * each customer is owned by exactly one node, chosen by a {@link ConsistentHashRing}
+ * over {@code fund.load.cluster.nodes} (base URLs, the same list on every node). A node
+ * splits a batch by owner: its own customers are processed by the
+ * {@link FundLoadBatchProcessor}, while the others are posted to
+ * {@value #SHARD_PATH} on their owners concurrently. The statuses are merged back
+ * into input order. Each node keeps its own database, so nodes share nothing.
+ * What-if prechecks are routed the same way, to {@value #PRECHECK_SHARD_PATH}. A node
+ * receiving a customer it does not own answers 421 Misdirected Request.
+ * <p>
+ * Without {@code fund.load.cluster.nodes} the node is standalone and processes every
+ * batch itself.
+ */
+@Service
+public class ClusterRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRouter.class);
+
+    /**
+     * Path of the endpoint taking a batch of the receiving node's own customers.
+     */
+    public static final String SHARD_PATH = "/api/v1/fund-loads/shard";
+
+    /**
+     * Path of the endpoint taking prechecks of the receiving node's own customers.
+     */
+    public static final String PRECHECK_SHARD_PATH = "/api/v1/fund-loads/precheck/shard";
+
+    private static final TypeReference<List<FundStatus>> STATUS_LIST = new TypeReference<>() {
+    };
+
+    private static final TypeReference<List<LoadPrecheck>> PRECHECK_LIST = new TypeReference<>() {
+    };
+
+    @Autowired
+    private FundLoadBatchProcessor fundLoadBatchProcessor;
+
+    @Autowired
+    private FundLoadService fundLoadService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Base URLs of every node, comma separated; empty for a standalone node.
+     */
+    @Value("${fund.load.cluster.nodes:}")
+    private List<String> nodes;
+
+    /**
+     * Base URL of this node, as listed in {@code fund.load.cluster.nodes}.
+     */
+    @Value("${fund.load.cluster.self:}")
+    private String self;
+
+    @Value("${fund.load.cluster.virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${fund.load.cluster.timeout-ms:60000}")
+    private long timeoutMillis;
+
+    private ConsistentHashRing ring;
+
+    private ExecutorService httpExecutor;
+
+    private HttpClient httpClient;
+
+    @PostConstruct
+    public void start() {
+        List<String> members = nodes.stream().map(String::trim).filter(node -> !node.isEmpty()).toList();
+        if (members.isEmpty()) {
+            return;
+        }
+        if (!members.contains(self)) {
+            throw new IllegalStateException("fund.load.cluster.self " + self + " is not one of the cluster nodes " + members);
+        }
+        ring = new ConsistentHashRing(members, virtualNodes);
+        AtomicInteger threadCount = new AtomicInteger();
+        httpExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-forward-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            // Not the web application loader of the request thread starting it: the web
+            // server stops before stop() ends these threads
+            thread.setContextClassLoader(ClusterRouter.class.getClassLoader());
+            return thread;
+        });
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .executor(httpExecutor)
+                .build();
+        logger.info("Node {} joined a cluster of {}", self, ring.nodes());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (httpExecutor != null) {
+            httpExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return {@code true} if the node is part of a cluster.
+     */
+    public boolean isClustered() {
+        return ring != null;
+    }
+
+    /**
+     * Decides the given fund load requests, each on the node owning its customer.
+     *
+     * @param fundLoadRequests The requests, in input order.
+     * @return The status of each request, in the same order as the requests.
+     */
+    public List<FundStatus> process(List<FundLoadRequest> fundLoadRequests) {
+        if (isClustered()) {
+            // Refused before any part is forwarded; a local batch is checked as it is processed
+            fundLoadBatchProcessor.checkIds(fundLoadRequests);
+        }
+        return route(fundLoadRequests, FundLoadRequest::getCustomer_id, fundLoadBatchProcessor::process,
+                SHARD_PATH, STATUS_LIST);
+    }
+
+    /**
+     * Answers what-if queries, each on the node owning its customer.
+     *
+     * @param precheckRequests The queries.
+     * @return The answer to each query, in the same order as the queries.
+     */
+    public List<LoadPrecheck> precheck(List<LoadPrecheckRequest> precheckRequests) {
+        return route(precheckRequests, LoadPrecheckRequest::getCustomer_id, this::precheckLocally,
+                PRECHECK_SHARD_PATH, PRECHECK_LIST);
+    }
+
+    /**
+     * Decides fund load requests forwarded by another node, which must all be of
+     * customers this node owns.
+     *
+     * @param fundLoadRequests The requests, in input order.
+     * @return The status of each request, in the same order as the requests.
+     */
+    public List<FundStatus> processOwned(List<FundLoadRequest> fundLoadRequests) {
+        fundLoadRequests.forEach(fundLoadRequest -> checkOwned(fundLoadRequest.getCustomer_id()));
+        return fundLoadBatchProcessor.process(fundLoadRequests);
+    }
+
+    /**
+     * Answers what-if queries forwarded by another node, which must all be of customers
+     * this node owns.
+     *
+     * @param precheckRequests The queries.
+     * @return The answer to each query, in the same order as the queries.
+     */
+    public List<LoadPrecheck> precheckOwned(List<LoadPrecheckRequest> precheckRequests) {
+        precheckRequests.forEach(precheckRequest -> checkOwned(precheckRequest.getCustomer_id()));
+        return precheckLocally(precheckRequests);
+    }
+
+    private List<LoadPrecheck> precheckLocally(List<LoadPrecheckRequest> precheckRequests) {
+        List<LoadPrecheck> prechecks = new ArrayList<>(precheckRequests.size());
+        for (LoadPrecheckRequest precheckRequest : precheckRequests) {
+            prechecks.add(fundLoadService.precheck(precheckRequest));
+        }
+        return prechecks;
+    }
+
+    private void checkOwned(String customerId) {
+        if (ring != null) {
+            String owner = ring.owner(customerId);
+            if (!owner.equals(self)) {
+                throw new MisroutedException(MisroutedException.MISDIRECTED_REQUEST,
+                        "Customer " + customerId + " is owned by " + owner + ", not " + self);
+            }
+        }
+    }
+
+    /**
+     * Handles each request on the node owning its customer: the local ones with the
+     * given handler, the others posted to the path on their owners concurrently.
+     *
+     * @return The result of each request, in the same order as the requests.
+     */
+    private <Q, R> List<R> route(List<Q> requests, Function<Q, String> customerId, Function<List<Q>, List<R>> local,
+                                 String path, TypeReference<List<R>> resultType) {
+        if (ring == null) {
+            return local.apply(requests);
+        }
+
+        // 1. Split the input positions by owning node.
+        Map<String, List<Integer>> positionsByOwner = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            positionsByOwner.computeIfAbsent(ring.owner(customerId.apply(requests.get(i))),
+                    owner -> new ArrayList<>()).add(i);
+        }
+
+        // 2. Send every remote part, then handle the local part while they are answered.
+        Map<String, CompletableFuture<List<R>>> remoteParts = new HashMap<>();
+        positionsByOwner.forEach((owner, positions) -> {
+            if (!owner.equals(self)) {
+                remoteParts.put(owner, forward(owner, path, select(requests, positions), resultType));
+            }
+        });
+        Object[] results = new Object[requests.size()];
+        List<Integer> localPositions = positionsByOwner.get(self);
+        if (localPositions != null) {
+            place(local.apply(select(requests, localPositions)), localPositions, results);
+        }
+
+        // 3. Merge the remote results into their input positions.
+        remoteParts.forEach((owner, part) -> place(join(part), positionsByOwner.get(owner), results));
+        @SuppressWarnings("unchecked")
+        List<R> merged = (List<R>) Arrays.asList(results);
+        return merged;
+    }
+
+    private <Q, R> CompletableFuture<List<R>> forward(String owner, String path, List<Q> requests,
+                                                      TypeReference<List<R>> resultType) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(requests);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(owner + path))
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            HttpStatus status = HttpStatus.resolve(response.statusCode());
+            if (status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.SERVICE_UNAVAILABLE) {
+                // Turned away by the owner's admission control: pass its answer on to the client
+                long retryAfterSeconds = response.headers().firstValueAsLong(HttpHeaders.RETRY_AFTER).orElse(1);
+                throw new OverloadedException(status, retryAfterSeconds, "Node " + owner + " is over capacity");
+            }
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Node " + owner + " failed to handle " + requests.size()
+                        + " requests to " + path + " with status " + response.statusCode());
+            }
+            try {
+                return objectMapper.readValue(response.body(), resultType);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static <Q> List<Q> select(List<Q> requests, List<Integer> positions) {
+        List<Q> selected = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            selected.add(requests.get(position));
+        }
+        return selected;
+    }
+
+    private static void place(List<?> partResults, List<Integer> positions, Object[] results) {
+        for (int i = 0; i < positions.size(); i++) {
+            results[positions.get(i)] = partResults.get(i);
+        }
+    }
+
+    /**
+     * Waits for a forwarded part, rethrowing its failure unchecked.
+     */
+    private static <R> List<R> join(CompletableFuture<List<R>> part) {
+        try {
+            return part.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to forward fund loads", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.velocity.limits.cluster;
+
+import com.velocity.limits.util.Hashing;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns keys to nodes by consistent hashing.
+ * <p>
+ * Each node is placed at {@code virtualNodes} points on a 64-bit ring, and a key is
+ * owned by the node of the first point at or after the key's hash, wrapping around.
+ * Every node computes the same owner from the same node list, in any order, and adding
+ * or removing a node only moves the keys of the points next to its own.
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * @param nodes        The node names, unique.
+     * @param virtualNodes The number of ring points per node.
+     */
+    public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Virtual node count must be positive: " + virtualNodes);
+        }
+        this.nodes = nodes.stream().sorted().toList();
+        long[][] ring = new long[this.nodes.size() * virtualNodes][];
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                ring[node * virtualNodes + point] =
+                        new long[]{Hashing.hash64(this.nodes.get(node) + "#" + point), node};
+            }
+        }
+        Arrays.sort(ring, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[ring.length];
+        this.owners = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            owners[i] = (int) ring[i][1];
+        }
+    }
+
+    /**
+     * @return The node names, sorted.
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the node owning a key.
+     *
+     * @param key The key, such as a customer ID.
+     * @return The owning node.
+     */
+    public String owner(String key) {
+        int index = Arrays.binarySearch(points, Hashing.hash64(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return nodes.get(owners[index == points.length ? 0 : index]);
+    }
+}
@@ -0,0 +1,26 @@
+package com.velocity.limits.config;
+
+import com.velocity.limits.rules.RuleDefinition;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Velocity rules declared under {@code limits.rules} in the application configuration.
+ * <p>
+ * The rules are compiled once at startup into a
+ * {@link com.velocity.limits.rules.RulePlan}; see {@link RuleConfig}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "limits")
+public class LimitProperties {
+
+    /**
+     * The rules, in the order they are evaluated.
+     */
+    private List<RuleDefinition> rules = new ArrayList<>();
+}
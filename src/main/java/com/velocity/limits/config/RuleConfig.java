@@ -0,0 +1,23 @@
+package com.velocity.limits.config;
+
+import com.velocity.limits.rules.RulePlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RuleConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleConfig.class);
+
+    @Bean
+    public RulePlan rulePlan(LimitProperties limitProperties) {
+        if (limitProperties.getRules().isEmpty()) {
+            throw new IllegalStateException("No velocity rules configured under limits.rules");
+        }
+        RulePlan rulePlan = RulePlan.compile(limitProperties.getRules());
+        logger.info("Compiled {} velocity rules over {} windows", rulePlan.ruleCount(), rulePlan.windowCount());
+        return rulePlan;
+    }
+}
@@ -1,27 +1,55 @@
 package com.velocity.limits.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.velocity.limits.admission.AdmissionLimiter;
+import com.velocity.limits.admission.AdmissionLimiter.Lane;
+import com.velocity.limits.admission.AdmissionLimiter.Permit;
+import com.velocity.limits.cluster.ClusterRouter;
 import com.velocity.limits.dto.FundLoadRequest;
 import com.velocity.limits.dto.FundStatus;
-import com.velocity.limits.service.FundLoadService;
+import com.velocity.limits.dto.LoadPrecheck;
+import com.velocity.limits.dto.LoadPrecheckRequest;
+import com.velocity.limits.exception.MisroutedException;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.metrics.FundLoadMetrics.Stage;
+import com.velocity.limits.service.BulkReplayProcessor;
+import com.velocity.limits.util.FundLoadRequestSource;
+import com.velocity.limits.util.MultipartUpload;
+import com.velocity.limits.util.UploadFormat;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * REST controller for handling fund load operations.
+ * <p>
+ * Uploaded loads are decided through the {@link ClusterRouter}, which processes them
+ * locally on a standalone node and on the owner of each customer in a cluster.
+ * Every endpoint deciding loads is admitted by the {@link AdmissionLimiter} first, in
+ * the lane of its size, and answered with 429 or 503 when the service is over capacity.
+ * Prechecks are served from memory and are not admission controlled.
+ * <p>
+ * Uploaded files are read from the request body as it arrives, through
+ * {@link MultipartUpload}, rather than spooled by the container first, and are limited
+ * to {@code fund.load.upload.max-bytes}; a larger upload is answered with 413.
  */
 @RestController
 @RequestMapping("/api/v1/fund-loads")
@@ -29,43 +57,264 @@ public class FundsController {
 
     private static final Logger logger = LoggerFactory.getLogger(FundsController.class);
     @Autowired
-    private FundLoadService fundLoadService;
+    private ClusterRouter clusterRouter;
+
+    @Autowired
+    private BulkReplayProcessor bulkReplayProcessor;
+
+    @Autowired
+    private AdmissionLimiter admissionLimiter;
 
     @Autowired
     private ObjectMapper objectMapper; // Inject ObjectMapper here
 
+    @Autowired
+    private FundLoadMetrics fundLoadMetrics;
+
+    @Value("${fund.load.stream.chunk-size:1000}")
+    private int streamChunkSize;
+
+    @Value("${fund.load.upload.max-bytes:10737418240}")
+    private long maxUploadBytes;
+
+    private ObjectWriter statusWriter;
+
+    @PostConstruct
+    void init() {
+        // Streamed statuses are flushed once per chunk rather than after every value
+        statusWriter = objectMapper.writerFor(FundStatus.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Endpoint to decide a single fund load, admitted in the single-load lane so that
+     * file uploads do not hold it back.
+     *
+     * @param fundLoadRequest The fund load request.
+     * @return The status of the load.
+     */
+    @PostMapping
+    public ResponseEntity<FundStatus> load(@RequestBody FundLoadRequest fundLoadRequest) {
+        try (Permit permit = admissionLimiter.acquire(Lane.SINGLE)) {
+            long processStart = System.nanoTime();
+            FundStatus fundStatus = clusterRouter.process(List.of(fundLoadRequest)).get(0);
+            fundLoadMetrics.record(Stage.PROCESS, processStart);
+            return ResponseEntity.ok(fundStatus);
+        }
+    }
+
     /**
      * Endpoint to process fund load requests from a file.
+     * <p>
+     * The file is NDJSON, gzip- or zstd-compressed NDJSON, or the binary columnar format,
+     * selected by the Content-Type of the file part (see {@link UploadFormat}).
      *
-     * @param file The multipart file containing fund load data in JSON format.
-     * @throws IOException If an I/O exception occurs during file processing.
+     * @param request The request, whose body is a multipart upload with a {@code file} part, or the file itself.
      */
     @PostMapping("/loadFromFile")
-    public ResponseEntity<List<FundStatus>> loadFromFile(MultipartFile file)  {
+    public ResponseEntity<List<FundStatus>> loadFromFile(HttpServletRequest request)  {
+        try (Permit permit = admissionLimiter.acquire(Lane.BULK)) {
+            return ResponseEntity.ok(decideFile(request));
+        }
+    }
+
+    /**
+     * Reads every fund load request of an uploaded file and decides them.
+     */
+    private List<FundStatus> decideFile(HttpServletRequest request) {
 
         // 1. Initialize a list to store fund load requests.
         List<FundLoadRequest> fundLoadRequests = new ArrayList<>();
 
         // 2. Read the file content and convert each line to FundLoadRequest objects.
-        try (InputStream inputStream = file.getInputStream();
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+        long parseStart = System.nanoTime();
+        try (FundLoadRequestSource reader = openUpload(request)) {
 
-            String line;
+            FundLoadRequest fundLoadRequest;
 
-            while ((line = reader.readLine()) != null) {
-                FundLoadRequest fundLoadRequest = objectMapper.readValue(line, FundLoadRequest.class);
+            while ((fundLoadRequest = reader.next()) != null) {
                 fundLoadRequests.add(fundLoadRequest);
             }
         } catch (IOException e) {
             logger.error("Exception occurred while reading file content", e);
             throw new RuntimeException("Exception occurred while processing fund loads");
         }
-        // 3. Process each fund load request using the FundLoadService.
-        List<FundStatus> fundStatusList = new ArrayList<>();
-        for(FundLoadRequest fundLoadRequest : fundLoadRequests)
-        {
-            fundStatusList.add(fundLoadService.processLoad(fundLoadRequest));
+        fundLoadMetrics.record(Stage.PARSE, parseStart);
+
+        // 3. Process the fund load requests, partitioned by customer, on the nodes owning them.
+        long processStart = System.nanoTime();
+        List<FundStatus> fundStatuses = clusterRouter.process(fundLoadRequests);
+        fundLoadMetrics.record(Stage.PROCESS, processStart);
+        return fundStatuses;
+    }
+
+    /**
+     * Streaming variant of {@link #loadFromFile(HttpServletRequest)}, selected with
+     * {@code Accept: application/x-ndjson}.
+     * <p>
+     * The file is read incrementally and processed in chunks of
+     * {@code fund.load.stream.chunk-size} lines. The status of every line in a chunk is
+     * written as one NDJSON line and flushed before the next chunk is read, so memory use
+     * is bounded by the chunk size and the client sees the first results as soon as the
+     * first chunk is decided. A slow client blocks the writes, which in turn pauses reading.
+     *
+     * @param request The request, whose body is a multipart upload with a {@code file} part, or the file itself.
+     * @return A response body that streams one {@link FundStatus} per input line.
+     * @throws IOException If the uploaded file cannot be opened.
+     */
+    @PostMapping(value = "/loadFromFile", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFromFile(HttpServletRequest request) throws IOException {
+        FundLoadRequestSource upload = openUpload(request);
+        // Admitted before the response starts, so an overloaded service still answers 429 or 503
+        Permit permit = admissionLimiter.acquire(Lane.BULK);
+
+        StreamingResponseBody body = outputStream -> {
+            try (permit;
+                 FundLoadRequestSource reader = upload;
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+
+                generator.setRootValueSeparator(null);
+                List<FundLoadRequest> chunk = new ArrayList<>(streamChunkSize);
+                FundLoadRequest fundLoadRequest;
+                long parseStart = System.nanoTime();
+
+                while ((fundLoadRequest = reader.next()) != null) {
+                    chunk.add(fundLoadRequest);
+                    if (chunk.size() == streamChunkSize) {
+                        fundLoadMetrics.record(Stage.PARSE, parseStart);
+                        processChunk(chunk, generator);
+                        chunk.clear();
+                        parseStart = System.nanoTime();
+                    }
+                }
+                fundLoadMetrics.record(Stage.PARSE, parseStart);
+                processChunk(chunk, generator);
+            } catch (IOException e) {
+                logger.error("Exception occurred while streaming fund loads", e);
+                throw new RuntimeException("Exception occurred while processing fund loads");
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Replay variant of {@link #loadFromFile(HttpServletRequest)}, selected with {@code mode=replay},
+     * for backfills of historical files.
+     * <p>
+     * Each customer's loads are decided in time order rather than input order, in a
+     * single sorted pass of the {@link BulkReplayProcessor} that spills to disk for files
+     * larger than memory. Once every load is decided and persisted, one {@link FundStatus}
+     * per input line is streamed as NDJSON, in input order. Replays run on standalone
+     * nodes only; a clustered node answers 409 Conflict.
+     *
+     * @param request The request, whose body is a multipart upload with a {@code file} part, or the file itself.
+     * @return A response body that streams one {@link FundStatus} per input line.
+     * @throws IOException If the uploaded file cannot be opened.
+     */
+    @PostMapping(value = "/loadFromFile", params = "mode=replay")
+    public ResponseEntity<StreamingResponseBody> replayFromFile(HttpServletRequest request) throws IOException {
+        if (clusterRouter.isClustered()) {
+            throw new MisroutedException(HttpStatus.CONFLICT, "Replays run on standalone nodes only");
+        }
+        FundLoadRequestSource upload = openUpload(request);
+        Permit permit = admissionLimiter.acquire(Lane.BULK);
+
+        StreamingResponseBody body = outputStream -> {
+            try (permit;
+                 FundLoadRequestSource reader = upload;
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+
+                generator.setRootValueSeparator(null);
+                long processStart = System.nanoTime();
+                bulkReplayProcessor.replay(reader, fundStatus -> {
+                    statusWriter.writeValue(generator, fundStatus);
+                    generator.writeRaw('\n');
+                });
+                fundLoadMetrics.record(Stage.PROCESS, processStart);
+            } catch (IOException e) {
+                logger.error("Exception occurred while replaying fund loads", e);
+                throw new RuntimeException("Exception occurred while processing fund loads");
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Endpoint deciding a batch forwarded by another cluster node, all of whose
+     * customers this node owns.
+     *
+     * @param fundLoadRequests The fund load requests, in input order.
+     * @return The status of each request, in the same order.
+     */
+    @PostMapping("/shard")
+    public ResponseEntity<List<FundStatus>> loadShard(@RequestBody List<FundLoadRequest> fundLoadRequests) {
+        // Forwarded shards are parts of bulk requests, however few loads they hold
+        try (Permit permit = admissionLimiter.acquire(Lane.BULK)) {
+            long processStart = System.nanoTime();
+            List<FundStatus> fundStatuses = clusterRouter.processOwned(fundLoadRequests);
+            fundLoadMetrics.record(Stage.PROCESS, processStart);
+            return ResponseEntity.ok(fundStatuses);
+        }
+    }
+
+    /**
+     * Read-only what-if endpoint: the limit headroom of each queried customer at a time,
+     * and whether a load of the queried amount would be accepted then.
+     * <p>
+     * Queries are answered from the in-memory aggregates, through the same rule
+     * evaluation as the decisions, and never persist or record anything. Many customers
+     * can be queried in one call.
+     *
+     * @param precheckRequests The queries.
+     * @return The answer to each query, in the same order.
+     */
+    @PostMapping("/precheck")
+    public ResponseEntity<List<LoadPrecheck>> precheck(@RequestBody List<LoadPrecheckRequest> precheckRequests) {
+        long precheckStart = System.nanoTime();
+        List<LoadPrecheck> prechecks = clusterRouter.precheck(precheckRequests);
+        fundLoadMetrics.record(Stage.PRECHECK, precheckStart);
+        return ResponseEntity.ok(prechecks);
+    }
+
+    /**
+     * Endpoint answering what-if queries forwarded by another cluster node, all of whose
+     * customers this node owns.
+     *
+     * @param precheckRequests The queries.
+     * @return The answer to each query, in the same order.
+     */
+    @PostMapping("/precheck/shard")
+    public ResponseEntity<List<LoadPrecheck>> precheckShard(@RequestBody List<LoadPrecheckRequest> precheckRequests) {
+        long precheckStart = System.nanoTime();
+        List<LoadPrecheck> prechecks = clusterRouter.precheckOwned(precheckRequests);
+        fundLoadMetrics.record(Stage.PRECHECK, precheckStart);
+        return ResponseEntity.ok(prechecks);
+    }
+
+    /**
+     * Opens the file uploaded with a request, in the format of its Content-Type.
+     */
+    private FundLoadRequestSource openUpload(HttpServletRequest request) throws IOException {
+        MultipartUpload upload = MultipartUpload.open(request.getInputStream(), request.getContentType(), "file",
+                maxUploadBytes);
+        return UploadFormat.ofContentType(upload.contentType()).open(upload.inputStream(), objectMapper);
+    }
+
+    /**
+     * Processes a chunk of requests, then writes each status as one NDJSON line and
+     * flushes them to the client.
+     */
+    private void processChunk(List<FundLoadRequest> chunk, JsonGenerator generator) throws IOException {
+        long processStart = System.nanoTime();
+        List<FundStatus> fundStatuses = clusterRouter.process(chunk);
+        fundLoadMetrics.record(Stage.PROCESS, processStart);
+
+        long serializeStart = System.nanoTime();
+        for (FundStatus fundStatus : fundStatuses) {
+            statusWriter.writeValue(generator, fundStatus);
+            generator.writeRaw('\n');
         }
-        return ResponseEntity.ok(fundStatusList);
+        generator.flush();
+        fundLoadMetrics.record(Stage.SERIALIZE, serializeStart);
     }
 }
@@ -1,18 +1,33 @@
 package com.velocity.limits.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
 public class FundStatus {
 
     private String id;
     private String customer_id;
     private boolean accepted;
 
+    /**
+     * Set when the id was decided before; {@code accepted} then repeats the earlier outcome.
+     * Omitted from the JSON unless set.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean duplicate;
+
     public FundStatus(String id, String customer_id, boolean accepted) {
         this.id = id;
         this.customer_id = customer_id;
         this.accepted = accepted;
     }
+
+    public FundStatus(String id, String customer_id, boolean accepted, boolean duplicate) {
+        this(id, customer_id, accepted);
+        this.duplicate = duplicate;
+    }
 }
 
@@ -0,0 +1,25 @@
+package com.velocity.limits.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The answer to a {@link LoadPrecheckRequest}.
+ * <p>
+ * {@code accepted} and {@code violated_rule} are only set when the query has an amount;
+ * {@code violated_rule} names the first rule the load would break.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LoadPrecheck {
+    private String customer_id;
+    private Boolean accepted;
+    private String violated_rule;
+    private List<RuleHeadroom> headroom;
+}
@@ -0,0 +1,23 @@
+package com.velocity.limits.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.velocity.limits.util.AmountDeserializer;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A what-if query: the limit headroom of a customer at a time, and optionally whether a
+ * load of the given amount would be accepted then. Fields are named and formatted like
+ * those of {@link FundLoadRequest}.
+ */
+@Data
+public class LoadPrecheckRequest {
+    private String customer_id;
+    @JsonDeserialize(using = AmountDeserializer.class)
+    private BigDecimal load_amount;
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'")
+    private LocalDateTime time;
+}
@@ -0,0 +1,23 @@
+package com.velocity.limits.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * How much of one velocity rule's limit a customer has used in the window of a time.
+ * Amounts are in dollars, counts in loads.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RuleHeadroom {
+    private String rule;
+    private String metric;
+    private String window;
+    private BigDecimal limit;
+    private BigDecimal used;
+    private BigDecimal remaining;
+}
@@ -0,0 +1,20 @@
+package com.velocity.limits.events;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A batch of consecutive decision events, encoded once as NDJSON and handed to every
+ * {@link DecisionSink} as a read-only view of the same bytes.
+ * <p>
+ * Each line is one decision: {@code id}, {@code customer_id}, {@code load_amount} and
+ * {@code time} as in the upload format, {@code accepted}, {@code decided_at}, and when
+ * they apply {@code duplicate}, the {@code rule} a rejected load violated, and the
+ * {@code sequence} number of an accepted load.
+ *
+ * @param firstEvent The number of the first event in the {@link DecisionOutbox}, counted from the
+ *                   first event it ever held; a batch delivered again after a restart keeps its numbers.
+ * @param count      The number of events in the payload.
+ * @param payload    The NDJSON lines, from position to limit.
+ */
+public record DecisionBatch(long firstEvent, int count, ByteBuffer payload) {
+}
@@ -0,0 +1,20 @@
+package com.velocity.limits.events;
+
+import java.time.LocalDateTime;
+
+/**
+ * A slot of the {@link DecisionStream} ring buffer, overwritten in place by each
+ * decision that claims it so that publishing allocates nothing.
+ */
+final class DecisionEvent {
+
+    String id;
+    String customerId;
+    long cents;
+    LocalDateTime time;
+    boolean accepted;
+    boolean duplicate;
+    String rule;
+    long sequence;
+    long decidedAtMillis;
+}
@@ -0,0 +1,290 @@
+package com.velocity.limits.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Durable, append-only log of encoded decision events between the ring of the
+ * {@link DecisionStream} and its sinks.
+ * <p>
+ * Events are numbered from the first one ever appended. They are kept as NDJSON lines
+ * in segment files named by the number of their first event; a new segment is started
+ * when a batch would take the last one past its size, so a batch never spans two.
+ * {@link #append} writes a batch and forces it to disk before returning.
+ * <p>
+ * {@link #read} returns the batch following the last one read, and
+ * {@link #acknowledge} records that every sink took it: the number of acknowledged
+ * events is kept in the {@code cursor} file, replaced atomically, and segments wholly
+ * below it are deleted. A crash between delivering a batch and acknowledging it only
+ * delivers the batch again. {@link #open} drops a torn last line left by a crash and
+ * resumes reading at the cursor.
+ * <p>
+ * One thread appends and another reads and acknowledges.
+ */
+public class DecisionOutbox implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecisionOutbox.class);
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    /**
+     * Every segment file, by the number of its first event.
+     */
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+
+    private FileChannel appendChannel;
+    private long appendSegmentSize;
+
+    /**
+     * The number of events appended and forced to disk.
+     */
+    private volatile long appended;
+
+    /**
+     * The number of events every sink acknowledged.
+     */
+    private volatile long acknowledged;
+
+    private FileChannel readChannel;
+    private long readSegment;
+    private long readPosition;
+    private long readEvent;
+    private int readBytes;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private DecisionOutbox(Path directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Opens the outbox in the given directory, creating it if needed, and recovers it.
+     *
+     * @param directory    The outbox directory.
+     * @param segmentBytes The size past which a new segment is started.
+     * @return The outbox, positioned to read the first event not acknowledged.
+     * @throws IOException If the outbox cannot be read.
+     */
+    public static DecisionOutbox open(Path directory, long segmentBytes) throws IOException {
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("Outbox segment size must be positive: " + segmentBytes);
+        }
+        Files.createDirectories(directory);
+        DecisionOutbox outbox = new DecisionOutbox(directory, segmentBytes);
+        outbox.recover();
+        return outbox;
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+            });
+        }
+        Path cursor = directory.resolve(CURSOR_FILE);
+        acknowledged = Files.exists(cursor) ? ByteBuffer.wrap(Files.readAllBytes(cursor)).getLong() : 0;
+        if (segments.isEmpty()) {
+            appended = acknowledged;
+        } else {
+            // The last segment ends at its last complete line; a crash may have torn the one after it
+            Map.Entry<Long, Path> last = segments.lastEntry();
+            appendChannel = FileChannel.open(last.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long[] lines = {0};
+            long end = scan(appendChannel, Long.MAX_VALUE, lines);
+            if (end < appendChannel.size()) {
+                logger.warn("Dropping a torn decision event at byte {} of {}", end, last.getValue());
+                appendChannel.truncate(end);
+                appendChannel.force(true);
+            }
+            appendSegmentSize = end;
+            appended = last.getKey() + lines[0];
+            acknowledged = Math.max(Math.min(acknowledged, appended), segments.firstKey());
+        }
+        readEvent = acknowledged;
+        Map.Entry<Long, Path> segment = segments.floorEntry(readEvent);
+        if (segment != null) {
+            openReadSegment(segment);
+            readPosition = scan(readChannel, readEvent - segment.getKey(), new long[1]);
+        }
+        if (appended > acknowledged) {
+            logger.info("Recovered {} undelivered decision events from {}", appended - acknowledged, directory);
+        }
+    }
+
+    /**
+     * Reads a segment up to the given number of complete lines.
+     *
+     * @param lines Set to the number of lines read.
+     * @return The position following the last line read.
+     */
+    private static long scan(FileChannel channel, long maxLines, long[] lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        long end = 0;
+        int read;
+        while (lines[0] < maxLines && (read = channel.read(buffer.clear(), position)) > 0) {
+            for (int i = 0; i < read && lines[0] < maxLines; i++) {
+                if (buffer.get(i) == '\n') {
+                    lines[0]++;
+                    end = position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * Appends a batch of events and forces it to disk.
+     *
+     * @param lines The NDJSON lines, from position to limit.
+     * @param count The number of lines.
+     * @throws IOException If the batch cannot be written; it may then be partly written,
+     *                     and is overwritten by the next append.
+     */
+    public synchronized void append(ByteBuffer lines, int count) throws IOException {
+        if (appendChannel != null && appendSegmentSize > 0 && appendSegmentSize + lines.remaining() > segmentBytes) {
+            appendChannel.close();
+            appendChannel = null;
+        }
+        if (appendChannel == null) {
+            Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, appended, SEGMENT_SUFFIX));
+            appendChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            appendChannel.truncate(0);
+            appendSegmentSize = 0;
+            segments.put(appended, file);
+        }
+        long position = appendSegmentSize;
+        while (lines.hasRemaining()) {
+            position += appendChannel.write(lines, position);
+        }
+        appendChannel.force(false);
+        appendSegmentSize = position;
+        appended += count;
+    }
+
+    /**
+     * Reads the events following the last batch read, which must have been acknowledged.
+     *
+     * @param maxEvents The most events to read.
+     * @return The batch, whose payload is valid until the next read, or {@code null} if
+     * every appended event was read.
+     * @throws IOException If the outbox cannot be read.
+     */
+    public DecisionBatch read(int maxEvents) throws IOException {
+        long available = appended - readEvent;
+        if (available <= 0) {
+            return null;
+        }
+        int wanted = (int) Math.min(maxEvents, available);
+        while (true) {
+            Map.Entry<Long, Path> next = segments.higherEntry(readSegment);
+            if (readChannel == null || next != null && readEvent >= next.getKey()) {
+                openReadSegment(segments.floorEntry(readEvent));
+                readPosition = 0;
+            }
+            int read = readChannel.read(readBuffer.clear(), readPosition);
+            int lines = 0;
+            int end = 0;
+            for (int i = 0; i < read && lines < wanted; i++) {
+                if (readBuffer.get(i) == '\n') {
+                    lines++;
+                    end = i + 1;
+                }
+            }
+            if (lines > 0) {
+                readBytes = end;
+                return new DecisionBatch(readEvent, lines,
+                        ByteBuffer.wrap(readBuffer.array(), 0, end).asReadOnlyBuffer());
+            }
+            if (read < readBuffer.capacity()) {
+                throw new IOException("Decision event " + readEvent + " is missing from " + segments.get(readSegment));
+            }
+            // A line longer than the buffer
+            readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+        }
+    }
+
+    /**
+     * Records that every sink took the batch last read, and deletes the segments it completed.
+     *
+     * @param batch The batch last read.
+     * @throws IOException If the cursor cannot be written.
+     */
+    public void acknowledge(DecisionBatch batch) throws IOException {
+        readEvent += batch.count();
+        readPosition += readBytes;
+        readBytes = 0;
+        Path temporary = directory.resolve(CURSOR_FILE + ".tmp");
+        Files.write(temporary, ByteBuffer.allocate(Long.BYTES).putLong(readEvent).array());
+        Files.move(temporary, directory.resolve(CURSOR_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        acknowledged = readEvent;
+        for (Map.Entry<Long, Path> segment = segments.firstEntry(); segment != null; segment = segments.firstEntry()) {
+            Long following = segments.higherKey(segment.getKey());
+            if (following == null || following > acknowledged) {
+                break;
+            }
+            Files.deleteIfExists(segment.getValue());
+            segments.remove(segment.getKey());
+        }
+    }
+
+    /**
+     * @return The number of events appended since the outbox was first created.
+     */
+    public long appended() {
+        return appended;
+    }
+
+    /**
+     * @return The number of events appended and not yet acknowledged.
+     */
+    public long pending() {
+        return appended - acknowledged;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (appendChannel != null) {
+                appendChannel.close();
+            }
+        } finally {
+            if (readChannel != null) {
+                readChannel.close();
+            }
+        }
+    }
+
+    private void openReadSegment(Map.Entry<Long, Path> segment) throws IOException {
+        if (readChannel != null) {
+            readChannel.close();
+        }
+        readChannel = FileChannel.open(segment.getValue(), StandardOpenOption.READ);
+        readSegment = segment.getKey();
+    }
+}
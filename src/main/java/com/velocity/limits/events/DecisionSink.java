@@ -0,0 +1,28 @@
+package com.velocity.limits.events;
+
+import java.io.IOException;
+
+/**
+ * A destination of the decision event stream, such as a file or a message broker.
+ * <p>
+ * Every {@code DecisionSink} bean receives every batch of the {@link DecisionStream},
+ * in order. A batch is retried until {@link #publish} returns normally, so a sink may
+ * see a batch again after a failure, even one it partly stored, and consumers must
+ * tolerate duplicates: the load id, with the outcome, identifies a decision.
+ */
+public interface DecisionSink {
+
+    /**
+     * @return The sink name, used in logs and meters.
+     */
+    String name();
+
+    /**
+     * Stores or sends a batch of decision events. Returns only once the batch is safely
+     * handed over; the batch is retried if this throws.
+     *
+     * @param batch The batch; its payload must not be modified or kept after the call.
+     * @throws IOException If the batch could not be handed over.
+     */
+    void publish(DecisionBatch batch) throws IOException;
+}
@@ -0,0 +1,602 @@
+package com.velocity.limits.events;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.util.Money;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Outbox stream of every fund load decision to the {@link DecisionSink} beans, for
+ * downstream systems that would otherwise poll the fund load table.
+ * <p>
+ * {@link #publish} claims a slot of a preallocated ring buffer of
+ * {@code fund.load.events.buffer-size} events with one compare-and-set, and copies
+ * the decision into it; it never allocates or locks. A publisher thread encodes runs
+ * of up to {@code fund.load.events.batch-size} published events as NDJSON into one
+ * reused buffer, frees their slots, and appends the batch to a {@link DecisionOutbox}
+ * in {@code fund.load.events.outbox-directory}, forcing it to disk. The
+ * {@link FundLoadStore} is flushed first if the batch has accepted loads, so the outbox
+ * never holds an event of a load that is not persisted. A delivery thread reads the
+ * outbox from its cursor and hands every sink a read-only view of the same bytes,
+ * advancing the cursor once every sink took the batch.
+ * <p>
+ * Delivery is at least once. A batch a sink fails to take is retried, backing off from
+ * {@code fund.load.events.retry-backoff-ms}, until it succeeds; events queue in the
+ * outbox meanwhile, so a sink outage never holds up decisions. Callers reporting
+ * decisions as final call {@link #sync()} after flushing the store, which waits until
+ * every decision published so far is in the outbox; {@link #publish} itself never
+ * waits for the disk, unless the publisher falls a whole ring behind it. On shutdown
+ * the ring is drained into the outbox and sinks are given up to
+ * {@code fund.load.events.drain-timeout-ms} to catch up; events they have not taken
+ * are delivered after the next start, as are those of a crash. Decisions made once the
+ * ring is drained are appended to the outbox directly. The only events lost are those
+ * that fail to encode or to be persisted before the drain timeout, and decisions made
+ * once the outbox is closed; they are counted as dropped and logged.
+ * <p>
+ * Without sinks the stream is inactive and {@link #publish} does nothing.
+ */
+@Component
+public class DecisionStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecisionStream.class);
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DELIVERY_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    private static final long DROP_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Set in {@link #claimed} once the ring is closed, so that no more slots are claimed.
+     */
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    @Autowired(required = false)
+    private List<DecisionSink> sinks = List.of();
+
+    @Autowired
+    private FundLoadStore fundLoadStore;
+
+    @Autowired(required = false)
+    private FundLoadMetrics fundLoadMetrics;
+
+    @Value("${fund.load.events.buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${fund.load.events.batch-size:1024}")
+    private int batchSize;
+
+    @Value("${fund.load.events.retry-backoff-ms:100}")
+    private long retryBackoffMillis;
+
+    @Value("${fund.load.events.drain-timeout-ms:10000}")
+    private long drainTimeoutMillis;
+
+    @Value("${fund.load.events.outbox-directory:data/outbox}")
+    private String outboxDirectory;
+
+    @Value("${fund.load.events.outbox-segment-bytes:67108864}")
+    private long outboxSegmentBytes;
+
+    private DecisionOutbox outbox;
+
+    private DecisionEvent[] ring;
+    private int mask;
+
+    /**
+     * The number of the event last published to each slot, or {@code -1}.
+     */
+    private AtomicLongArray published;
+
+    /**
+     * The number of the next event to claim a slot, with {@link #CLOSED} set once the
+     * ring is closed.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The number of the next event the publisher thread will encode; every slot of a
+     * lower event is free.
+     */
+    private volatile long consumed;
+
+    /**
+     * The number of the next event the publisher thread will persist; every lower event
+     * is in the outbox, or dropped. Updated under {@link #persistedMonitor} for {@link #sync()}.
+     */
+    private volatile long persisted;
+    private final Object persistedMonitor = new Object();
+    private volatile boolean publisherDone;
+
+    private volatile boolean active;
+    private volatile boolean stopping;
+    private boolean outboxClosed;
+    private volatile long lastDropLogNanos = System.nanoTime() - DROP_LOG_INTERVAL_NANOS;
+
+    /**
+     * The {@link System#nanoTime()} by which the ring must be drained once stopping.
+     */
+    private volatile long drainDeadline;
+
+    private Thread publisher;
+    private Thread deliverer;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong fullWaits = new AtomicLong();
+    private final AtomicLong deliveryFailures = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1 || batchSize <= 0) {
+            throw new IllegalArgumentException("Decision event buffer size must be a power of two and batch size "
+                    + "positive: " + bufferSize + ", " + batchSize);
+        }
+        ring = new DecisionEvent[bufferSize];
+        published = new AtomicLongArray(bufferSize);
+        for (int slot = 0; slot < bufferSize; slot++) {
+            ring[slot] = new DecisionEvent();
+            published.set(slot, -1);
+        }
+        mask = bufferSize - 1;
+        outbox = DecisionOutbox.open(Path.of(outboxDirectory), outboxSegmentBytes);
+        if (fundLoadMetrics != null) {
+            fundLoadMetrics.monitor(this);
+        }
+        active = true;
+        publisher = new Thread(this::run, "decision-publisher");
+        publisher.setDaemon(true);
+        deliverer = new Thread(this::deliverAll, "decision-deliverer");
+        deliverer.setDaemon(true);
+        publisher.start();
+        deliverer.start();
+        logger.info("Publishing decision events to {} through {}", sinks.stream().map(DecisionSink::name).toList(),
+                outboxDirectory);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (publisher != null) {
+            drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+            stopping = true;
+            LockSupport.unpark(publisher);
+            publisher.join(drainTimeoutMillis + 1_000);
+            LockSupport.unpark(deliverer);
+            deliverer.join(drainTimeoutMillis + 1_000);
+            synchronized (outbox) {
+                outbox.close();
+                outboxClosed = true;
+            }
+        }
+    }
+
+    /**
+     * Publishes a decision. Must be called under the customer's lock, so that each
+     * customer's decisions are streamed in the order they were made, and after an
+     * accepted load is handed to the {@link FundLoadStore}.
+     * <p>
+     * Waits for a free slot if the ring is full, which only happens when the publisher
+     * thread falls behind the disk. Once the ring is closed on shutdown, the decision is
+     * appended to the outbox directly.
+     *
+     * @param fundLoad  The decided load; its sequence number is published if it was accepted.
+     * @param accepted  Whether the load was accepted.
+     * @param duplicate Whether the load was answered as a duplicate of an earlier one.
+     * @param rule      The name of the rule that rejected the load, or {@code null}.
+     */
+    public void publish(FundLoad fundLoad, boolean accepted, boolean duplicate, String rule) {
+        if (!active) {
+            return;
+        }
+        // Everything that could fail is done before a slot is claimed, since the publisher waits for each slot
+        long cents = fundLoad.getLoadAmount() == null ? 0 : Money.toCents(fundLoad.getLoadAmount());
+        long sequence = accepted && !duplicate && fundLoad.getSequence() != null ? fundLoad.getSequence() : 0;
+        long event;
+        boolean waited = false;
+        while (true) {
+            event = claimed.get();
+            if (event < 0) {
+                DecisionEvent decisionEvent = new DecisionEvent();
+                fill(decisionEvent, fundLoad, accepted, duplicate, rule, cents, sequence);
+                appendDirectly(decisionEvent);
+                return;
+            }
+            if (event - consumed >= ring.length) {
+                if (!waited) {
+                    fullWaits.incrementAndGet();
+                    waited = true;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else if (claimed.compareAndSet(event, event + 1)) {
+                break;
+            }
+        }
+        int slot = (int) event & mask;
+        fill(ring[slot], fundLoad, accepted, duplicate, rule, cents, sequence);
+        // Releases the slot's contents to the publisher thread
+        published.set(slot, event);
+    }
+
+    /**
+     * Waits until every decision published so far is in the outbox, so that it will be
+     * delivered even if the process dies. Returns at once if the stream is inactive.
+     */
+    public void sync() {
+        if (!active) {
+            return;
+        }
+        long target = claimed.get() & ~CLOSED;
+        synchronized (persistedMonitor) {
+            while (persisted < target && !publisherDone) {
+                try {
+                    persistedMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while persisting decision events", e);
+                }
+            }
+        }
+    }
+
+    private static void fill(DecisionEvent decisionEvent, FundLoad fundLoad, boolean accepted, boolean duplicate,
+                             String rule, long cents, long sequence) {
+        decisionEvent.id = fundLoad.getId();
+        decisionEvent.customerId = fundLoad.getCustomerId();
+        decisionEvent.cents = cents;
+        decisionEvent.time = fundLoad.getTime();
+        decisionEvent.accepted = accepted;
+        decisionEvent.duplicate = duplicate;
+        decisionEvent.rule = rule;
+        decisionEvent.sequence = sequence;
+        decisionEvent.decidedAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Appends a decision made after the ring was closed straight to the outbox.
+     */
+    private void appendDirectly(DecisionEvent event) {
+        BatchBuffer buffer = new BatchBuffer(256);
+        try (JsonGenerator generator = generator(buffer)) {
+            write(generator, event);
+            generator.flush();
+            if (event.accepted && !event.duplicate) {
+                fundLoadStore.flush();
+            }
+            synchronized (outbox) {
+                if (outboxClosed) {
+                    drop("the stream is stopped");
+                    return;
+                }
+                outbox.append(buffer.view(), 1);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to persist the decision of fund load {}", event.id, e);
+            drop("they failed to persist");
+        }
+    }
+
+    /**
+     * @return The number of events published and not yet encoded into a batch.
+     */
+    public long buffered() {
+        return active ? Math.max(0, (claimed.get() & ~CLOSED) - consumed) : 0;
+    }
+
+    /**
+     * @return The number of events in the outbox not yet taken by every sink.
+     */
+    public long pending() {
+        return active ? outbox.pending() : 0;
+    }
+
+    /**
+     * @return The number of decisions that found the ring full and waited for a slot.
+     */
+    public long fullWaits() {
+        return fullWaits.get();
+    }
+
+    /**
+     * @return The number of events delivered, summed over the sinks.
+     */
+    public long delivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return The number of failed batch deliveries, each retried.
+     */
+    public long deliveryFailures() {
+        return deliveryFailures.get();
+    }
+
+    /**
+     * @return The number of decisions lost because they failed to encode or persist, or
+     *         were made once the outbox was closed.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        BatchBuffer buffer = new BatchBuffer(batchSize * 160);
+        long next = 0;
+        try {
+            JsonGenerator generator = generator(buffer);
+            while (true) {
+                boolean hasAccepted = false;
+                int events = 0;
+                int lines = 0;
+                buffer.reset();
+                while (events < batchSize && published.get((int) (next + events) & mask) == next + events) {
+                    DecisionEvent event = ring[(int) (next + events) & mask];
+                    int mark = buffer.size();
+                    try {
+                        write(generator, event);
+                        generator.flush();
+                        hasAccepted |= event.accepted && !event.duplicate;
+                        lines++;
+                    } catch (IOException | RuntimeException e) {
+                        logger.error("Failed to encode the decision of fund load {}", event.id, e);
+                        dropped.incrementAndGet();
+                        // The generator may hold a half-written event
+                        buffer.truncate(mark);
+                        generator = generator(buffer);
+                    }
+                    events++;
+                }
+                if (events == 0) {
+                    // Closes the ring once every claimed slot is delivered, or the drain deadline passed
+                    if (stopping && (claimed.compareAndSet(next, next | CLOSED) || System.nanoTime() > drainDeadline)) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                consumed = next + events;
+                if (lines > 0 && !persist(buffer, lines, hasAccepted)) {
+                    break;
+                }
+                next += events;
+                markPersisted(next);
+                LockSupport.unpark(deliverer);
+            }
+        } catch (RuntimeException | Error e) {
+            logger.error("Decision publisher failed", e);
+            throw e;
+        } finally {
+            // Later decisions are appended to the outbox directly as the ring is closed
+            long last = claimed.getAndUpdate(value -> value | CLOSED) & ~CLOSED;
+            consumed = last;
+            if (last > next) {
+                dropped.addAndGet(last - next);
+                logger.error("Dropped {} decision events from {} on, left unpersisted when the publisher stopped",
+                        last - next, next);
+            }
+            synchronized (persistedMonitor) {
+                persisted = last;
+                publisherDone = true;
+                persistedMonitor.notifyAll();
+            }
+            LockSupport.unpark(deliverer);
+        }
+    }
+
+    private void markPersisted(long next) {
+        synchronized (persistedMonitor) {
+            persisted = next;
+            persistedMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Appends an encoded batch to the outbox, retrying until it succeeds, after flushing
+     * the store if the batch has accepted loads.
+     *
+     * @return {@code false} if the stream is stopping and the drain deadline passed first.
+     */
+    private boolean persist(BatchBuffer buffer, int lines, boolean hasAccepted) {
+        boolean flushed = !hasAccepted;
+        long backoffMillis = retryBackoffMillis;
+        while (true) {
+            try {
+                if (!flushed) {
+                    fundLoadStore.flush();
+                    flushed = true;
+                }
+                synchronized (outbox) {
+                    outbox.append(buffer.view(), lines);
+                }
+                return true;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to persist {} decision events, retrying in {} ms", lines, backoffMillis, e);
+            }
+            if (!backOff(backoffMillis)) {
+                return false;
+            }
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        }
+    }
+
+    /**
+     * Delivers every batch of the outbox to the sinks, in order, until the stream stops
+     * and the sinks have caught up or the drain deadline passed.
+     */
+    private void deliverAll() {
+        long backoffMillis = retryBackoffMillis;
+        try {
+            while (true) {
+                DecisionBatch batch;
+                try {
+                    batch = outbox.read(batchSize);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Failed to read the decision outbox, retrying in {} ms", backoffMillis, e);
+                    if (!backOff(backoffMillis)) {
+                        return;
+                    }
+                    backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+                    continue;
+                }
+                backoffMillis = retryBackoffMillis;
+                if (batch == null) {
+                    if (stopping && (publisherDone || System.nanoTime() > drainDeadline)) {
+                        return;
+                    }
+                    LockSupport.parkNanos(DELIVERY_IDLE_PARK_NANOS);
+                    continue;
+                }
+                if (!deliver(batch)) {
+                    return;
+                }
+                try {
+                    outbox.acknowledge(batch);
+                } catch (IOException e) {
+                    logger.warn("Failed to advance the decision outbox cursor past event {}; the events would be "
+                            + "delivered again after a restart", batch.firstEvent() + batch.count() - 1, e);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            logger.error("Decision delivery failed", e);
+            throw e;
+        } finally {
+            long pending = outbox.pending();
+            if (stopping && pending > 0) {
+                logger.info("Left {} decision events in the outbox, delivered after the next start", pending);
+            }
+        }
+    }
+
+    /**
+     * Waits before a retry, for less than the backoff if the drain deadline comes first.
+     *
+     * @return {@code false} if the stream is stopping and the drain deadline passed.
+     */
+    private boolean backOff(long backoffMillis) {
+        if (stopping && System.nanoTime() > drainDeadline) {
+            return false;
+        }
+        long backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        LockSupport.parkNanos(stopping ? Math.min(backoffNanos, drainDeadline - System.nanoTime()) : backoffNanos);
+        return true;
+    }
+
+    private static JsonGenerator generator(BatchBuffer buffer) {
+        try {
+            JsonGenerator generator = new JsonFactory().createGenerator(buffer);
+            generator.setRootValueSeparator(null);
+            return generator;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void drop(String reason) {
+        dropped.incrementAndGet();
+        long now = System.nanoTime();
+        long lastLog = lastDropLogNanos;
+        if (now - lastLog >= DROP_LOG_INTERVAL_NANOS) {
+            lastDropLogNanos = now;
+            logger.warn("Dropping decision events because {}, {} dropped so far", reason, dropped.get());
+        }
+    }
+
+    /**
+     * Delivers a batch to every sink, retrying each until it takes the batch.
+     *
+     * @return {@code false} if the stream is stopping and the drain deadline passed first.
+     */
+    private boolean deliver(DecisionBatch batch) {
+        boolean[] done = new boolean[sinks.size()];
+        int remaining = sinks.size();
+        long backoffMillis = retryBackoffMillis;
+        while (true) {
+            try {
+                for (int i = 0; i < done.length; i++) {
+                    if (!done[i]) {
+                        sinks.get(i).publish(new DecisionBatch(batch.firstEvent(), batch.count(),
+                                batch.payload().duplicate()));
+                        done[i] = true;
+                        remaining--;
+                        delivered.addAndGet(batch.count());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                deliveryFailures.incrementAndGet();
+                logger.warn("Failed to deliver decision events {} to {}, retrying in {} ms", batch.firstEvent(),
+                        batch.firstEvent() + batch.count() - 1, backoffMillis, e);
+            }
+            if (remaining == 0) {
+                return true;
+            }
+            if (!backOff(backoffMillis)) {
+                return false;
+            }
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        }
+    }
+
+    private static void write(JsonGenerator generator, DecisionEvent event) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", event.id);
+        generator.writeStringField("customer_id", event.customerId);
+        generator.writeStringField("load_amount", "$" + Money.fromCents(event.cents).toPlainString());
+        generator.writeStringField("time", event.time == null ? null : event.time.format(TIME_FORMAT));
+        generator.writeBooleanField("accepted", event.accepted);
+        if (event.duplicate) {
+            generator.writeBooleanField("duplicate", true);
+        }
+        if (event.rule != null) {
+            generator.writeStringField("rule", event.rule);
+        }
+        if (event.sequence != 0) {
+            generator.writeNumberField("sequence", event.sequence);
+        }
+        generator.writeStringField("decided_at", Instant.ofEpochMilli(event.decidedAtMillis).toString());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Byte buffer that is reused for every batch and exposes its contents without copying.
+     */
+    private static final class BatchBuffer extends ByteArrayOutputStream {
+
+        BatchBuffer(int initialSize) {
+            super(initialSize);
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+
+        ByteBuffer view() {
+            return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.velocity.limits.events;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * {@link DecisionSink} appending decision events to one NDJSON file per UTC day,
+ * {@code decisions-<date>.ndjson} in {@code fund.load.events.file.directory}, enabled
+ * with {@code fund.load.events.file.enabled=true}.
+ * <p>
+ * Batches are written straight from the stream's buffer to the file channel and
+ * forced to disk before they are acknowledged. A batch retried after a failed write
+ * may appear twice.
+ */
+@Component
+@ConditionalOnProperty(name = "fund.load.events.file.enabled", havingValue = "true")
+public class FileDecisionSink implements DecisionSink {
+
+    private final Path directory;
+
+    private FileChannel channel;
+    private LocalDate channelDate;
+
+    public FileDecisionSink(@Value("${fund.load.events.file.directory:data/events}") String directory) {
+        this.directory = Path.of(directory);
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public synchronized void publish(DecisionBatch batch) throws IOException {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        if (channel == null || !today.equals(channelDate)) {
+            close();
+            Files.createDirectories(directory);
+            channel = FileChannel.open(directory.resolve("decisions-" + today + ".ndjson"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channelDate = today;
+        }
+        ByteBuffer payload = batch.payload();
+        try {
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // Reopened by the retry, in case the channel is broken
+            close();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            FileChannel closing = channel;
+            channel = null;
+            closing.close();
+        }
+    }
+}
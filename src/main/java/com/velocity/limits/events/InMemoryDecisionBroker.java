@@ -0,0 +1,60 @@
+package com.velocity.limits.events;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded stand-in for a message broker, enabled with
+ * {@code fund.load.events.memory.enabled=true} for tests and local runs: keeps every
+ * decision event it is sent, as an NDJSON line, for consumers to read back.
+ */
+@Component
+@ConditionalOnProperty(name = "fund.load.events.memory.enabled", havingValue = "true")
+public class InMemoryDecisionBroker implements DecisionSink {
+
+    private final List<String> events = new ArrayList<>();
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public synchronized void publish(DecisionBatch batch) {
+        String lines = StandardCharsets.UTF_8.decode(batch.payload()).toString();
+        for (String line : lines.split("\n")) {
+            events.add(line);
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return Every event received so far, in order.
+     */
+    public synchronized List<String> events() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Waits until at least the given number of events were received.
+     *
+     * @param count   The number of events to wait for.
+     * @param timeout The longest time to wait.
+     * @param unit    The unit of the timeout.
+     * @return Every event received so far, in order.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized List<String> awaitEvents(int count, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long remaining;
+        while (events.size() < count && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return events();
+    }
+}
@@ -2,10 +2,12 @@ package com.velocity.limits.exception;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 /**
  * Global exception handler for handling exceptions across the application.
@@ -31,6 +33,58 @@ public class GlobalExceptionHandler {
      */
     private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
+    /**
+     * Handles requests turned away by admission control, without logging a stack trace:
+     * they are expected under burst load.
+     *
+     * @param e The overload exception.
+     * @return A ResponseEntity with the exception's 429 or 503 status and a Retry-After header.
+     */
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<String> handleOverloaded(OverloadedException e) {
+        logger.debug("Request rejected: {}", e.getMessage());
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+
+    /**
+     * Handles requests sent to a node that cannot serve them in its cluster.
+     *
+     * @param e The misrouting exception.
+     * @return A ResponseEntity with the exception's 421 or 409 status.
+     */
+    @ExceptionHandler(MisroutedException.class)
+    public ResponseEntity<String> handleMisrouted(MisroutedException e) {
+        logger.warn("Request misrouted: {}", e.getMessage());
+        return ResponseEntity.status(e.getStatus()).body(e.getMessage());
+    }
+
+    /**
+     * Handles requests holding a fund load that cannot be decided as sent.
+     *
+     * @param e The invalid load exception.
+     * @return A ResponseEntity with HTTP 400 status and the reason.
+     */
+    @ExceptionHandler(InvalidLoadException.class)
+    public ResponseEntity<String> handleInvalidLoad(InvalidLoadException e) {
+        logger.warn("Request refused: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    /**
+     * Handles uploads larger than {@code fund.load.upload.max-bytes}.
+     *
+     * @param e The upload size exception.
+     * @return A ResponseEntity with HTTP 413 status.
+     */
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<String> handleMaxUploadSize(MaxUploadSizeExceededException e) {
+        logger.warn("Upload rejected: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body("Upload larger than " + e.getMaxUploadSize() + " bytes");
+    }
+
     /**
      * Handles exceptions of type {@code Exception} and logs the exception details.
      *
@@ -0,0 +1,13 @@
+package com.velocity.limits.exception;
+
+/**
+ * Thrown when a request holds a fund load that cannot be decided as sent, before any
+ * load of the request is decided, and answered by the {@link GlobalExceptionHandler}
+ * with 400 Bad Request instead of a 500.
+ */
+public class InvalidLoadException extends RuntimeException {
+
+    public InvalidLoadException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,34 @@
+package com.velocity.limits.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * Thrown when a request reached a node that cannot serve it in its cluster, and
+ * answered by the {@link GlobalExceptionHandler} with its status instead of a 500.
+ * <p>
+ * {@link #MISDIRECTED_REQUEST} means a forwarded customer is owned by another node,
+ * so the nodes disagree on the cluster members; {@link HttpStatus#CONFLICT} means the
+ * request needs a standalone node.
+ */
+public class MisroutedException extends RuntimeException {
+
+    /**
+     * 421 Misdirected Request, which {@link HttpStatus} does not define.
+     */
+    public static final HttpStatusCode MISDIRECTED_REQUEST = HttpStatusCode.valueOf(421);
+
+    private final HttpStatusCode status;
+
+    public MisroutedException(HttpStatusCode status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * @return The response status, 421 or 409.
+     */
+    public HttpStatusCode getStatus() {
+        return status;
+    }
+}
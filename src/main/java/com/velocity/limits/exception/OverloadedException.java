@@ -0,0 +1,38 @@
+package com.velocity.limits.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a request is turned away because the service is over capacity, and
+ * answered by the {@link GlobalExceptionHandler} with its status and a
+ * {@code Retry-After} header instead of a 500.
+ * <p>
+ * {@link HttpStatus#TOO_MANY_REQUESTS} means the request's queue was full when it
+ * arrived; {@link HttpStatus#SERVICE_UNAVAILABLE} means it queued but was not admitted
+ * in time.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private final HttpStatus status;
+    private final long retryAfterSeconds;
+
+    public OverloadedException(HttpStatus status, long retryAfterSeconds, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return The response status, 429 or 503.
+     */
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The number of seconds after which the client may retry.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,256 @@
+package com.velocity.limits.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.velocity.limits.admission.AdmissionLimiter;
+import com.velocity.limits.admission.AdmissionLimiter.Lane;
+import com.velocity.limits.events.DecisionStream;
+import com.velocity.limits.rules.RulePlan;
+import com.velocity.limits.service.LoadIdFilter;
+import com.velocity.limits.util.CustomerDictionary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for fund load processing.
+ * <p>
+ * Every meter is registered up front: one timer per {@link Stage}, accepted, rejected and
+ * duplicate decision counters, and one rejection counter per rule of the {@link RulePlan}, indexed
+ * like the plan. Recording is then an array lookup plus a counter or timer update, with
+ * durations measured by the caller from {@link System#nanoTime()}, so nothing is
+ * allocated per load. Timers publish a percentile histogram, exposed through the
+ * actuator {@code /actuator/prometheus} endpoint. Caches registered with
+ * {@link #monitor} publish the standard {@code cache.*} meters, tagged with their name,
+ * and a monitored {@link CustomerDictionary} its size and footprint. A monitored
+ * {@link AdmissionLimiter} publishes its limit and per-lane in-flight and queued
+ * requests, and its rejections are counted by lane and status. A monitored
+ * {@link DecisionStream} publishes its buffered events and delivery counts.
+ */
+@Component
+public class FundLoadMetrics {
+
+    /**
+     * The timed stages of fund load processing.
+     */
+    public enum Stage {
+        /** Reading and parsing an uploaded file. */
+        PARSE,
+        /** Evaluating the velocity rules for one load. */
+        DECIDE,
+        /** Saving or buffering one accepted load. */
+        PERSIST,
+        /** Committing a batch of buffered loads. */
+        FLUSH,
+        /** Processing a parsed batch of loads, including its flush. */
+        PROCESS,
+        /** Writing a chunk of statuses to a streamed response. */
+        SERIALIZE,
+        /** Answering a batch of what-if queries. */
+        PRECHECK
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Timer[] stageTimers;
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter duplicate;
+    private final Counter[] ruleRejections;
+    private final long[] sampledCounts = new long[Stage.values().length];
+    private final double[] sampledNanos = new double[Stage.values().length];
+
+    public FundLoadMetrics(MeterRegistry meterRegistry, RulePlan rulePlan) {
+        this.meterRegistry = meterRegistry;
+        Stage[] stages = Stage.values();
+        stageTimers = new Timer[stages.length];
+        for (Stage stage : stages) {
+            stageTimers[stage.ordinal()] = Timer.builder("fund.loads.stage")
+                    .description("Time spent in each stage of fund load processing")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+        accepted = decisionCounter(meterRegistry, "accepted");
+        rejected = decisionCounter(meterRegistry, "rejected");
+        duplicate = decisionCounter(meterRegistry, "duplicate");
+        ruleRejections = new Counter[rulePlan.ruleCount()];
+        for (int rule = 0; rule < ruleRejections.length; rule++) {
+            ruleRejections[rule] = Counter.builder("fund.loads.rejections")
+                    .description("Fund loads rejected, by the first rule they violated")
+                    .tag("rule", rulePlan.ruleName(rule))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param stage      The stage.
+     * @param startNanos The {@link System#nanoTime()} at the start of the stage.
+     */
+    public void record(Stage stage, long startNanos) {
+        stageTimers[stage.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the average duration of a stage recorded since the previous sample of it,
+     * and starts a new sample.
+     *
+     * @param stage The stage.
+     * @return The average duration in nanoseconds, or {@code -1} if the stage was not recorded.
+     */
+    public synchronized long sampleAverageNanos(Stage stage) {
+        Timer timer = stageTimers[stage.ordinal()];
+        long count = timer.count();
+        double nanos = timer.totalTime(TimeUnit.NANOSECONDS);
+        long sampleCount = count - sampledCounts[stage.ordinal()];
+        double sampleNanos = nanos - sampledNanos[stage.ordinal()];
+        sampledCounts[stage.ordinal()] = count;
+        sampledNanos[stage.ordinal()] = nanos;
+        return sampleCount <= 0 ? -1 : (long) (sampleNanos / sampleCount);
+    }
+
+    /**
+     * Counts an accepted load.
+     */
+    public void accepted() {
+        accepted.increment();
+    }
+
+    /**
+     * Counts a rejected load.
+     *
+     * @param rule The index of the rule that rejected the load.
+     */
+    public void rejected(int rule) {
+        rejected.increment();
+        ruleRejections[rule].increment();
+    }
+
+    /**
+     * Counts a load answered as a duplicate of an earlier one.
+     */
+    public void duplicate() {
+        duplicate.increment();
+    }
+
+    /**
+     * Publishes the size, hits, misses, loads and evictions of a cache, which must
+     * record statistics.
+     *
+     * @param cache The cache.
+     * @param name  The cache name, used as the {@code cache} tag.
+     */
+    public void monitor(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    /**
+     * Publishes the number of customer ids interned in a dictionary and the heap it holds.
+     *
+     * @param customers The customer dictionary.
+     */
+    public void monitor(CustomerDictionary customers) {
+        Gauge.builder("fund.customers.interned", customers, CustomerDictionary::size)
+                .description("Customer ids interned as dense indexes")
+                .register(meterRegistry);
+        Gauge.builder("fund.customers.dictionary.memory", customers, CustomerDictionary::memoryBytes)
+                .description("Heap held by the customer id dictionary")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes the fill and false positive rate of the Bloom filter of a load id filter,
+     * and the heap its bits hold.
+     *
+     * @param loadIdFilter The load id filter.
+     */
+    public void monitor(LoadIdFilter loadIdFilter) {
+        Gauge.builder("fund.dedup.filter.fill", loadIdFilter, LoadIdFilter::fill)
+                .description("Fraction of bits set in the Bloom filter stage of new fund load ids")
+                .register(meterRegistry);
+        Gauge.builder("fund.dedup.filter.false-positive-rate", loadIdFilter, LoadIdFilter::falsePositiveRate)
+                .description("Estimated fraction of new fund load ids looked up in the store")
+                .register(meterRegistry);
+        Gauge.builder("fund.dedup.filter.memory", loadIdFilter, filter -> filter.bitCount() / Byte.SIZE)
+                .description("Heap held by the fund load id Bloom filter")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes the concurrency limit of an admission limiter and its requests in flight
+     * and queued, by lane.
+     *
+     * @param admissionLimiter The admission limiter.
+     */
+    public void monitor(AdmissionLimiter admissionLimiter) {
+        Gauge.builder("fund.admission.limit", admissionLimiter, AdmissionLimiter::limit)
+                .description("Concurrency limit of fund load requests")
+                .register(meterRegistry);
+        for (Lane lane : Lane.values()) {
+            String laneName = lane.name().toLowerCase();
+            Gauge.builder("fund.admission.in-flight", admissionLimiter, limiter -> limiter.inFlight(lane))
+                    .description("Fund load requests being processed, by lane")
+                    .tag("lane", laneName)
+                    .register(meterRegistry);
+            Gauge.builder("fund.admission.queued", admissionLimiter, limiter -> limiter.queued(lane))
+                    .description("Fund load requests waiting to be admitted, by lane")
+                    .tag("lane", laneName)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Publishes the events buffered by a decision stream, and the events it delivered,
+     * failed deliveries and decisions dropped.
+     *
+     * @param decisionStream The decision stream.
+     */
+    public void monitor(DecisionStream decisionStream) {
+        Gauge.builder("fund.events.buffered", decisionStream, DecisionStream::buffered)
+                .description("Decision events published and not yet in the outbox")
+                .register(meterRegistry);
+        Gauge.builder("fund.events.outbox.pending", decisionStream, DecisionStream::pending)
+                .description("Decision events in the outbox not yet taken by every sink")
+                .register(meterRegistry);
+        FunctionCounter.builder("fund.events.full-waits", decisionStream, DecisionStream::fullWaits)
+                .description("Decisions that found the event buffer full and waited for a slot")
+                .register(meterRegistry);
+        FunctionCounter.builder("fund.events.delivered", decisionStream, DecisionStream::delivered)
+                .description("Decision events delivered, summed over the sinks")
+                .register(meterRegistry);
+        FunctionCounter.builder("fund.events.delivery-failures", decisionStream, DecisionStream::deliveryFailures)
+                .description("Failed decision event batch deliveries, each retried")
+                .register(meterRegistry);
+        FunctionCounter.builder("fund.events.dropped", decisionStream, DecisionStream::dropped)
+                .description("Decision events lost to an encoding or outbox failure, or made after shutdown")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a request turned away by admission control.
+     *
+     * @param lane   The lane of the request.
+     * @param status The status it was answered with.
+     */
+    public void admissionRejected(Lane lane, HttpStatus status) {
+        meterRegistry.counter("fund.admission.rejections", "lane", lane.name().toLowerCase(),
+                "status", String.valueOf(status.value())).increment();
+    }
+
+    private static Counter decisionCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("fund.loads.decisions")
+                .description("Fund load decisions, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -2,10 +2,21 @@ package com.velocity.limits.model;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.data.domain.Persistable;
 
 import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
 
 /**
  * Entity class representing a fund load transaction.
@@ -18,12 +29,27 @@ import java.time.LocalDateTime;
  * the entity. This field holds a unique identifier for each fund load transaction.
  *
  * The {@code customerId} field represents the customer ID associated with the fund load transaction.
+ * Together with {@code time} it forms the {@code idx_fund_load_customer_time} index, which serves
+ * the per-customer time range queries of the repository.
  *
  * The {@code loadAmount} field stores the amount loaded, represented as a {@code BigDecimal}.
  *
  * The {@code time} field captures the timestamp of the fund load transaction, indicating
  * when the load occurred.
  *
+ * The {@code sequence} field numbers accepted loads in the order they were decided. It
+ * is indexed ({@code idx_fund_load_sequence}) so that loads persisted after an aggregate
+ * snapshot can be replayed on startup.
+ *
+ * The {@code week} field holds the Monday of the ISO week of {@code time}, set when the
+ * load is first persisted. It partitions the table by week: the
+ * {@code idx_fund_load_week} index lets the retention job read and delete one week
+ * without touching the others.
+ *
+ * The entity implements {@link Persistable} so that saving a freshly mapped load issues a
+ * plain insert instead of the select-then-merge Spring Data performs for assigned ids.
+ * The transient {@code isNew} flag is cleared once the entity has been loaded or persisted.
+ *
  * The {@code FundLoad} class is annotated with {@code @Data} from Lombok, which generates
  * boilerplate code for standard methods such as getters, setters, equals, hashCode, and toString.
  *
@@ -31,11 +57,43 @@ import java.time.LocalDateTime;
  * @version 1.0
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_fund_load_customer_time", columnList = "customerId, time"),
+        @Index(name = "idx_fund_load_sequence", columnList = "sequence"),
+        @Index(name = "idx_fund_load_week", columnList = "week")
+})
 @Data
-public class FundLoad {
+public class FundLoad implements Persistable<String> {
     @Id
     private String id;
     private String customerId;
     private BigDecimal loadAmount;
     private LocalDateTime time;
+    private Long sequence;
+    private LocalDate week;
+
+    @Transient
+    @EqualsAndHashCode.Exclude
+    private boolean isNew = true;
+
+    @PrePersist
+    void assignWeek() {
+        if (week == null && time != null) {
+            week = weekOf(time);
+        }
+    }
+
+    /**
+     * @param time A load time.
+     * @return The Monday of the ISO week of the time.
+     */
+    public static LocalDate weekOf(LocalDateTime time) {
+        return time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
 }
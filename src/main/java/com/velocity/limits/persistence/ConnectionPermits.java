@@ -0,0 +1,78 @@
+package com.velocity.limits.persistence;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of threads using the database at once.
+ * <p>
+ * Every repository call of the JPA persistence runs under a permit, and there are
+ * {@code fund.load.db.max-concurrency} of them, by default as many as the connection
+ * pool has connections. Request and batch threads can outnumber the connections; the
+ * excess queue here, in arrival order, instead of waiting on the pool and failing once
+ * its connection timeout expires.
+ * <p>
+ * The time of each call, including its wait for a permit, is summed so that the
+ * average repository latency can be sampled, as admission control does.
+ */
+@Component
+public class ConnectionPermits {
+
+    private final Semaphore permits;
+    private final LongAdder callNanos = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+
+    public ConnectionPermits(@Value("${fund.load.db.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Database concurrency must be positive: " + maxConcurrency);
+        }
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * Runs a database call under a permit.
+     *
+     * @param call The database call.
+     * @return The result of the call.
+     */
+    public <T> T call(Supplier<T> call) {
+        long start = System.nanoTime();
+        permits.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            permits.release();
+            callNanos.add(System.nanoTime() - start);
+            calls.increment();
+        }
+    }
+
+    /**
+     * Returns the average time of the database calls finished since the previous sample,
+     * and starts a new sample.
+     *
+     * @return The average call time in nanoseconds, including the wait for a permit, or
+     * {@code -1} if no call finished.
+     */
+    public long sampleLatencyNanos() {
+        long count = calls.sumThenReset();
+        long nanos = callNanos.sumThenReset();
+        return count == 0 ? -1 : nanos / count;
+    }
+
+    /**
+     * Runs a database call without a result under a permit.
+     *
+     * @param call The database call.
+     */
+    public void run(Runnable call) {
+        call(() -> {
+            call.run();
+            return null;
+        });
+    }
+}
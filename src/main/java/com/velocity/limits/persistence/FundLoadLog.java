@@ -0,0 +1,436 @@
+package com.velocity.limits.persistence;
+
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.util.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of fund loads in fixed-width records, spread over memory-mapped
+ * segment files.
+ * <p>
+ * Each record holds the sequence number, the amount in cents, the time (epoch second
+ * and nanosecond, UTC) and the id and customer ID (UTF-8, at most {@value #MAX_ID_BYTES}
+ * bytes each), followed by a CRC-32 of the rest. Segments are pre-sized files named by
+ * their number; a new one is started when the last is full, after forcing it to disk.
+ * <p>
+ * {@link #append} copies a record into the mapped segment and returns; {@link #sync()}
+ * forces every appended record to disk. Concurrent callers of {@link #sync()} are
+ * committed together: while one forces the segment, the others wait and then find
+ * their records already durable (group commit).
+ * <p>
+ * {@link #open} recovers the log: every segment is scanned up to the first record that
+ * is unwritten or fails its checksum, which is where a crash interrupted appending. The
+ * rest of the last segment is zeroed, so records that reached the disk out of order
+ * after a torn one are never resurrected. The scan also rebuilds the in-memory index of
+ * stored ids behind {@link #contains}: a table of {@link IdFingerprints} per segment,
+ * sized for its records, so the index takes memory in proportion to the segments kept,
+ * 16 to 32 bytes per record of {@value #RECORD_SIZE}, and never grows in one piece. A
+ * lookup probes the segments newest first.
+ * <p>
+ * A record appended with an id already in the log supersedes the earlier records of
+ * the id, which {@link #forEach} skips, so that a load saved again replaces the stored
+ * one as {@link FundLoadStore} requires. The position of the last record is kept for
+ * each id appended more than once, which is rare, as loads are decided once per id; the
+ * {@link FundLoadLogCompactor} drops superseded records from disk.
+ */
+public class FundLoadLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FundLoadLog.class);
+
+    public static final int RECORD_SIZE = 160;
+    public static final int MAX_ID_BYTES = 63;
+
+    private static final int SEQUENCE_OFFSET = 0;
+    private static final int CENTS_OFFSET = 8;
+    private static final int EPOCH_SECOND_OFFSET = 16;
+    private static final int NANO_OFFSET = 24;
+    private static final int ID_OFFSET = 28;
+    private static final int CUSTOMER_ID_OFFSET = ID_OFFSET + 1 + MAX_ID_BYTES;
+    private static final int CHECKSUM_OFFSET = CUSTOMER_ID_OFFSET + 1 + MAX_ID_BYTES;
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path directory;
+    private final int segmentRecords;
+
+    /**
+     * Every segment, oldest first; the last one is appended to. Guarded by {@code this}.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * The position in the log of the last record of each id appended more than once, by
+     * fingerprint; earlier records of those ids are superseded. Guarded by {@code this}.
+     */
+    private final Map<Long, Long> lastPositions = new HashMap<>();
+
+    private long appendedRecords;
+    private long maxSequence;
+
+    /**
+     * Held while forcing the log.
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    /**
+     * Number of records known to be durable. Guarded by {@code syncLock}.
+     */
+    private long syncedRecords;
+
+    private FundLoadLog(Path directory, int segmentBytes) {
+        if (segmentBytes < RECORD_SIZE) {
+            throw new IllegalArgumentException("Segments must hold at least one record: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentBytes / RECORD_SIZE;
+    }
+
+    /**
+     * Opens the log in a directory, creating it if needed, and recovers its segments.
+     *
+     * @param directory    The directory of the segment files.
+     * @param segmentBytes The size of new segments, rounded down to whole records.
+     * @return The open log.
+     * @throws IOException If the segments cannot be read or created.
+     */
+    public static FundLoadLog open(Path directory, int segmentBytes) throws IOException {
+        FundLoadLog log = new FundLoadLog(directory, segmentBytes);
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            log.recover(files.get(i), i == files.size() - 1);
+        }
+        log.syncedRecords = log.appendedRecords;
+        logger.info("Opened fund load log {} with {} records in {} segments", directory, log.appendedRecords,
+                log.segments.size());
+        return log;
+    }
+
+    /**
+     * Appends a fund load. It is durable once a later {@link #sync()} returns.
+     *
+     * @param fundLoad The fund load, with a sequence number and an amount in whole cents.
+     * @throws IllegalArgumentException If the id or customer ID is longer than {@value #MAX_ID_BYTES} bytes.
+     */
+    public void append(FundLoad fundLoad) {
+        byte[] record = encode(fundLoad);
+        synchronized (this) {
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || segment.records == segment.capacity) {
+                segment = roll(segment);
+            }
+            segment.buffer.put(segment.records * RECORD_SIZE, record);
+            addId(segment, fundLoad.getId(), appendedRecords);
+            segment.records++;
+            segment.maxSequence = Math.max(segment.maxSequence, fundLoad.getSequence());
+            maxSequence = Math.max(maxSequence, fundLoad.getSequence());
+            appendedRecords++;
+        }
+    }
+
+    /**
+     * Forces every record appended before the call to disk.
+     */
+    public void sync() {
+        long target;
+        synchronized (this) {
+            target = appendedRecords;
+        }
+        syncLock.lock();
+        try {
+            if (syncedRecords >= target) {
+                return; // committed by the sync we waited for
+            }
+            Segment segment;
+            int records;
+            long upTo;
+            synchronized (this) {
+                // Segments before the last were forced in full when the next one was started
+                segment = segments.get(segments.size() - 1);
+                records = segment.records;
+                upTo = appendedRecords;
+            }
+            if (records > segment.syncedRecords) {
+                segment.buffer.force(segment.syncedRecords * RECORD_SIZE, (records - segment.syncedRecords) * RECORD_SIZE);
+                segment.syncedRecords = records;
+            }
+            syncedRecords = upTo;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Passes every fund load with a sequence number higher than the given one to the
+     * consumer, in log order, skipping superseded records. Segments without such loads
+     * are skipped unread.
+     *
+     * @param sequence The sequence number after which to pass fund loads; {@code 0} for all.
+     * @param consumer Receives each fund load.
+     */
+    public void forEach(long sequence, Consumer<FundLoad> consumer) {
+        List<Segment> snapshot;
+        int[] records;
+        long[] maxSequences;
+        Map<Long, Long> superseding;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+            records = new int[snapshot.size()];
+            maxSequences = new long[snapshot.size()];
+            for (int i = 0; i < snapshot.size(); i++) {
+                records[i] = snapshot.get(i).records;
+                maxSequences[i] = snapshot.get(i).maxSequence;
+            }
+            superseding = lastPositions.isEmpty() ? Map.of() : new HashMap<>(lastPositions);
+        }
+        byte[] record = new byte[RECORD_SIZE];
+        long position = 0;
+        for (int i = 0; i < snapshot.size(); position += records[i], i++) {
+            if (maxSequences[i] <= sequence) {
+                continue;
+            }
+            for (int index = 0; index < records[i]; index++) {
+                snapshot.get(i).buffer.get(index * RECORD_SIZE, record);
+                FundLoad fundLoad = decode(record);
+                if (fundLoad != null && fundLoad.getSequence() > sequence
+                        && !isSuperseded(superseding, fundLoad.getId(), position + index)) {
+                    consumer.accept(fundLoad);
+                }
+            }
+        }
+    }
+
+    private static boolean isSuperseded(Map<Long, Long> superseding, String id, long position) {
+        if (superseding.isEmpty()) {
+            return false;
+        }
+        Long lastPosition = superseding.get(IdFingerprints.fingerprint(id));
+        return lastPosition != null && lastPosition != position;
+    }
+
+    /**
+     * Records the id of the record at a position of the log, in its segment. Called
+     * holding {@code this}.
+     */
+    private void addId(Segment segment, String id, long position) {
+        long fingerprint = IdFingerprints.fingerprint(id);
+        if (containsFingerprint(fingerprint)) {
+            lastPositions.put(fingerprint, position);
+        }
+        segment.ids.add(fingerprint);
+    }
+
+    private boolean containsFingerprint(long fingerprint) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (segments.get(i).ids.contains(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param id The fund load id.
+     * @return {@code true} if a fund load with the id was appended, or, with a probability
+     * of about one in 2<sup>64</sup> per stored id, if one with the same fingerprint was.
+     */
+    public boolean contains(String id) {
+        long fingerprint = IdFingerprints.fingerprint(id);
+        synchronized (this) {
+            return containsFingerprint(fingerprint);
+        }
+    }
+
+    /**
+     * @return The highest sequence number appended, or {@code 0} if the log is empty.
+     */
+    public synchronized long maxSequence() {
+        return maxSequence;
+    }
+
+    /**
+     * @return The number of records appended, including those recovered.
+     */
+    public synchronized long recordCount() {
+        return appendedRecords;
+    }
+
+    /**
+     * Forces every appended record to disk and releases the segments.
+     */
+    @Override
+    public void close() {
+        sync();
+        synchronized (this) {
+            segments.clear();
+        }
+    }
+
+    private void recover(Path file, boolean last) throws IOException {
+        Segment segment = map(file, (int) (Files.size(file) / RECORD_SIZE));
+        // Listed first, so an id repeated within the segment is found superseded
+        segments.add(segment);
+        byte[] record = new byte[RECORD_SIZE];
+        while (segment.records < segment.capacity) {
+            segment.buffer.get(segment.records * RECORD_SIZE, record);
+            FundLoad fundLoad = decode(record);
+            if (fundLoad == null) {
+                break;
+            }
+            addId(segment, fundLoad.getId(), appendedRecords + segment.records);
+            segment.maxSequence = Math.max(segment.maxSequence, fundLoad.getSequence());
+            segment.records++;
+        }
+        if (segment.records < segment.capacity) {
+            if (last) {
+                // Clear the torn tail, so appends continue from the last intact record
+                byte[] zeros = new byte[RECORD_SIZE];
+                for (int index = segment.records; index < segment.capacity; index++) {
+                    segment.buffer.put(index * RECORD_SIZE, zeros);
+                }
+                segment.buffer.force();
+            } else {
+                logger.warn("Segment {} is damaged after record {}; the rest of it is skipped", file, segment.records);
+            }
+        }
+        segment.syncedRecords = segment.records;
+        maxSequence = Math.max(maxSequence, segment.maxSequence);
+        appendedRecords += segment.records;
+    }
+
+    private Segment roll(Segment previous) {
+        long number = 0;
+        if (previous != null) {
+            previous.buffer.force();
+            number = Long.parseLong(previous.path.getFileName().toString().replace(SEGMENT_SUFFIX, "")) + 1;
+        }
+        Path file = directory.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+        try {
+            Segment segment = map(file, segmentRecords);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create log segment " + file, e);
+        }
+    }
+
+    private static Segment map(Path file, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE),
+                    capacity);
+        }
+    }
+
+    private static byte[] encode(FundLoad fundLoad) {
+        byte[] id = idBytes(fundLoad.getId());
+        byte[] customerId = idBytes(fundLoad.getCustomerId());
+        LocalDateTime time = fundLoad.getTime();
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(SEQUENCE_OFFSET, fundLoad.getSequence());
+        record.putLong(CENTS_OFFSET, Money.toCents(fundLoad.getLoadAmount()));
+        record.putLong(EPOCH_SECOND_OFFSET, time.toEpochSecond(ZoneOffset.UTC));
+        record.putInt(NANO_OFFSET, time.getNano());
+        record.put(ID_OFFSET, (byte) id.length).put(ID_OFFSET + 1, id);
+        record.put(CUSTOMER_ID_OFFSET, (byte) customerId.length).put(CUSTOMER_ID_OFFSET + 1, customerId);
+        record.putInt(CHECKSUM_OFFSET, checksum(record.array()));
+        return record.array();
+    }
+
+    /**
+     * @return The fund load in the record, or {@code null} if the record is unwritten or damaged.
+     */
+    private static FundLoad decode(byte[] bytes) {
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        long sequence = record.getLong(SEQUENCE_OFFSET);
+        if (sequence <= 0 || record.getInt(CHECKSUM_OFFSET) != checksum(bytes)) {
+            return null;
+        }
+        FundLoad fundLoad = new FundLoad();
+        fundLoad.setSequence(sequence);
+        fundLoad.setLoadAmount(Money.fromCents(record.getLong(CENTS_OFFSET)));
+        fundLoad.setTime(LocalDateTime.ofEpochSecond(record.getLong(EPOCH_SECOND_OFFSET),
+                record.getInt(NANO_OFFSET), ZoneOffset.UTC));
+        fundLoad.setId(new String(bytes, ID_OFFSET + 1, bytes[ID_OFFSET], StandardCharsets.UTF_8));
+        fundLoad.setCustomerId(new String(bytes, CUSTOMER_ID_OFFSET + 1, bytes[CUSTOMER_ID_OFFSET],
+                StandardCharsets.UTF_8));
+        fundLoad.setNew(false);
+        return fundLoad;
+    }
+
+    private static byte[] idBytes(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Id longer than " + MAX_ID_BYTES + " bytes: " + id);
+        }
+        return bytes;
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, CHECKSUM_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A mapped segment file.
+     */
+    private static final class Segment {
+
+        final Path path;
+        final MappedByteBuffer buffer;
+        final int capacity;
+
+        /**
+         * Fingerprints of the ids of the records written. Guarded by the log.
+         */
+        final IdFingerprints ids;
+
+        /**
+         * Number of records written. Guarded by the log.
+         */
+        int records;
+
+        /**
+         * Highest sequence number in the segment. Guarded by the log.
+         */
+        long maxSequence;
+
+        /**
+         * Number of records forced to disk by {@link #sync()}. Guarded by its lock.
+         */
+        int syncedRecords;
+
+        Segment(Path path, MappedByteBuffer buffer, int capacity) {
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.ids = new IdFingerprints(Math.max(1, capacity));
+        }
+    }
+}
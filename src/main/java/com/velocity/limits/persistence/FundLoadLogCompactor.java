@@ -0,0 +1,70 @@
+package com.velocity.limits.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Offline compaction of a {@link FundLoadLog}: copies it to a new directory, keeping
+ * only the last record of each id and filling every segment but the last.
+ * <p>
+ * Records are superseded when a load is saved again with a stored id, and segments
+ * are left partly filled after recovering a torn tail. Run it while the service is
+ * stopped, then point {@code fund.load.wal.directory} at the new directory:
+ * <pre>
+ * java -cp limits.jar -Dloader.main=com.velocity.limits.persistence.FundLoadLogCompactor \
+ *     org.springframework.boot.loader.PropertiesLauncher &lt;source-dir&gt; &lt;target-dir&gt; [segment-size-mb]
+ * </pre>
+ */
+public final class FundLoadLogCompactor {
+
+    private FundLoadLogCompactor() {
+    }
+
+    /**
+     * The number of records read from the source log and written to the target log.
+     */
+    public record Result(long read, long written) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: FundLoadLogCompactor <source-dir> <target-dir> [segment-size-mb]");
+            System.exit(2);
+        }
+        int segmentSizeMb = args.length == 3 ? Integer.parseInt(args[2]) : 64;
+        Result result = compact(Path.of(args[0]), Path.of(args[1]), Math.multiplyExact(segmentSizeMb, 1 << 20));
+        System.out.printf("Compacted %d records into %d%n", result.read(), result.written());
+    }
+
+    /**
+     * Compacts a log into an empty or missing directory.
+     *
+     * @param source       The directory of the log to compact.
+     * @param target       The directory of the compacted log.
+     * @param segmentBytes The size of the compacted segments.
+     * @return The number of records read and written.
+     * @throws IOException If either log cannot be opened, or the target directory is not empty.
+     */
+    public static Result compact(Path source, Path target, int segmentBytes) throws IOException {
+        if (Files.isDirectory(target)) {
+            try (Stream<Path> entries = Files.list(target)) {
+                if (entries.findAny().isPresent()) {
+                    throw new IOException("Target directory is not empty: " + target);
+                }
+            }
+        }
+        try (FundLoadLog sourceLog = FundLoadLog.open(source, segmentBytes);
+             FundLoadLog targetLog = FundLoadLog.open(target, segmentBytes)) {
+            // The scan skips superseded records, leaving the last record of each id
+            long[] written = {0};
+            sourceLog.forEach(0, fundLoad -> {
+                targetLog.append(fundLoad);
+                written[0]++;
+            });
+            targetLog.sync();
+            return new Result(sourceLog.recordCount(), written[0]);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.velocity.limits.persistence;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.repository.FundLoadRepository;
+import com.velocity.limits.util.FundLoadLineWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves weeks of fund loads older than {@code fund.load.retention.weeks} out of the
+ * fund load table into gzipped archives in {@code fund.load.retention.archive-directory}.
+ * <p>
+ * The table is partitioned by the {@code week} column of {@link FundLoad}, so a week is
+ * read and deleted through its index without scanning the others, and the table, and
+ * with it every scan and per-customer query, stays the size of the retained weeks
+ * however much history is archived. Retention counts back from the newest week with
+ * loads rather than the clock, so replayed historical files age like live traffic, but
+ * weeks after the current one are ignored, so that a load dated in the future cannot
+ * age out current weeks.
+ * <p>
+ * Each archive holds one week, one load per line in the upload format, and can be
+ * uploaded again to {@code loadFromFile}. It is named after the week and its highest
+ * sequence number, and written to a temporary file that is moved into place only once
+ * the delete of the archived loads has committed, so a week kept in the table is never
+ * also in an archive. Only the archived loads are deleted: loads decided after the
+ * week was read are left for the next pass, and if a load was written to the week in
+ * between with a lower sequence number, by a batched write, the delete is rolled back,
+ * the temporary file discarded, and the week archived again by the next pass. A crash
+ * between the commit and the move leaves the archive under its temporary name.
+ * Archived loads no longer count towards limits or duplicate checks after a restart:
+ * retain at least the longest rule window.
+ * <p>
+ * Runs every {@code fund.load.retention.interval-ms} with the JPA persistence, and
+ * first fills in the week of rows stored before the column existed. Rows without a
+ * time have no week, are never archived, and are counted in a warning. Disabled when
+ * the retention is {@code 0}.
+ */
+@Component
+@ConditionalOnProperty(name = "fund.load.persistence", havingValue = "jpa", matchIfMissing = true)
+public class FundLoadRetention {
+
+    private static final Logger logger = LoggerFactory.getLogger(FundLoadRetention.class);
+
+    private static final int PAGE_SIZE = 10_000;
+
+    @Autowired
+    private FundLoadRepository fundLoadRepository;
+
+    @Autowired
+    private ConnectionPermits connectionPermits;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${fund.load.retention.weeks:0}")
+    private int retentionWeeks;
+
+    @Value("${fund.load.retention.archive-directory:data/archive}")
+    private String archiveDirectory;
+
+    @Value("${fund.load.retention.interval-ms:3600000}")
+    private long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (retentionWeeks <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fund-load-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::archiveQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Archives and deletes every week older than the retention.
+     *
+     * @return The number of fund loads archived.
+     * @throws IOException If an archive cannot be written; its week is then kept.
+     */
+    public synchronized long archive() throws IOException {
+        backfillWeeks();
+        LocalDate currentWeek = FundLoad.weekOf(LocalDateTime.now());
+        LocalDate newestWeek = connectionPermits.call(() -> fundLoadRepository.findNewestWeekUpTo(currentWeek));
+        if (newestWeek == null) {
+            return 0;
+        }
+        LocalDate cutoff = newestWeek.minusWeeks(retentionWeeks - 1L);
+        long archived = 0;
+        LocalDate week;
+        LocalDate previous = null;
+        while ((week = connectionPermits.call(fundLoadRepository::findOldestWeek)) != null && week.isBefore(cutoff)
+                && !week.equals(previous)) {
+            archived += archiveWeek(week);
+            previous = week;
+        }
+        return archived;
+    }
+
+    /**
+     * Writes one week to a temporary file, deletes the archived loads from the table, then
+     * moves the file into place as the week's archive.
+     */
+    private long archiveWeek(LocalDate week) throws IOException {
+        Path directory = Path.of(archiveDirectory);
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "fund-loads-" + week, ".tmp");
+        long count = 0;
+        long maxSequence = 0;
+        try {
+            try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024);
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                Pageable pageable = PageRequest.of(0, PAGE_SIZE, Sort.by("sequence", "id"));
+                Slice<FundLoad> slice;
+                do {
+                    Pageable page = pageable;
+                    slice = connectionPermits.call(() -> fundLoadRepository.findByWeek(week, page));
+                    for (FundLoad fundLoad : slice) {
+                        FundLoadLineWriter.write(generator, fundLoad.getId(), fundLoad.getCustomerId(),
+                                fundLoad.getLoadAmount(), fundLoad.getTime());
+                        count++;
+                        maxSequence = Math.max(maxSequence, fundLoad.getSequence() == null ? 0 : fundLoad.getSequence());
+                    }
+                    pageable = pageable.next();
+                } while (slice.hasNext());
+            }
+            long archivedCount = count;
+            long archivedSequence = maxSequence;
+            boolean deleted = connectionPermits.call(() -> transactionTemplate.execute(status -> {
+                if (fundLoadRepository.deleteByWeekUpTo(week, archivedSequence) != archivedCount) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                return true;
+            }));
+            if (!deleted) {
+                logger.warn("Fund loads were written to the week of {} while it was archived, kept it for the next pass",
+                        week);
+                return 0;
+            }
+            Path archive = directory.resolve("fund-loads-" + week + "-" + maxSequence + ".ndjson.gz");
+            Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Archived {} fund loads of the week of {} to {}", count, week, archive);
+            return count;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Records the week of fund loads stored before the week column existed, skipping those
+     * without a time.
+     */
+    private void backfillWeeks() {
+        Pageable firstPage = PageRequest.of(0, PAGE_SIZE);
+        Slice<FundLoad> slice;
+        long filled = 0;
+        do {
+            // Filled rows drop out of the query, so the first page is always the next one
+            slice = connectionPermits.call(() -> fundLoadRepository.findByWeekIsNullAndTimeIsNotNull(firstPage));
+            slice.forEach(fundLoad -> fundLoad.setWeek(FundLoad.weekOf(fundLoad.getTime())));
+            Slice<FundLoad> page = slice;
+            connectionPermits.call(() -> fundLoadRepository.saveAll(page));
+            filled += slice.getNumberOfElements();
+        } while (slice.hasNext());
+        if (filled > 0) {
+            logger.info("Recorded the week of {} fund loads", filled);
+        }
+        long timeless = connectionPermits.call(fundLoadRepository::countByWeekIsNullAndTimeIsNull);
+        if (timeless > 0) {
+            logger.warn("{} fund loads have no time, so no week, and are never archived", timeless);
+        }
+    }
+
+    private void archiveQuietly() {
+        try {
+            archive();
+        } catch (Exception e) {
+            logger.error("Failed to archive fund loads", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.velocity.limits.persistence;
+
+import com.velocity.limits.model.FundLoad;
+
+import java.util.function.Consumer;
+
+/**
+ * Persistence of accepted fund loads.
+ * <p>
+ * The implementation is chosen with {@code fund.load.persistence}: {@code jpa} (the
+ * default) stores loads in the fund load table through {@link JpaFundLoadStore}, and
+ * {@code wal} appends them to a memory-mapped write-ahead log through
+ * {@link WalFundLoadStore}. Loads are only ever added; a load saved again with an id
+ * that is already stored replaces the stored one.
+ * <p>
+ * Ids and customer IDs are limited to {@link #maxIdBytes()} bytes of UTF-8: 255 in the
+ * table's columns and {@value FundLoadLog#MAX_ID_BYTES} in the fixed-size records of the
+ * log. Requests holding longer ones are refused with 400 before any of their loads is
+ * decided, since a store refusing an accepted load would fail the request after the
+ * fact.
+ */
+public interface FundLoadStore {
+
+    /**
+     * Persists a fund load before returning.
+     *
+     * @param fundLoad The accepted fund load.
+     */
+    void save(FundLoad fundLoad);
+
+    /**
+     * Persists a fund load in the background, together with others. The load is only
+     * durable once a later {@link #flush()} returns.
+     *
+     * @param fundLoad The accepted fund load.
+     */
+    void write(FundLoad fundLoad);
+
+    /**
+     * Waits until every fund load written before the call is durable.
+     */
+    void flush();
+
+    /**
+     * Passes every stored fund load to the consumer.
+     *
+     * @param consumer Receives each fund load.
+     */
+    void forEach(Consumer<FundLoad> consumer);
+
+    /**
+     * Passes every stored fund load with a sequence number higher than the given one
+     * to the consumer, in roughly ascending sequence order.
+     *
+     * @param sequence The sequence number after which to pass fund loads.
+     * @param consumer Receives each fund load.
+     */
+    void forEachAfter(long sequence, Consumer<FundLoad> consumer);
+
+    /**
+     * Passes every stored fund load of a customer to the consumer.
+     *
+     * @param customerId The customer ID of the fund loads.
+     * @param consumer   Receives each fund load.
+     */
+    void forEachOfCustomer(String customerId, Consumer<FundLoad> consumer);
+
+    /**
+     * Passes the id of every stored fund load to the consumer, oldest decisions first.
+     *
+     * @param consumer Receives each fund load id.
+     */
+    void forEachId(Consumer<String> consumer);
+
+    /**
+     * @param id The fund load id.
+     * @return {@code true} if a fund load with the id is stored.
+     */
+    boolean exists(String id);
+
+    /**
+     * @return The most UTF-8 bytes of an id or customer ID the store can hold.
+     */
+    int maxIdBytes();
+
+    /**
+     * @return The highest sequence number of any stored fund load, or {@code 0} if there are none.
+     */
+    long maxSequence();
+}
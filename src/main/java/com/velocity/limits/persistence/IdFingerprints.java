@@ -0,0 +1,80 @@
+package com.velocity.limits.persistence;
+
+import com.velocity.limits.util.Hashing;
+
+/**
+ * Set of ids kept as 64-bit fingerprints in an open-addressing table, at 16 bytes
+ * or less per id regardless of its length. Two ids with the same fingerprint are
+ * indistinguishable.
+ * <p>
+ * The table is sized once for a fixed number of ids, those of one {@link FundLoadLog}
+ * segment, and never grows, so the fingerprints of a log take memory in proportion to
+ * its segments and are released with them. Not thread safe.
+ */
+class IdFingerprints {
+
+    private static final long EMPTY = 0;
+
+    private final long[] fingerprints;
+    private final int capacity;
+    private int size;
+
+    /**
+     * @param capacity The most ids the set will hold.
+     */
+    IdFingerprints(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("Fingerprint capacity out of range: " + capacity);
+        }
+        this.capacity = capacity;
+        // At most half full, so probe sequences stay short
+        this.fingerprints = new long[Integer.highestOneBit(capacity) << 2];
+    }
+
+    /**
+     * @return The fingerprint of an id, never {@link #EMPTY}.
+     */
+    static long fingerprint(String id) {
+        long fingerprint = Hashing.hash64(id);
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+
+    /**
+     * Adds the fingerprint of an id.
+     *
+     * @throws IllegalStateException If the set already holds its capacity.
+     */
+    void add(long fingerprint) {
+        int slot = find(fingerprint);
+        if (fingerprints[slot] == EMPTY) {
+            if (size == capacity) {
+                throw new IllegalStateException("Fingerprint set full at " + capacity + " ids");
+            }
+            fingerprints[slot] = fingerprint;
+            size++;
+        }
+    }
+
+    /**
+     * @return {@code true} if an id with the fingerprint was added.
+     */
+    boolean contains(long fingerprint) {
+        return fingerprints[find(fingerprint)] == fingerprint;
+    }
+
+    /**
+     * @return The number of distinct fingerprints.
+     */
+    int size() {
+        return size;
+    }
+
+    private int find(long fingerprint) {
+        int mask = fingerprints.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (fingerprints[slot] != EMPTY && fingerprints[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
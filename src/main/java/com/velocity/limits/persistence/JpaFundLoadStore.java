@@ -0,0 +1,120 @@
+package com.velocity.limits.persistence;
+
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.repository.FundLoadRepository;
+import com.velocity.limits.service.FundLoadWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link FundLoadStore} backed by the fund load table, through the
+ * {@link FundLoadRepository}. Background writes are inserted in JDBC batches by the
+ * {@link FundLoadWriter}. Reads page through the table. Every repository call holds
+ * one of the {@link ConnectionPermits}.
+ */
+@Component
+@ConditionalOnProperty(name = "fund.load.persistence", havingValue = "jpa", matchIfMissing = true)
+public class JpaFundLoadStore implements FundLoadStore {
+
+    private static final int PAGE_SIZE = 10_000;
+
+    /**
+     * The length of the id and customer ID columns, which JPA maps to {@code VARCHAR(255)}.
+     */
+    private static final int MAX_ID_LENGTH = 255;
+
+    @Autowired
+    private FundLoadRepository fundLoadRepository;
+
+    @Autowired
+    private FundLoadWriter fundLoadWriter;
+
+    @Autowired
+    private ConnectionPermits connectionPermits;
+
+    /**
+     * Saves a fund load with a plain insert, falling back to overwriting the
+     * existing row if its id is already taken.
+     */
+    @Override
+    public void save(FundLoad fundLoad) {
+        connectionPermits.run(() -> {
+            try {
+                fundLoadRepository.save(fundLoad);
+            } catch (DataIntegrityViolationException e) {
+                fundLoad.setNew(false);
+                fundLoadRepository.save(fundLoad);
+            }
+        });
+    }
+
+    @Override
+    public void write(FundLoad fundLoad) {
+        fundLoadWriter.write(fundLoad);
+    }
+
+    @Override
+    public void flush() {
+        fundLoadWriter.flush();
+    }
+
+    @Override
+    public void forEach(Consumer<FundLoad> consumer) {
+        forEachInPages(fundLoadRepository::findAll, Sort.by("id"), consumer);
+    }
+
+    @Override
+    public void forEachAfter(long sequence, Consumer<FundLoad> consumer) {
+        forEachInPages(pageable -> fundLoadRepository.findBySequenceGreaterThan(sequence, pageable),
+                Sort.by("sequence"), consumer);
+    }
+
+    @Override
+    public void forEachOfCustomer(String customerId, Consumer<FundLoad> consumer) {
+        connectionPermits.call(() -> fundLoadRepository.findByCustomerId(customerId)).forEach(consumer);
+    }
+
+    @Override
+    public void forEachId(Consumer<String> consumer) {
+        forEachInPages(fundLoadRepository::findIds, Sort.by("sequence", "id"), consumer);
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return connectionPermits.call(() -> fundLoadRepository.existsById(id));
+    }
+
+    /**
+     * Columns count characters, so a limit in bytes keeps within them.
+     */
+    @Override
+    public int maxIdBytes() {
+        return MAX_ID_LENGTH;
+    }
+
+    @Override
+    public long maxSequence() {
+        Long maxSequence = connectionPermits.call(fundLoadRepository::findMaxSequence);
+        return maxSequence == null ? 0 : maxSequence;
+    }
+
+    private <T> void forEachInPages(Function<Pageable, Slice<T>> query, Sort sort, Consumer<T> consumer) {
+        Pageable pageable = PageRequest.of(0, PAGE_SIZE, sort);
+        Slice<T> slice;
+        do {
+            Pageable page = pageable;
+            slice = connectionPermits.call(() -> query.apply(page));
+            slice.forEach(consumer);
+            pageable = pageable.next();
+        } while (slice.hasNext());
+    }
+}
@@ -0,0 +1,148 @@
+package com.velocity.limits.persistence;
+
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.metrics.FundLoadMetrics.Stage;
+import com.velocity.limits.model.FundLoad;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@link FundLoadStore} backed by a {@link FundLoadLog} in {@code fund.load.wal.directory},
+ * selected with {@code fund.load.persistence=wal}.
+ * <p>
+ * Writes append to the mapped log without touching the disk. The log is forced every
+ * {@code fund.load.wal.sync-interval-ms} milliseconds and on {@link #flush()}, with
+ * concurrent flushes committed together; {@link #save} appends and flushes. Reads scan
+ * the log, which is the source of truth; the fund load table is not used.
+ * <p>
+ * The log has no index by customer, so it refuses to start with
+ * {@code fund.load.aggregates.max-memory-mb} set: every customer missing from the
+ * aggregate cache would be loaded by scanning the whole log under its lock.
+ */
+@Component
+@ConditionalOnProperty(name = "fund.load.persistence", havingValue = "wal")
+public class WalFundLoadStore implements FundLoadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalFundLoadStore.class);
+
+    @Autowired
+    private FundLoadMetrics fundLoadMetrics;
+
+    @Value("${fund.load.wal.directory:data/wal}")
+    private String directory;
+
+    @Value("${fund.load.wal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${fund.load.wal.sync-interval-ms:5}")
+    private long syncIntervalMillis;
+
+    @Value("${fund.load.aggregates.max-memory-mb:0}")
+    private long aggregatesMaxMemoryMb;
+
+    private FundLoadLog log;
+
+    private ScheduledExecutorService syncer;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (aggregatesMaxMemoryMb > 0) {
+            throw new IllegalStateException("fund.load.aggregates.max-memory-mb requires fund.load.persistence=jpa: "
+                    + "the write-ahead log has no index to load an evicted customer from");
+        }
+        log = FundLoadLog.open(Path.of(directory), Math.multiplyExact(segmentSizeMb, 1 << 20));
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fund-load-log-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::flushQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        syncer.shutdown();
+        log.close();
+    }
+
+    @Override
+    public void save(FundLoad fundLoad) {
+        log.append(fundLoad);
+        flush();
+    }
+
+    @Override
+    public void write(FundLoad fundLoad) {
+        log.append(fundLoad);
+    }
+
+    @Override
+    public void flush() {
+        long flushStart = System.nanoTime();
+        log.sync();
+        fundLoadMetrics.record(Stage.FLUSH, flushStart);
+    }
+
+    @Override
+    public void forEach(Consumer<FundLoad> consumer) {
+        log.forEach(0, consumer);
+    }
+
+    @Override
+    public void forEachAfter(long sequence, Consumer<FundLoad> consumer) {
+        log.forEach(sequence, consumer);
+    }
+
+    /**
+     * Scans the whole log, which has no index by customer.
+     */
+    @Override
+    public void forEachOfCustomer(String customerId, Consumer<FundLoad> consumer) {
+        log.forEach(0, fundLoad -> {
+            if (fundLoad.getCustomerId().equals(customerId)) {
+                consumer.accept(fundLoad);
+            }
+        });
+    }
+
+    @Override
+    public void forEachId(Consumer<String> consumer) {
+        log.forEach(0, fundLoad -> consumer.accept(fundLoad.getId()));
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return log.contains(id);
+    }
+
+    @Override
+    public int maxIdBytes() {
+        return FundLoadLog.MAX_ID_BYTES;
+    }
+
+    @Override
+    public long maxSequence() {
+        return log.maxSequence();
+    }
+
+    private void flushQuietly() {
+        try {
+            log.sync();
+        } catch (RuntimeException e) {
+            logger.error("Error syncing fund load log, will retry", e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.velocity.limits.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Projection of the fund loads of a customer on one day and in the ISO week
+ * containing that day, computed by the database in a single query.
+ *
+ * @param dailyCount  The number of fund loads on the day.
+ * @param dailyTotal  The total load amount on the day, zero if there are none.
+ * @param weeklyCount The number of fund loads in the week.
+ * @param weeklyTotal The total load amount in the week, zero if there are none.
+ */
+public record DayWeekTotals(long dailyCount, BigDecimal dailyTotal, long weeklyCount, BigDecimal weeklyTotal) {
+
+    /**
+     * @return The daily figures as window totals.
+     */
+    public LoadWindowTotals daily() {
+        return new LoadWindowTotals(dailyCount, dailyTotal);
+    }
+
+    /**
+     * @return The weekly figures as window totals.
+     */
+    public LoadWindowTotals weekly() {
+        return new LoadWindowTotals(weeklyCount, weeklyTotal);
+    }
+}
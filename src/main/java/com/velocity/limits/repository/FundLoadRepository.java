@@ -1,16 +1,26 @@
 package com.velocity.limits.repository;
 
 import com.velocity.limits.model.FundLoad;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.List;
 
 /**
  * Repository interface for managing {@link FundLoad} entities.
  * This interface extends {@link JpaRepository}, providing CRUD functionality for the
- * {@link FundLoad} entity with primary key of type {@link Long}.
+ * {@link FundLoad} entity with primary key of type {@link String}.
  *
  * The repository is annotated with {@code @Repository} to indicate that it is a Spring
  * Data repository component.
@@ -19,11 +29,16 @@ import java.util.List;
  * to retrieve a list of fund loads for a specific customer ID within a given time range.
  * This method is automatically implemented by Spring Data JPA based on its naming convention.
  *
+ * The aggregate queries, {@code findTotalsByCustomerIdAndTimeBetween} and
+ * {@code findDayWeekTotals}, return only the count and sum of the matching loads instead
+ * of hydrating entities. All of them are served by the {@code (customer_id, time)} index
+ * declared on {@link FundLoad}.
+ *
  * @author vsareen
  * @version 1.0
  */
 @Repository
-public interface FundLoadRepository extends JpaRepository<FundLoad, Long> {
+public interface FundLoadRepository extends JpaRepository<FundLoad, String> {
 
     /**
      * Retrieves a list of fund loads for a specific customer ID within the specified time range.
@@ -35,4 +50,137 @@ public interface FundLoadRepository extends JpaRepository<FundLoad, Long> {
      */
     List<FundLoad> findByCustomerIdAndTimeBetween(String customerId, LocalDateTime start, LocalDateTime end);
 
+    /**
+     * Retrieves every fund load of a customer, through the {@code (customer_id, time)} index.
+     *
+     * @param customerId The customer ID for which to retrieve fund loads.
+     * @return The fund loads of the customer.
+     */
+    List<FundLoad> findByCustomerId(String customerId);
+
+    /**
+     * Retrieves a slice of the ids of all fund loads, without hydrating entities.
+     *
+     * @param pageable The slice to retrieve and its sort order.
+     * @return The fund load ids in the slice.
+     */
+    @Query("select f.id from FundLoad f")
+    Slice<String> findIds(Pageable pageable);
+
+    /**
+     * Retrieves a slice of the fund loads decided after the given sequence number.
+     *
+     * @param sequence The sequence number after which to retrieve fund loads.
+     * @param pageable The slice to retrieve and its sort order.
+     * @return The fund loads in the slice.
+     */
+    Slice<FundLoad> findBySequenceGreaterThan(long sequence, Pageable pageable);
+
+    /**
+     * @return The highest sequence number of any fund load, or {@code null} if there are none.
+     */
+    @Query("select max(f.sequence) from FundLoad f")
+    Long findMaxSequence();
+
+    /**
+     * @return The earliest week of any fund load, or {@code null} if there are none.
+     */
+    @Query("select min(f.week) from FundLoad f")
+    LocalDate findOldestWeek();
+
+    /**
+     * @param week The Monday of the latest week to consider.
+     * @return The latest week of any fund load up to the given one, or {@code null} if there are none.
+     */
+    @Query("select max(f.week) from FundLoad f where f.week <= :week")
+    LocalDate findNewestWeekUpTo(@Param("week") LocalDate week);
+
+    /**
+     * Retrieves a slice of the fund loads of one week, through the {@code week} index.
+     *
+     * @param week     The Monday of the week.
+     * @param pageable The slice to retrieve and its sort order.
+     * @return The fund loads in the slice.
+     */
+    Slice<FundLoad> findByWeek(LocalDate week, Pageable pageable);
+
+    /**
+     * Retrieves a slice of the fund loads stored before their week was recorded, leaving
+     * out those without a time, whose week cannot be recorded.
+     *
+     * @param pageable The slice to retrieve.
+     * @return The fund loads in the slice.
+     */
+    Slice<FundLoad> findByWeekIsNullAndTimeIsNotNull(Pageable pageable);
+
+    /**
+     * @return The number of fund loads with neither a week nor a time.
+     */
+    long countByWeekIsNullAndTimeIsNull();
+
+    /**
+     * Deletes the fund loads of one week up to a sequence number, leaving those decided
+     * after it.
+     *
+     * @param week        The Monday of the week.
+     * @param maxSequence The highest sequence number to delete.
+     * @return The number of fund loads deleted.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from FundLoad f where f.week = :week and (f.sequence is null or f.sequence <= :maxSequence)")
+    int deleteByWeekUpTo(@Param("week") LocalDate week, @Param("maxSequence") long maxSequence);
+
+    /**
+     * Counts and sums the fund loads of a customer within the specified time range.
+     *
+     * @param customerId The customer ID for which to aggregate fund loads.
+     * @param start      The start of the time range, inclusive.
+     * @param end        The end of the time range, inclusive.
+     * @return The number and total amount of the matching fund loads.
+     */
+    @Query("select new com.velocity.limits.repository.LoadWindowTotals(count(f), coalesce(sum(f.loadAmount), 0)) "
+            + "from FundLoad f where f.customerId = :customerId and f.time between :start and :end")
+    LoadWindowTotals findTotalsByCustomerIdAndTimeBetween(@Param("customerId") String customerId,
+                                                          @Param("start") LocalDateTime start,
+                                                          @Param("end") LocalDateTime end);
+
+    /**
+     * Counts and sums the fund loads of a customer on a day and in the week containing it,
+     * in one round trip. The day must lie within the week.
+     *
+     * @param customerId The customer ID for which to aggregate fund loads.
+     * @param dayStart   The start of the day, inclusive.
+     * @param dayEnd     The end of the day, inclusive.
+     * @param weekStart  The start of the week, inclusive.
+     * @param weekEnd    The end of the week, inclusive.
+     * @return The number and total amount of the fund loads on the day and in the week.
+     */
+    @Query("select new com.velocity.limits.repository.DayWeekTotals("
+            + "count(case when f.time >= :dayStart and f.time <= :dayEnd then 1 end), "
+            + "coalesce(sum(case when f.time >= :dayStart and f.time <= :dayEnd then f.loadAmount end), 0), "
+            + "count(f), coalesce(sum(f.loadAmount), 0)) "
+            + "from FundLoad f where f.customerId = :customerId and f.time between :weekStart and :weekEnd")
+    DayWeekTotals findDayWeekTotals(@Param("customerId") String customerId,
+                                    @Param("dayStart") LocalDateTime dayStart,
+                                    @Param("dayEnd") LocalDateTime dayEnd,
+                                    @Param("weekStart") LocalDateTime weekStart,
+                                    @Param("weekEnd") LocalDateTime weekEnd);
+
+    /**
+     * Counts and sums the fund loads of a customer on the day of the given time and in its
+     * ISO week (Monday to Sunday), in one round trip.
+     *
+     * @param customerId The customer ID for which to aggregate fund loads.
+     * @param time       A time within the day to aggregate.
+     * @return The number and total amount of the fund loads on the day and in the week.
+     */
+    default DayWeekTotals findDayWeekTotals(String customerId, LocalDateTime time) {
+        LocalDate day = time.toLocalDate();
+        return findDayWeekTotals(customerId,
+                LocalDateTime.of(day, LocalTime.MIN),
+                LocalDateTime.of(day, LocalTime.MAX),
+                LocalDateTime.of(day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), LocalTime.MIN),
+                LocalDateTime.of(day.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY)), LocalTime.MAX));
+    }
 }
@@ -0,0 +1,13 @@
+package com.velocity.limits.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Projection of the fund loads of a customer within a time window: how many there
+ * are and their total amount, computed by the database.
+ *
+ * @param count The number of fund loads.
+ * @param total The total load amount, zero if there are none.
+ */
+public record LoadWindowTotals(long count, BigDecimal total) {
+}
@@ -0,0 +1,29 @@
+package com.velocity.limits.rules;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A velocity rule as declared in the configuration, for example
+ * <pre>
+ * limits.rules[0].name=daily-count
+ * limits.rules[0].metric=count
+ * limits.rules[0].window=day
+ * limits.rules[0].limit=3
+ * </pre>
+ * {@code window} is one of {@code day}, {@code week}, {@code month} or {@code rolling};
+ * rolling windows also set {@code hours}. The {@code limit} is a number of loads for
+ * {@code count} rules and an amount in dollars for {@code amount} rules. A load is
+ * rejected if accepting it would take the window above the limit.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RuleDefinition {
+    private String name;
+    private RuleMetric metric;
+    private WindowType window;
+    private int hours;
+    private String limit;
+}
@@ -0,0 +1,17 @@
+package com.velocity.limits.rules;
+
+/**
+ * What a velocity rule limits within its window.
+ */
+public enum RuleMetric {
+
+    /**
+     * The number of accepted loads.
+     */
+    COUNT,
+
+    /**
+     * The total amount of accepted loads.
+     */
+    AMOUNT
+}
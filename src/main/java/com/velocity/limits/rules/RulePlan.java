@@ -0,0 +1,168 @@
+package com.velocity.limits.rules;
+
+import com.velocity.limits.util.Money;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Velocity rules compiled into a flat evaluation plan.
+ * <p>
+ * Rules are kept in declaration order in parallel arrays. Rules over the same window
+ * share a window index, so per-customer state keeps one aggregate per distinct window
+ * however many rules refer to it, and a customer's state is looked up once for all
+ * rules. Amount limits are held in cents.
+ */
+public final class RulePlan {
+
+    /**
+     * Returned by evaluations when no rule is violated.
+     */
+    public static final int ACCEPTED = -1;
+
+    private final String[] names;
+    private final boolean[] amountRules;
+    private final long[] limits;
+    private final int[] windowIndexes;
+    private final RuleWindow[] windows;
+
+    private RulePlan(String[] names, boolean[] amountRules, long[] limits, int[] windowIndexes, RuleWindow[] windows) {
+        this.names = names;
+        this.amountRules = amountRules;
+        this.limits = limits;
+        this.windowIndexes = windowIndexes;
+        this.windows = windows;
+    }
+
+    /**
+     * Compiles rule definitions into a plan.
+     *
+     * @param definitions The rules, in evaluation order.
+     * @return The compiled plan.
+     * @throws IllegalArgumentException If a rule is incomplete or its limit is invalid.
+     */
+    public static RulePlan compile(List<RuleDefinition> definitions) {
+        int size = definitions.size();
+        String[] names = new String[size];
+        boolean[] amountRules = new boolean[size];
+        long[] limits = new long[size];
+        int[] windowIndexes = new int[size];
+        List<RuleWindow> windows = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            RuleDefinition definition = definitions.get(i);
+            if (definition.getName() == null || definition.getMetric() == null
+                    || definition.getWindow() == null || definition.getLimit() == null) {
+                throw new IllegalArgumentException("Rule " + i + " needs a name, metric, window and limit: " + definition);
+            }
+            names[i] = definition.getName();
+            amountRules[i] = definition.getMetric() == RuleMetric.AMOUNT;
+            try {
+                BigDecimal limit = new BigDecimal(definition.getLimit());
+                limits[i] = amountRules[i] ? Money.toCents(limit) : limit.longValueExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new IllegalArgumentException("Rule " + names[i] + " has an invalid limit: " + definition.getLimit(), e);
+            }
+            if (limits[i] < 0) {
+                throw new IllegalArgumentException("Rule " + names[i] + " has a negative limit");
+            }
+
+            RuleWindow window = new RuleWindow(definition.getWindow(), definition.getHours());
+            int windowIndex = windows.indexOf(window);
+            if (windowIndex < 0) {
+                windowIndex = windows.size();
+                windows.add(window);
+            }
+            windowIndexes[i] = windowIndex;
+        }
+        return new RulePlan(names, amountRules, limits, windowIndexes, windows.toArray(new RuleWindow[0]));
+    }
+
+    /**
+     * Checks whether a load would violate a rule.
+     *
+     * @param rule        The rule index.
+     * @param windowValue The number of accepted loads, for count rules, or their total in cents,
+     *                    for amount rules, already in the rule's window.
+     * @param cents       The amount of the load, in cents.
+     * @return {@code true} if accepting the load would take the window above the rule's limit.
+     */
+    public boolean violates(int rule, long windowValue, long cents) {
+        // Written as a subtraction from the limit so that large amounts cannot overflow
+        return amountRules[rule] ? cents > limits[rule] - windowValue : windowValue >= limits[rule];
+    }
+
+    /**
+     * @return The number of rules.
+     */
+    public int ruleCount() {
+        return names.length;
+    }
+
+    /**
+     * @return The name of the given rule.
+     */
+    public String ruleName(int rule) {
+        return names[rule];
+    }
+
+    /**
+     * @return {@code true} if the given rule limits the amount, {@code false} if it limits the count.
+     */
+    public boolean isAmountRule(int rule) {
+        return amountRules[rule];
+    }
+
+    /**
+     * @return The limit of the given rule: a number of loads, or an amount in cents.
+     */
+    public long limit(int rule) {
+        return limits[rule];
+    }
+
+    /**
+     * @return The index of the window the given rule is evaluated over.
+     */
+    public int windowIndex(int rule) {
+        return windowIndexes[rule];
+    }
+
+    /**
+     * @return The number of distinct windows the rules are evaluated over.
+     */
+    public int windowCount() {
+        return windows.length;
+    }
+
+    /**
+     * @return The given window.
+     */
+    public RuleWindow window(int window) {
+        return windows[window];
+    }
+
+    /**
+     * @return The length of the longest rolling window in seconds, or {@code 0} if there is none.
+     */
+    public long maxRollingSeconds() {
+        long max = 0;
+        for (RuleWindow window : windows) {
+            if (!window.isCalendar()) {
+                max = Math.max(max, window.getSeconds());
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The longest time any window of the plan spans, in seconds, or {@code 0} if it has none.
+     */
+    public long maxWindowSeconds() {
+        long max = 0;
+        for (RuleWindow window : windows) {
+            max = Math.max(max, window.maxSeconds());
+        }
+        return max;
+    }
+}
@@ -0,0 +1,82 @@
+package com.velocity.limits.rules;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * A time window of a velocity rule: a calendar period or a rolling number of hours.
+ * <p>
+ * Calendar windows map every load time to a bucket number, so the loads of one
+ * window are the loads with the same bucket number. Rolling windows are anchored
+ * at the load time and cover the {@link #getSeconds() seconds} before it.
+ *
+ * @param type  The kind of window.
+ * @param hours The length of a {@link WindowType#ROLLING} window, or {@code 0} for calendar windows.
+ */
+public record RuleWindow(WindowType type, int hours) {
+
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    /**
+     * 1970-01-01 was a Thursday; shifting epoch days by three makes weeks start on Monday.
+     */
+    private static final long EPOCH_DAY_TO_MONDAY = 3;
+
+    public RuleWindow {
+        if (type == WindowType.ROLLING ? hours <= 0 : hours != 0) {
+            throw new IllegalArgumentException("Rolling windows need a positive number of hours, "
+                    + "calendar windows none: " + type + " " + hours);
+        }
+    }
+
+    /**
+     * @return {@code true} for calendar windows, {@code false} for rolling windows.
+     */
+    public boolean isCalendar() {
+        return type != WindowType.ROLLING;
+    }
+
+    /**
+     * @return The length of a rolling window in seconds.
+     */
+    public long getSeconds() {
+        return hours * 3_600L;
+    }
+
+    /**
+     * @return The longest time a window of this kind can span, in seconds: a rolling
+     * window's length, or the longest day, week or month.
+     */
+    public long maxSeconds() {
+        return switch (type) {
+            case DAY -> SECONDS_PER_DAY;
+            case WEEK -> 7 * SECONDS_PER_DAY;
+            case MONTH -> 31 * SECONDS_PER_DAY;
+            case ROLLING -> getSeconds();
+        };
+    }
+
+    /**
+     * Returns the bucket number of the calendar period a time falls in.
+     *
+     * @param time The time, in UTC.
+     * @return The day, week or month number of the time.
+     */
+    public long bucketOf(LocalDateTime time) {
+        return switch (type) {
+            case DAY -> epochDay(time);
+            case WEEK -> Math.floorDiv(epochDay(time) + EPOCH_DAY_TO_MONDAY, 7);
+            case MONTH -> time.getYear() * 12L + time.getMonthValue() - 1;
+            case ROLLING -> throw new IllegalStateException("Rolling windows have no buckets");
+        };
+    }
+
+    @Override
+    public String toString() {
+        return type == WindowType.ROLLING ? hours + "h" : type.name().toLowerCase();
+    }
+
+    private static long epochDay(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), SECONDS_PER_DAY);
+    }
+}
@@ -0,0 +1,27 @@
+package com.velocity.limits.rules;
+
+/**
+ * The kind of time window a velocity rule is evaluated over.
+ */
+public enum WindowType {
+
+    /**
+     * The calendar day (UTC) of the load.
+     */
+    DAY,
+
+    /**
+     * The ISO week, Monday to Sunday, of the load.
+     */
+    WEEK,
+
+    /**
+     * The calendar month of the load.
+     */
+    MONTH,
+
+    /**
+     * The given number of hours up to and including the time of the load.
+     */
+    ROLLING
+}
@@ -0,0 +1,279 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.rules.RulePlan;
+import com.velocity.limits.rules.RuleWindow;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+
+/**
+ * Binary file format of a point-in-time copy of the per-customer aggregates of a
+ * {@link LoadAggregateStore}.
+ * <p>
+ * The file starts with a header of the magic number, the format version, the windows
+ * of the rule plan the aggregates were kept for and the sequence number the snapshot
+ * was taken at, followed by the number of customers. Each customer is then its id
+ * (UTF-8, prefixed by its length) and its serialized {@link CustomerAggregate}, also
+ * prefixed by its length. All numbers are big-endian.
+ * <p>
+ * Files are streamed through a {@link Writer} into a temporary file one customer at a
+ * time, through a buffer of {@value #BUFFER_SIZE} bytes, so that neither the file nor
+ * a copy of the aggregates is held in memory, whatever the number of customers. The
+ * sequence number and customer count are filled into the header on
+ * {@link Writer#commit}, which forces the file to disk and atomically moves it over the
+ * previous snapshot, so a crash never leaves a partial snapshot behind. Files are read
+ * back through a buffer of the same size.
+ */
+public final class AggregateSnapshot {
+
+    private static final int MAGIC = 0x464C5353; // "FLSS"
+    private static final int VERSION = 1;
+    private static final int MAX_ID_LENGTH = 0xFFFF;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private AggregateSnapshot() {
+    }
+
+    /**
+     * Starts writing a snapshot, to replace the given file once committed.
+     *
+     * @param file     The snapshot file.
+     * @param rulePlan The rule plan the aggregates were kept for.
+     * @return The writer, to be closed once committed or abandoned.
+     * @throws IOException If the temporary file cannot be created.
+     */
+    public static Writer writer(Path file, RulePlan rulePlan) throws IOException {
+        return new Writer(file, rulePlan);
+    }
+
+    /**
+     * Writes the customers of a snapshot to a temporary file, which replaces the
+     * snapshot file when committed and is deleted otherwise.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path file;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final long sequenceOffset;
+        private int customerCount;
+        private boolean committed;
+
+        private Writer(Path file, RulePlan rulePlan) throws IOException {
+            this.file = file;
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            this.temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            writeWindows(buffer, rulePlan);
+            this.sequenceOffset = buffer.position();
+            // The sequence number and customer count, filled in on commit
+            buffer.putLong(0).putInt(0);
+        }
+
+        /**
+         * Appends a customer.
+         *
+         * @param customerId The customer ID.
+         * @param aggregate  The customer's serialized aggregate.
+         * @throws IOException If the file cannot be written, or the customer ID is too long.
+         */
+        public void add(String customerId, byte[] aggregate) throws IOException {
+            byte[] id = customerId.getBytes(StandardCharsets.UTF_8);
+            if (id.length > MAX_ID_LENGTH) {
+                throw new IOException("Customer ID too long for a snapshot: " + id.length + " bytes");
+            }
+            ensure(Short.BYTES);
+            buffer.putShort((short) id.length);
+            put(id);
+            ensure(Integer.BYTES);
+            buffer.putInt(aggregate.length);
+            put(aggregate);
+            customerCount++;
+        }
+
+        /**
+         * @return The number of customers added.
+         */
+        public int customerCount() {
+            return customerCount;
+        }
+
+        /**
+         * Completes the header, forces the file to disk and moves it over the snapshot file.
+         *
+         * @param sequence Every load with this sequence number or a lower one is included.
+         * @throws IOException If the file cannot be written or moved.
+         */
+        public void commit(long sequence) throws IOException {
+            drain();
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(sequence).putInt(customerCount);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, sequenceOffset + header.position());
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                if (!committed) {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads the aggregates of a snapshot file written for the same rule plan windows.
+     *
+     * @param file     The snapshot file.
+     * @param rulePlan The rule plan the aggregates are kept for.
+     * @param consumer Receives each customer ID and its restored aggregate.
+     * @return The sequence number of the snapshot, or {@code -1} if the file is not a snapshot
+     * of this format or was written for different windows, in which case nothing is read.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long readFrom(Path file, RulePlan rulePlan, BiConsumer<String, CustomerAggregate> consumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input input = new Input(channel);
+            int headerBytes = Integer.BYTES * 3 + rulePlan.windowCount() * Integer.BYTES * 2 + Long.BYTES + Integer.BYTES;
+            if (!input.fill(headerBytes)) {
+                return -1;
+            }
+            ByteBuffer buffer = input.buffer;
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !readWindows(buffer, rulePlan)) {
+                return -1;
+            }
+            long sequence = buffer.getLong();
+            int customerCount = buffer.getInt();
+            byte[] id = new byte[MAX_ID_LENGTH];
+            for (int i = 0; i < customerCount; i++) {
+                int idLength = input.require(Short.BYTES).getShort() & MAX_ID_LENGTH;
+                buffer = input.require(idLength + Integer.BYTES).get(id, 0, idLength);
+                int aggregateLength = buffer.getInt();
+                if (aggregateLength < 0) {
+                    throw new IOException("Corrupt snapshot " + file);
+                }
+                buffer = input.require(aggregateLength);
+                ByteBuffer aggregate = buffer.slice(buffer.position(), aggregateLength);
+                buffer.position(buffer.position() + aggregateLength);
+                consumer.accept(new String(id, 0, idLength, StandardCharsets.UTF_8),
+                        CustomerAggregate.restore(rulePlan, aggregate));
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * A buffered window over a file, refilled as it is consumed and grown for records
+     * larger than it.
+     */
+    private static final class Input {
+
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return The buffer, with at least the given number of bytes remaining.
+         * @throws EOFException If the file ends first.
+         */
+        ByteBuffer require(int bytes) throws IOException {
+            if (!fill(bytes)) {
+                throw new EOFException("Truncated snapshot");
+            }
+            return buffer;
+        }
+
+        /**
+         * @return Whether the buffer now has the given number of bytes remaining.
+         */
+        boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocateDirect(bytes).put(buffer);
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    buffer.flip();
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+    }
+
+    private static void writeWindows(ByteBuffer buffer, RulePlan rulePlan) {
+        buffer.putInt(rulePlan.windowCount());
+        for (int window = 0; window < rulePlan.windowCount(); window++) {
+            RuleWindow ruleWindow = rulePlan.window(window);
+            buffer.putInt(ruleWindow.type().ordinal()).putInt(ruleWindow.hours());
+        }
+    }
+
+    private static boolean readWindows(ByteBuffer buffer, RulePlan rulePlan) {
+        if (buffer.getInt() != rulePlan.windowCount()) {
+            return false;
+        }
+        for (int window = 0; window < rulePlan.windowCount(); window++) {
+            RuleWindow ruleWindow = rulePlan.window(window);
+            if (buffer.getInt() != ruleWindow.type().ordinal() | buffer.getInt() != ruleWindow.hours()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
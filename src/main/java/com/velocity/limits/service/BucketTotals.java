@@ -0,0 +1,189 @@
+package com.velocity.limits.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Load count and total per calendar bucket, in an open-addressing map from the
+ * bucket number to primitive counters.
+ * <p>
+ * Lookups and updates neither box the bucket number nor allocate an entry, which
+ * keeps calendar window checks allocation-free. Buckets before a given one are
+ * dropped with {@link #removeBefore}, so the map holds no more than the buckets a
+ * window can still reach. Not thread safe.
+ */
+class BucketTotals {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] buckets;
+    private int[] counts;
+    private long[] cents;
+    private int size;
+    private long newest = EMPTY;
+
+    BucketTotals() {
+        allocate(4);
+    }
+
+    /**
+     * @return The number of loads in the bucket.
+     */
+    int count(long bucket) {
+        int slot = find(bucket);
+        return buckets[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    /**
+     * @return The total of the loads in the bucket, in cents.
+     */
+    long cents(long bucket) {
+        int slot = find(bucket);
+        return buckets[slot] == EMPTY ? 0 : cents[slot];
+    }
+
+    /**
+     * Adds a load to the bucket.
+     *
+     * @return {@code true} if the bucket is newer than every bucket added before.
+     * @throws ArithmeticException If the total overflows.
+     */
+    boolean add(long bucket, long amount) {
+        int slot = find(bucket);
+        if (buckets[slot] == EMPTY) {
+            if ((size + 1) * 2 > buckets.length) {
+                rehash();
+                slot = find(bucket);
+            }
+            buckets[slot] = bucket;
+            size++;
+        }
+        counts[slot]++;
+        cents[slot] = Math.addExact(cents[slot], amount);
+        if (bucket > newest) {
+            newest = bucket;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes a load added to the bucket back out of it, if the bucket is still held.
+     */
+    void subtract(long bucket, long amount) {
+        int slot = find(bucket);
+        if (buckets[slot] != EMPTY && counts[slot] > 0) {
+            counts[slot]--;
+            cents[slot] -= amount;
+        }
+    }
+
+    /**
+     * Drops every bucket before the given one.
+     */
+    void removeBefore(long oldest) {
+        int removed = 0;
+        for (long bucket : buckets) {
+            if (bucket != EMPTY && bucket < oldest) {
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            return;
+        }
+        // Open addressing cannot simply clear a slot, so the rest are placed again
+        long[] oldBuckets = buckets;
+        int[] oldCounts = counts;
+        long[] oldCents = cents;
+        allocate(oldBuckets.length);
+        for (int i = 0; i < oldBuckets.length; i++) {
+            if (oldBuckets[i] != EMPTY && oldBuckets[i] >= oldest) {
+                int slot = find(oldBuckets[i]);
+                buckets[slot] = oldBuckets[i];
+                counts[slot] = oldCounts[i];
+                cents[slot] = oldCents[i];
+            }
+        }
+        size -= removed;
+    }
+
+    /**
+     * @return The number of buckets with loads.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of bytes {@link #writeTo} writes.
+     */
+    int serializedSize() {
+        return Integer.BYTES + size * (Long.BYTES + Integer.BYTES + Long.BYTES);
+    }
+
+    /**
+     * Writes the number of buckets followed by each bucket, count and total.
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(size);
+        for (int slot = 0; slot < buckets.length; slot++) {
+            if (buckets[slot] != EMPTY) {
+                buffer.putLong(buckets[slot]).putInt(counts[slot]).putLong(cents[slot]);
+            }
+        }
+    }
+
+    /**
+     * Reads totals written by {@link #writeTo}.
+     */
+    static BucketTotals readFrom(ByteBuffer buffer) {
+        BucketTotals totals = new BucketTotals();
+        int size = buffer.getInt();
+        int capacity = 4;
+        while (capacity < (size + 1) * 2) {
+            capacity <<= 1;
+        }
+        totals.allocate(capacity);
+        for (int i = 0; i < size; i++) {
+            long bucket = buffer.getLong();
+            int slot = totals.find(bucket);
+            totals.buckets[slot] = bucket;
+            totals.counts[slot] = buffer.getInt();
+            totals.cents[slot] = buffer.getLong();
+            totals.newest = Math.max(totals.newest, bucket);
+        }
+        totals.size = size;
+        return totals;
+    }
+
+    private int find(long bucket) {
+        int mask = buckets.length - 1;
+        int slot = Long.hashCode(bucket * 0x9E3779B97F4A7C15L) & mask;
+        while (buckets[slot] != EMPTY && buckets[slot] != bucket) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldBuckets = buckets;
+        int[] oldCounts = counts;
+        long[] oldCents = cents;
+        allocate(oldBuckets.length * 2);
+        for (int i = 0; i < oldBuckets.length; i++) {
+            if (oldBuckets[i] != EMPTY) {
+                int slot = find(oldBuckets[i]);
+                buckets[slot] = oldBuckets[i];
+                counts[slot] = oldCounts[i];
+                cents[slot] = oldCents[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        buckets = new long[capacity];
+        Arrays.fill(buckets, EMPTY);
+        counts = new int[capacity];
+        cents = new long[capacity];
+    }
+}
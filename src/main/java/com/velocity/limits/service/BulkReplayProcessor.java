@@ -0,0 +1,137 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.events.DecisionStream;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.util.FundLoadRequestSource;
+import com.velocity.limits.util.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+
+/**
+ * Replays a historical fund load file in a single merge pass, for backfills and audit replays.
+ * <p>
+ * Unlike {@link FundLoadBatchProcessor}, which decides each customer's loads in input
+ * order, a replay decides them in time order: the file is sorted by customer, time and
+ * input position with {@link SortedRuns}, spilling runs of {@code fund.load.replay.run-size}
+ * loads to {@code fund.load.replay.spill-directory}, so files larger than the heap are
+ * replayed in bounded memory. The merged stream visits each customer once, so its
+ * aggregates are looked up, or loaded from the {@link FundLoadStore} when they are not
+ * cached, once per customer, and each window is then advanced load by load.
+ * <p>
+ * The id and customer of every input line are kept in a manifest file and the outcomes
+ * in two bits per line, so the statuses are emitted in input order after the pass.
+ */
+@Service
+public class BulkReplayProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkReplayProcessor.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private FundLoadService fundLoadService;
+
+    @Autowired
+    private FundLoadStore fundLoadStore;
+
+    @Autowired(required = false)
+    private DecisionStream decisionStream;
+
+    @Value("${fund.load.replay.run-size:1000000}")
+    private int runSize;
+
+    @Value("${fund.load.replay.spill-directory:${java.io.tmpdir}}")
+    private String spillDirectory;
+
+    /**
+     * Receives the status of each replayed line.
+     */
+    @FunctionalInterface
+    public interface StatusWriter {
+        void write(FundStatus fundStatus) throws IOException;
+    }
+
+    /**
+     * Replays every fund load request of a source.
+     *
+     * @param source       The requests, in input order.
+     * @param statusWriter Receives the status of each request, in input order, once all are decided and persisted.
+     * @return The number of requests replayed.
+     * @throws IOException If the source cannot be read or a spill file cannot be written.
+     */
+    public long replay(FundLoadRequestSource source, StatusWriter statusWriter) throws IOException {
+        Path directory = Files.createDirectories(Path.of(spillDirectory));
+        Path manifest = Files.createTempFile(directory, "fund-load-replay-", ".manifest");
+        try (SortedRuns runs = new SortedRuns(directory, runSize)) {
+            // 1. Sort the loads into runs, recording each line's id and customer in input order.
+            long start = System.nanoTime();
+            int count = 0;
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(manifest), BUFFER_SIZE))) {
+                FundLoadRequest request;
+                while ((request = source.next()) != null) {
+                    fundLoadService.checkIds(request);
+                    if (count == Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Replay files are limited to " + Integer.MAX_VALUE + " loads");
+                    }
+                    output.writeUTF(request.getId());
+                    output.writeUTF(request.getCustomer_id());
+                    runs.add(new SortedRuns.Load(request.getCustomer_id(), request.getTime().toEpochSecond(ZoneOffset.UTC),
+                            count++, request.getId(), Money.toCents(Money.roundToCents(request.getLoad_amount()))));
+                }
+            }
+
+            // 2. Decide every load in customer and time order.
+            BitSet accepted = new BitSet(count);
+            BitSet duplicate = new BitSet(count);
+            runs.merge(load -> {
+                FundStatus status = fundLoadService.processLoadBatched(toRequest(load));
+                accepted.set((int) load.position(), status.isAccepted());
+                duplicate.set((int) load.position(), status.isDuplicate());
+            });
+            fundLoadStore.flush();
+            if (decisionStream != null) {
+                decisionStream.sync();
+            }
+            logger.info("Replayed {} fund loads from {} spilled runs in {} ms", count, runs.spilledRuns(),
+                    (System.nanoTime() - start) / 1_000_000);
+
+            // 3. Emit the statuses in input order.
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(manifest), BUFFER_SIZE))) {
+                for (int position = 0; position < count; position++) {
+                    statusWriter.write(new FundStatus(input.readUTF(), input.readUTF(),
+                            accepted.get(position), duplicate.get(position)));
+                }
+            }
+            return count;
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    private static FundLoadRequest toRequest(SortedRuns.Load load) {
+        FundLoadRequest request = new FundLoadRequest();
+        request.setId(load.id());
+        request.setCustomer_id(load.customerId());
+        request.setLoad_amount(Money.fromCents(load.cents()));
+        request.setTime(LocalDateTime.ofEpochSecond(load.time(), 0, ZoneOffset.UTC));
+        return request;
+    }
+}
@@ -0,0 +1,227 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.rules.RulePlan;
+import com.velocity.limits.rules.RuleWindow;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Running totals of accepted loads for a single customer, over every window of a
+ * {@link RulePlan}.
+ * <p>
+ * Calendar windows keep a count and total per day, week or month bucket, so a
+ * lookup is a single primitive hash probe regardless of how many loads the
+ * customer has made. When a load opens a new bucket, buckets wholly older than the
+ * longest window of the plan before it are dropped, so that windows are only exact
+ * within that period of the newest load, as for rolling windows. Rolling windows are answered from the customer's
+ * {@link LoadTimeIndex}, which is only kept if the plan has rolling windows and
+ * holds no more than the longest of them.
+ * <p>
+ * The aggregate also remembers the highest sequence number of the loads added to it,
+ * so that loads already in a snapshot of it are not added again when replayed.
+ */
+public class CustomerAggregate {
+
+    private final RulePlan rulePlan;
+    private final BucketTotals[] calendarTotals;
+    private final LoadTimeIndex timeIndex;
+    private final long retentionSeconds;
+    private long lastSequence;
+
+    public CustomerAggregate(RulePlan rulePlan) {
+        this.rulePlan = rulePlan;
+        this.calendarTotals = new BucketTotals[rulePlan.windowCount()];
+        for (int window = 0; window < rulePlan.windowCount(); window++) {
+            if (rulePlan.window(window).isCalendar()) {
+                calendarTotals[window] = new BucketTotals();
+            }
+        }
+        long maxRollingSeconds = rulePlan.maxRollingSeconds();
+        this.timeIndex = maxRollingSeconds > 0 ? new LoadTimeIndex(maxRollingSeconds) : null;
+        this.retentionSeconds = rulePlan.maxWindowSeconds();
+    }
+
+    private CustomerAggregate(RulePlan rulePlan, BucketTotals[] calendarTotals, LoadTimeIndex timeIndex,
+                              long lastSequence) {
+        this.rulePlan = rulePlan;
+        this.calendarTotals = calendarTotals;
+        this.timeIndex = timeIndex;
+        this.retentionSeconds = rulePlan.maxWindowSeconds();
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Evaluates the rule plan for a new load of this customer.
+     *
+     * @param time  The time of the load.
+     * @param cents The amount of the load, in cents.
+     * @return The index of the first rule the load would violate, or {@link RulePlan#ACCEPTED}.
+     */
+    public synchronized int firstViolatedRule(LocalDateTime time, long cents) {
+        for (int rule = 0; rule < rulePlan.ruleCount(); rule++) {
+            int window = rulePlan.windowIndex(rule);
+            long windowValue = rulePlan.isAmountRule(rule) ? cents(window, time) : count(window, time);
+            if (rulePlan.violates(rule, windowValue, cents)) {
+                return rule;
+            }
+        }
+        return RulePlan.ACCEPTED;
+    }
+
+    /**
+     * Returns the number of accepted loads in the given window of a time.
+     *
+     * @param window The window index in the rule plan.
+     * @param time   The time whose window to look up.
+     * @return The number of loads.
+     */
+    public synchronized long count(int window, LocalDateTime time) {
+        RuleWindow ruleWindow = rulePlan.window(window);
+        if (ruleWindow.isCalendar()) {
+            return calendarTotals[window].count(ruleWindow.bucketOf(time));
+        }
+        long to = time.toEpochSecond(ZoneOffset.UTC);
+        return timeIndex.count(to - ruleWindow.getSeconds(), to);
+    }
+
+    /**
+     * Returns the total of accepted loads in the given window of a time.
+     *
+     * @param window The window index in the rule plan.
+     * @param time   The time whose window to look up.
+     * @return The total in cents.
+     */
+    public synchronized long cents(int window, LocalDateTime time) {
+        RuleWindow ruleWindow = rulePlan.window(window);
+        if (ruleWindow.isCalendar()) {
+            return calendarTotals[window].cents(ruleWindow.bucketOf(time));
+        }
+        long to = time.toEpochSecond(ZoneOffset.UTC);
+        return timeIndex.cents(to - ruleWindow.getSeconds(), to);
+    }
+
+    /**
+     * Adds an accepted load to every window it falls in.
+     *
+     * @param time  The time of the load.
+     * @param cents The amount of the load, in cents.
+     */
+    public synchronized void add(LocalDateTime time, long cents) {
+        add(time, cents, 0);
+    }
+
+    /**
+     * Adds an accepted load to every window it falls in.
+     *
+     * @param time     The time of the load.
+     * @param cents    The amount of the load, in cents.
+     * @param sequence The sequence number of the load, or {@code 0} if it has none.
+     */
+    public synchronized void add(LocalDateTime time, long cents, long sequence) {
+        lastSequence = Math.max(lastSequence, sequence);
+        for (int window = 0; window < calendarTotals.length; window++) {
+            BucketTotals totals = calendarTotals[window];
+            if (totals != null) {
+                RuleWindow ruleWindow = rulePlan.window(window);
+                if (totals.add(ruleWindow.bucketOf(time), cents)) {
+                    totals.removeBefore(ruleWindow.bucketOf(time.minusSeconds(retentionSeconds)));
+                }
+            }
+        }
+        if (timeIndex != null) {
+            timeIndex.add(time.toEpochSecond(ZoneOffset.UTC), cents);
+        }
+    }
+
+    /**
+     * Takes back a load added to the windows, for one that could not be persisted.
+     * Windows that dropped it already are left as they are.
+     *
+     * @param time  The time of the load.
+     * @param cents The amount of the load, in cents.
+     */
+    public synchronized void remove(LocalDateTime time, long cents) {
+        for (int window = 0; window < calendarTotals.length; window++) {
+            if (calendarTotals[window] != null) {
+                calendarTotals[window].subtract(rulePlan.window(window).bucketOf(time), cents);
+            }
+        }
+        if (timeIndex != null) {
+            timeIndex.remove(time.toEpochSecond(ZoneOffset.UTC), cents);
+        }
+    }
+
+    /**
+     * @return An estimate of the heap held by the aggregate, in bytes.
+     */
+    public synchronized int estimatedSize() {
+        int size = 64;
+        for (BucketTotals totals : calendarTotals) {
+            if (totals != null) {
+                size += 16 + totals.serializedSize();
+            }
+        }
+        if (timeIndex != null) {
+            size += 16 + timeIndex.serializedSize();
+        }
+        return size;
+    }
+
+    /**
+     * @return The highest sequence number of the loads added, or {@code 0} if none had one.
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Serializes the aggregate: the last sequence number, the totals of each calendar
+     * window in plan order, then the time index if the plan has rolling windows.
+     *
+     * @return The serialized aggregate, read back with {@link #restore}.
+     */
+    public synchronized byte[] snapshot() {
+        int size = Long.BYTES;
+        for (BucketTotals totals : calendarTotals) {
+            if (totals != null) {
+                size += totals.serializedSize();
+            }
+        }
+        if (timeIndex != null) {
+            size += timeIndex.serializedSize();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(lastSequence);
+        for (BucketTotals totals : calendarTotals) {
+            if (totals != null) {
+                totals.writeTo(buffer);
+            }
+        }
+        if (timeIndex != null) {
+            timeIndex.writeTo(buffer);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads an aggregate serialized by {@link #snapshot()} for the same rule plan windows.
+     *
+     * @param rulePlan The rule plan the aggregate was kept for.
+     * @param buffer   The buffer positioned at the serialized aggregate.
+     * @return The restored aggregate.
+     */
+    public static CustomerAggregate restore(RulePlan rulePlan, ByteBuffer buffer) {
+        long lastSequence = buffer.getLong();
+        BucketTotals[] calendarTotals = new BucketTotals[rulePlan.windowCount()];
+        for (int window = 0; window < rulePlan.windowCount(); window++) {
+            if (rulePlan.window(window).isCalendar()) {
+                calendarTotals[window] = BucketTotals.readFrom(buffer);
+            }
+        }
+        long maxRollingSeconds = rulePlan.maxRollingSeconds();
+        LoadTimeIndex timeIndex = maxRollingSeconds > 0 ? LoadTimeIndex.readFrom(buffer, maxRollingSeconds) : null;
+        return new CustomerAggregate(rulePlan, calendarTotals, timeIndex, lastSequence);
+    }
+}
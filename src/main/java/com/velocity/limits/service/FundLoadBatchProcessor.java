@@ -0,0 +1,140 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.events.DecisionStream;
+import com.velocity.limits.exception.InvalidLoadException;
+import com.velocity.limits.persistence.FundLoadStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Processes a batch of fund load requests in parallel, partitioned by customer.
+ * <p>
+ * Requests of the same customer form one partition and are processed in their
+ * input order, since each decision depends on the customer's earlier loads.
+ * Partitions are independent of each other and run concurrently on a dedicated
+ * {@link ForkJoinPool}. Accepted loads are written in the background by the
+ * {@link FundLoadStore} and flushed before the results are returned, in the
+ * original input order.
+ */
+@Service
+public class FundLoadBatchProcessor {
+
+    @Autowired
+    private FundLoadService fundLoadService;
+
+    @Autowired
+    private FundLoadStore fundLoadStore;
+
+    @Autowired(required = false)
+    private DecisionStream decisionStream;
+
+    /**
+     * Number of worker threads; {@code 0} uses one per available processor.
+     */
+    @Value("${fund.load.batch.parallelism:0}")
+    private int parallelism;
+
+    private ExecutorService pool;
+
+    @PostConstruct
+    public void start() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdown();
+    }
+
+    /**
+     * Processes the given fund load requests.
+     *
+     * @param fundLoadRequests The requests, in input order.
+     * @return The status of each request, in the same order as the requests.
+     */
+    public List<FundStatus> process(List<FundLoadRequest> fundLoadRequests) {
+        int size = fundLoadRequests.size();
+        checkIds(fundLoadRequests);
+
+        // 1. Chain the indexes of each customer's requests into a linked list, in input order.
+        Map<String, int[]> partitions = new LinkedHashMap<>(); // customer ID -> {first index, last index}
+        int[] next = new int[size];
+        Arrays.fill(next, -1);
+        for (int i = 0; i < size; i++) {
+            int[] bounds = partitions.get(fundLoadRequests.get(i).getCustomer_id());
+            if (bounds == null) {
+                partitions.put(fundLoadRequests.get(i).getCustomer_id(), new int[]{i, i});
+            } else {
+                next[bounds[1]] = i;
+                bounds[1] = i;
+            }
+        }
+
+        // 2. Process every partition as its own task, writing each status to its input position.
+        FundStatus[] results = new FundStatus[size];
+        List<Future<?>> tasks = new ArrayList<>(partitions.size());
+        for (int[] bounds : partitions.values()) {
+            int first = bounds[0];
+            tasks.add(pool.submit(() -> {
+                for (int i = first; i != -1; i = next[i]) {
+                    results[i] = fundLoadService.processLoadBatched(fundLoadRequests.get(i));
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            join(task);
+        }
+
+        // 3. Make sure every accepted load is committed, and every decision in the outbox, before reporting it.
+        fundLoadStore.flush();
+        if (decisionStream != null) {
+            decisionStream.sync();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Refuses the whole batch, before any of it is decided, if an id or customer ID is
+     * longer than the store can hold.
+     *
+     * @param fundLoadRequests The requests.
+     * @throws InvalidLoadException If an id or customer ID is too long.
+     */
+    public void checkIds(List<FundLoadRequest> fundLoadRequests) {
+        for (FundLoadRequest fundLoadRequest : fundLoadRequests) {
+            fundLoadService.checkIds(fundLoadRequest);
+        }
+    }
+
+    /**
+     * Waits for a partition task, rethrowing its failure unchecked.
+     */
+    private static void join(Future<?> task) {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing fund loads", e);
+        }
+    }
+}
@@ -2,30 +2,36 @@ package com.velocity.limits.service;
 
 import com.velocity.limits.dto.FundLoadRequest;
 import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.dto.LoadPrecheck;
+import com.velocity.limits.dto.LoadPrecheckRequest;
+import com.velocity.limits.dto.RuleHeadroom;
+import com.velocity.limits.events.DecisionStream;
+import com.velocity.limits.exception.InvalidLoadException;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.metrics.FundLoadMetrics.Stage;
 import com.velocity.limits.model.FundLoad;
-import com.velocity.limits.repository.FundLoadRepository;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.rules.RulePlan;
+import com.velocity.limits.util.Money;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.time.DayOfWeek;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 /**
  * Service class responsible for processing fund loads and enforcing load limits.
  * This class contains methods to convert and process fund load requests, checking
- * and enforcing daily and weekly load limits before saving them to the repository.
+ * and enforcing the configured velocity limits before saving them to the {@link FundLoadStore}.
  * <p>
  * The class is annotated with {@code @Service} to indicate that it is a Spring service
- * component and is autowiring the {@link FundLoadRepository} for data access.
+ * component and is autowiring the {@link FundLoadStore} for data access.
  * <p>
  * Author: vsareen
  * Version: 1.0
@@ -37,92 +43,220 @@ public class FundLoadService {
     private static final Logger logger = LoggerFactory.getLogger(FundLoadService.class);
 
     @Autowired
-    private FundLoadRepository fundLoadRepository;
+    private FundLoadStore fundLoadStore;
+
+    @Autowired
+    private LoadAggregateStore loadAggregateStore;
+
+    @Autowired
+    private FundLoadMetrics fundLoadMetrics;
 
-    @Value("${max.weekly.load.amount}")
-    private String maxWeeklyLoadAmount;
+    @Autowired
+    private LoadIdFilter loadIdFilter;
 
-    @Value("${max.daily.load.amount}")
-    private String maxDailyLoadAmount;
+    @Autowired(required = false)
+    private DecisionStream decisionStream;
 
     /**
      * Processes a fund load request, converting it to an entity and checking
-     * if the load is accepted based on daily and weekly load limits.
+     * if the load is accepted based on the configured velocity rules.
+     * An accepted load is saved before this method returns.
      *
      * @param fundLoadRequest The fund load request to be processed.
      */
     public FundStatus processLoad(FundLoadRequest fundLoadRequest) {
+        return processLoad(fundLoadRequest, fundLoadStore::save);
+    }
+
+    /**
+     * Processes a fund load request like {@link #processLoad(FundLoadRequest)}, but hands
+     * an accepted load to the {@link FundLoadStore} to be persisted with others in the
+     * background. Callers must {@link FundLoadStore#flush() flush} the store before
+     * reporting the returned status as durable.
+     *
+     * @param fundLoadRequest The fund load request to be processed.
+     */
+    public FundStatus processLoadBatched(FundLoadRequest fundLoadRequest) {
+        return processLoad(fundLoadRequest, fundLoadStore::write);
+    }
+
+    /**
+     * Decides a fund load request and persists it, if accepted, with the given persister.
+     * <p>
+     * The limit check, persist and aggregate update run under the customer's lock
+     * stripe in the {@link LoadAggregateStore}, so concurrent loads of the same customer
+     * are decided one at a time while loads of other customers proceed in parallel. A
+     * load whose id was decided before is answered from the {@link LoadIdFilter} with the
+     * earlier outcome, without evaluating the rules or persisting it again; the id's lock
+     * there is held as well, so that the same id is decided once even when submitted for
+     * two customers. Every decision, duplicates included, is published to the
+     * {@link DecisionStream} before the lock is released, so each customer's decisions
+     * are streamed in order.
+     */
+    private FundStatus processLoad(FundLoadRequest fundLoadRequest, Consumer<FundLoad> persister) {
         try {
             FundLoad fundLoad = mapToEntity(fundLoadRequest);
+            long cents = Money.toCents(fundLoad.getLoadAmount());
+
+            Lock customerLock = loadAggregateStore.customerLock(fundLoad.getCustomerId());
+            Lock idLock = loadIdFilter.idLock(fundLoad.getId());
+            customerLock.lock();
+            idLock.lock();
+            try {
+                Boolean previousOutcome = loadIdFilter.previousOutcome(fundLoad.getId());
+                if (previousOutcome != null) {
+                    logger.debug("Fund load {} is a duplicate", fundLoad.getId());
+                    fundLoadMetrics.duplicate();
+                    publish(fundLoad, previousOutcome, true, null);
+                    return fundDuplicate(fundLoad, previousOutcome);
+                }
 
-            if (isLoadAccepted(fundLoad)) {
-                fundLoadRepository.save(fundLoad);
-                return fundAccepted(fundLoad);
-            } else {
-                return fundRejected(fundLoad);
+                long decideStart = System.nanoTime();
+                int violatedRule = firstViolatedRule(fundLoad.getCustomerId(), fundLoad.getTime(), cents);
+                fundLoadMetrics.record(Stage.DECIDE, decideStart);
+
+                if (violatedRule == RulePlan.ACCEPTED) {
+                    fundLoad.setSequence(loadAggregateStore.nextSequence());
+                    long persistStart = System.nanoTime();
+                    persister.accept(fundLoad);
+                    fundLoadMetrics.record(Stage.PERSIST, persistStart);
+                    loadAggregateStore.record(fundLoad.getCustomerId(), fundLoad.getTime(), cents,
+                            fundLoad.getSequence());
+                    loadIdFilter.remember(fundLoad.getId(), true);
+                    fundLoadMetrics.accepted();
+                    publish(fundLoad, true, false, null);
+                    return fundAccepted(fundLoad);
+                } else {
+                    String ruleName = loadAggregateStore.getRulePlan().ruleName(violatedRule);
+                    logger.debug("Fund load {} rejected by rule {}", fundLoad.getId(), ruleName);
+                    loadIdFilter.remember(fundLoad.getId(), false);
+                    fundLoadMetrics.rejected(violatedRule);
+                    publish(fundLoad, false, false, ruleName);
+                    return fundRejected(fundLoad);
+                }
+            } finally {
+                idLock.unlock();
+                customerLock.unlock();
             }
         } catch (Exception e) {
             logger.error("Error processing fund load", e);
-            throw new RuntimeException("Error processing fund load");
+            throw new RuntimeException("Error processing fund load", e);
         }
     }
 
     /**
-     * Checks if a fund load is accepted based on daily and weekly load limits.
+     * Refuses a request whose id or customer ID is longer than the {@link FundLoadStore}
+     * can hold. Called for every request of a batch before any is decided, as the store
+     * would only refuse the load once accepted.
      *
-     * @param fundLoad The fund load to be checked.
-     * @return {@code true} if the load is accepted, {@code false} otherwise.
+     * @param fundLoadRequest The fund load request.
+     * @throws InvalidLoadException If the id or customer ID is too long.
      */
-    public boolean isLoadAccepted(FundLoad fundLoad) {
-        // Logic to check and enforce load limits
-
-        // Check daily load limit
-        LocalDate loadDate = fundLoad.getTime().toLocalDate();
-
-        // Check daily load limit
-        LocalDateTime startOfDay = LocalDateTime.of(loadDate, LocalTime.MIN);
-        LocalDateTime endOfDay = LocalDateTime.of(loadDate, LocalTime.MAX);
-
-        List<FundLoad> dailyLoads = fundLoadRepository.findByCustomerIdAndTimeBetween(
-                fundLoad.getCustomerId(), startOfDay, endOfDay);
-
-        if (dailyLoads.size() >= 3) { // This can be taken from configuration file
-            return false; // Exceeded the maximum number of loads per day
+    public void checkIds(FundLoadRequest fundLoadRequest) {
+        int maxIdBytes = fundLoadStore.maxIdBytes();
+        if (longerThan(fundLoadRequest.getId(), maxIdBytes)
+                || longerThan(fundLoadRequest.getCustomer_id(), maxIdBytes)) {
+            throw new InvalidLoadException("Fund load id and customer_id are limited to " + maxIdBytes
+                    + " bytes of UTF-8: " + fundLoadRequest.getId());
         }
+    }
 
-        BigDecimal dailyTotal = dailyLoads.stream()
-                .map(FundLoad::getLoadAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        if ((dailyTotal.add(fundLoad.getLoadAmount())).compareTo(new BigDecimal(maxDailyLoadAmount)) > 0) {
-            return false; // Exceeded the maximum daily load amount
+    /**
+     * @return Whether the UTF-8 encoding of a value is longer than the given bytes, found
+     * without encoding it.
+     */
+    private static boolean longerThan(String value, int maxBytes) {
+        // A char takes at most three bytes, a surrogate pair four
+        if (value == null || value.length() * 3 <= maxBytes) {
+            return false;
         }
-        // Check weekly load limit
-        LocalDateTime startOfWeek = LocalDateTime.of(loadDate, LocalTime.MIN)
-                .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
-        LocalDateTime endOfWeek = LocalDateTime.of(loadDate, LocalTime.MAX)
-                .with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
-
-        List<FundLoad> weeklyLoads = fundLoadRepository.findByCustomerIdAndTimeBetween(
-                fundLoad.getCustomerId(), startOfWeek, endOfWeek);
+        if (value.length() > maxBytes) {
+            return true;
+        }
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes > maxBytes;
+    }
 
-        if (weeklyLoads.size() >= 3) { //This can be taken from configuration file
-            return false; // Exceeded the maximum number of loads per week
+    private void publish(FundLoad fundLoad, boolean accepted, boolean duplicate, String rule) {
+        if (decisionStream != null) {
+            decisionStream.publish(fundLoad, accepted, duplicate, rule);
         }
+    }
 
-        BigDecimal weeklyTotal = weeklyLoads.stream()
-                .map(FundLoad::getLoadAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .add(fundLoad.getLoadAmount());
+    /**
+     * Checks if a fund load is accepted based on the configured velocity rules.
+     * The rules are evaluated against the customer's aggregates in the
+     * {@link LoadAggregateStore}, without a repository round trip.
+     *
+     * @param fundLoad The fund load to be checked.
+     * @return {@code true} if the load is accepted, {@code false} otherwise.
+     */
+    public boolean isLoadAccepted(FundLoad fundLoad) {
+        return firstViolatedRule(fundLoad.getCustomerId(), fundLoad.getTime(),
+                Money.toCents(Money.roundToCents(fundLoad.getLoadAmount()))) == RulePlan.ACCEPTED;
+    }
 
-        if (weeklyTotal.add(fundLoad.getLoadAmount()).compareTo(new BigDecimal(maxWeeklyLoadAmount)) > 0) {
-            return false; // Exceeded the maximum weekly load amount
+    /**
+     * Answers a what-if query from the customer's aggregates, without deciding or
+     * persisting anything. Acceptance is evaluated like {@link #isLoadAccepted}.
+     *
+     * @param precheckRequest The customer, time and optional amount to check.
+     * @return The headroom under every rule, and whether a load of the amount would be accepted.
+     */
+    public LoadPrecheck precheck(LoadPrecheckRequest precheckRequest) {
+        String customerId = precheckRequest.getCustomer_id();
+        LocalDateTime time = precheckRequest.getTime();
+        if (customerId == null || time == null) {
+            throw new IllegalArgumentException("A precheck needs a customer_id and a time");
         }
+        RulePlan rulePlan = loadAggregateStore.getRulePlan();
+        // Held like a decision, since a customer missing from a bounded aggregate cache is loaded under it
+        Lock customerLock = loadAggregateStore.customerLock(customerId);
+        customerLock.lock();
+        try {
+            CustomerAggregate aggregate = loadAggregateStore.get(customerId);
+            List<RuleHeadroom> headroom = new ArrayList<>(rulePlan.ruleCount());
+            for (int rule = 0; rule < rulePlan.ruleCount(); rule++) {
+                int window = rulePlan.windowIndex(rule);
+                boolean amountRule = rulePlan.isAmountRule(rule);
+                long used = amountRule ? aggregate.cents(window, time) : aggregate.count(window, time);
+                long limit = rulePlan.limit(rule);
+                headroom.add(new RuleHeadroom(rulePlan.ruleName(rule), amountRule ? "amount" : "count",
+                        rulePlan.window(window).toString(), value(limit, amountRule), value(used, amountRule),
+                        value(Math.max(0, limit - used), amountRule)));
+            }
+            if (precheckRequest.getLoad_amount() == null) {
+                return new LoadPrecheck(customerId, null, null, headroom);
+            }
+            int violatedRule = aggregate.firstViolatedRule(time,
+                    Money.toCents(Money.roundToCents(precheckRequest.getLoad_amount())));
+            return new LoadPrecheck(customerId, violatedRule == RulePlan.ACCEPTED,
+                    violatedRule == RulePlan.ACCEPTED ? null : rulePlan.ruleName(violatedRule), headroom);
+        } finally {
+            customerLock.unlock();
+        }
+    }
 
-
-        return true; // Load is accepted based on constraints
+    private static BigDecimal value(long value, boolean amount) {
+        return amount ? Money.fromCents(value) : BigDecimal.valueOf(value);
     }
 
+    /**
+     * Evaluates the velocity rules for a load of the given amount against the customer's
+     * aggregates, looked up once for all rules.
+     *
+     * @param customerId The customer ID of the load.
+     * @param time       The time of the load.
+     * @param cents      The amount of the load, in cents.
+     * @return The index of the first violated rule, or {@link RulePlan#ACCEPTED}.
+     */
+    private int firstViolatedRule(String customerId, LocalDateTime time, long cents) {
+        return loadAggregateStore.get(customerId).firstViolatedRule(time, cents);
+    }
 
     /**
      * Helper method to map FundLoadRequest to FundLoadEntity.
@@ -134,7 +268,8 @@ public class FundLoadService {
         FundLoad entity = new FundLoad();
         entity.setId(fundLoadRequest.getId());
         entity.setCustomerId(fundLoadRequest.getCustomer_id());
-        entity.setLoadAmount(fundLoadRequest.getLoad_amount());
+        entity.setLoadAmount(fundLoadRequest.getLoad_amount() == null ? null
+                : Money.roundToCents(fundLoadRequest.getLoad_amount()));
         entity.setTime(fundLoadRequest.getTime());
         return entity;
     }
@@ -159,6 +294,17 @@ public class FundLoadService {
         return printOutput(fundLoad, false);
     }
 
+    /**
+     * Returns the FundStatus of a load whose id was decided before.
+     *
+     * @param fundLoad        The resubmitted fund load.
+     * @param previousOutcome  Whether the earlier load with the same id was accepted.
+     * @return The FundStatus repeating the earlier outcome, marked as a duplicate.
+     */
+    private FundStatus fundDuplicate(FundLoad fundLoad, boolean previousOutcome) {
+        return new FundStatus(fundLoad.getId(), fundLoad.getCustomerId(), previousOutcome, true);
+    }
+
     /**
      * Creates a FundStatus object based on the given fund load and acceptance status.
      *
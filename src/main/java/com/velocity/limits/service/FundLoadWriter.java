@@ -0,0 +1,233 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.metrics.FundLoadMetrics.Stage;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.persistence.ConnectionPermits;
+import com.velocity.limits.repository.FundLoadRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer that persists accepted fund loads in JDBC batches.
+ * <p>
+ * Loads handed to {@link #write(FundLoad)} are buffered and inserted together in a
+ * single transaction, which Hibernate sends as JDBC batches of
+ * {@code hibernate.jdbc.batch_size}. The buffer is flushed when it reaches
+ * {@code fund.load.write.batch-size} loads, every {@code fund.load.write.flush-interval-ms}
+ * milliseconds, and whenever {@link #flush()} is called. Callers that must report
+ * durable results call {@link #flush()} before returning them.
+ * <p>
+ * A batch that fails is retried by the next flush, together with the loads written
+ * since. Once {@code fund.load.write.max-attempts} flushes in a row have failed, the
+ * loads are dropped and, on the flusher thread, taken back out of the
+ * {@link LoadAggregateStore} and the {@link LoadIdFilter}, which recorded them as
+ * accepted when they were decided, so that neither stays ahead of the database.
+ * <p>
+ * The writer backs {@link com.velocity.limits.persistence.JpaFundLoadStore} and only
+ * exists when it is the configured persistence.
+ */
+@Component
+@ConditionalOnProperty(name = "fund.load.persistence", havingValue = "jpa", matchIfMissing = true)
+public class FundLoadWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FundLoadWriter.class);
+
+    @Autowired
+    private FundLoadRepository fundLoadRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private FundLoadMetrics fundLoadMetrics;
+
+    @Autowired
+    private ConnectionPermits connectionPermits;
+
+    /**
+     * Lazy, as the aggregates are rebuilt from the store this writer backs.
+     */
+    @Lazy
+    @Autowired
+    private LoadAggregateStore loadAggregateStore;
+
+    @Lazy
+    @Autowired
+    private LoadIdFilter loadIdFilter;
+
+    @Value("${fund.load.write.batch-size:500}")
+    private int batchSize;
+
+    @Value("${fund.load.write.flush-interval-ms:200}")
+    private long flushIntervalMillis;
+
+    @Value("${fund.load.write.max-attempts:5}")
+    private int maxAttempts;
+
+    private final Object bufferLock = new Object();
+
+    /**
+     * Held for the whole of a flush, so a flush returns only after every load
+     * written before it, including those taken by a concurrent flush, is committed.
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private List<FundLoad> buffer = new ArrayList<>();
+
+    /**
+     * The number of flushes in a row that failed; guarded by {@link #flushLock}.
+     */
+    private int failedAttempts;
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fund-load-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * Buffers an accepted fund load for insertion, flushing if the buffer is full.
+     *
+     * @param fundLoad The accepted fund load.
+     */
+    public void write(FundLoad fundLoad) {
+        boolean full;
+        synchronized (bufferLock) {
+            buffer.add(fundLoad);
+            full = buffer.size() >= batchSize;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Inserts every buffered fund load and waits until they are committed.
+     * <p>
+     * A batch that fails is put back in the buffer, so it is retried by the next
+     * flush, unless it has failed {@code fund.load.write.max-attempts} times, when it
+     * is dropped and rolled back. The failure is rethrown to the caller either way.
+     */
+    public void flush() {
+        List<FundLoad> dropped = null;
+        flushLock.lock();
+        try {
+            List<FundLoad> batch;
+            synchronized (bufferLock) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                batch = buffer;
+                buffer = new ArrayList<>(batchSize);
+            }
+            long flushStart = System.nanoTime();
+            try {
+                insert(batch);
+                failedAttempts = 0;
+                fundLoadMetrics.record(Stage.FLUSH, flushStart);
+            } catch (RuntimeException e) {
+                if (++failedAttempts < maxAttempts) {
+                    synchronized (bufferLock) {
+                        batch.addAll(buffer);
+                        buffer = batch;
+                    }
+                } else {
+                    logger.error("Dropping {} fund loads after {} failed flushes", batch.size(), failedAttempts);
+                    failedAttempts = 0;
+                    dropped = batch;
+                }
+                throw e;
+            }
+        } finally {
+            flushLock.unlock();
+            if (dropped != null) {
+                rollBackLater(dropped);
+            }
+        }
+    }
+
+    /**
+     * Rolls dropped loads back on the flusher thread, as the caller may hold the lock
+     * of another customer.
+     */
+    private void rollBackLater(List<FundLoad> dropped) {
+        if (flusher == null || flusher.isShutdown()) {
+            rollBack(dropped);
+        } else {
+            flusher.execute(() -> rollBack(dropped));
+        }
+    }
+
+    private void rollBack(List<FundLoad> dropped) {
+        for (FundLoad fundLoad : dropped) {
+            Lock customerLock = loadAggregateStore.customerLock(fundLoad.getCustomerId());
+            Lock idLock = loadIdFilter.idLock(fundLoad.getId());
+            customerLock.lock();
+            idLock.lock();
+            try {
+                loadAggregateStore.unrecord(fundLoad);
+                loadIdFilter.forget(fundLoad.getId());
+            } finally {
+                idLock.unlock();
+                customerLock.unlock();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Error flushing fund loads, will retry", e);
+        }
+    }
+
+    private void insert(List<FundLoad> batch) {
+        try {
+            connectionPermits.run(() -> transactionTemplate.executeWithoutResult(status -> fundLoadRepository.saveAll(batch)));
+        } catch (DataIntegrityViolationException e) {
+            // An id in the batch already exists; save one by one, overwriting existing ids as before
+            logger.warn("Batch insert of {} fund loads failed, saving individually", batch.size());
+            connectionPermits.run(() -> {
+                for (FundLoad fundLoad : batch) {
+                    try {
+                        fundLoadRepository.save(fundLoad);
+                    } catch (DataIntegrityViolationException duplicate) {
+                        fundLoad.setNew(false);
+                        fundLoadRepository.save(fundLoad);
+                    }
+                }
+            });
+        }
+    }
+}
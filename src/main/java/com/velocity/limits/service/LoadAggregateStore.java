@@ -0,0 +1,428 @@
+package com.velocity.limits.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.rules.RulePlan;
+import com.velocity.limits.util.CustomerDictionary;
+import com.velocity.limits.util.DenseArray;
+import com.velocity.limits.util.Money;
+import com.velocity.limits.util.StripedLock;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory store of per-customer load aggregates over the windows of the {@link RulePlan}.
+ * <p>
+ * The store is the source of truth for limit decisions: {@link FundLoadService}
+ * consults it instead of querying the {@link FundLoadStore}, and records every
+ * accepted load in it after the load is saved. It is rebuilt from the fund load
+ * store when the application starts.
+ * <p>
+ * Accepted loads are numbered by {@link #nextSequence()} under their customer's lock
+ * stripe, which is held from the limit check to the aggregate update. When
+ * {@code fund.load.snapshot.path} is set and a snapshot exists there, startup restores
+ * the aggregates from it and replays only the loads with a higher sequence number,
+ * instead of reading every stored load. Snapshots are taken by {@link #capture}.
+ * <p>
+ * By default every customer's aggregate stays on the heap, in an array indexed by the
+ * dense index its customer id is interned as in a {@link CustomerDictionary} when its
+ * first load is recorded, so that no map entry or id string is kept per customer. With
+ * {@code fund.load.aggregates.max-memory-mb} set, the aggregates are held in a cache
+ * of about that size instead, evicting the least used customers and those idle for
+ * {@code fund.load.aggregates.expire-after-access-ms}. A customer missing from the
+ * cache is loaded from the {@link FundLoadStore}, after flushing it, when one of its
+ * loads is next decided; startup then only restores the snapshot and replays loads of
+ * the customers it holds. Accepted loads update the cached aggregate, and are skipped
+ * if it was evicted since their decision. Hit rates are published as the
+ * {@code customer-aggregates} cache meters.
+ */
+@Component
+public class LoadAggregateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadAggregateStore.class);
+
+    /**
+     * Number of locks customer decisions are striped over. Loads of one customer
+     * always share a stripe; different customers rarely do.
+     */
+    private static final int CUSTOMER_LOCK_STRIPES = 1024;
+
+    /**
+     * Fewer customers than this leave the fixed size of the index dominating, so its
+     * size per million customers is not logged.
+     */
+    private static final int MIN_CUSTOMERS_TO_EXTRAPOLATE = 10_000;
+
+    private final StripedLock customerLocks = new StripedLock(CUSTOMER_LOCK_STRIPES);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Index of every customer with an aggregate, or {@code null} if they are cached.
+     */
+    private final CustomerDictionary customers;
+
+    /**
+     * The aggregate of each customer, by index in {@link #customers}.
+     */
+    private final DenseArray<CustomerAggregate> customerAggregates;
+
+    /**
+     * The cached aggregates, or {@code null} if every customer is kept.
+     */
+    private final Cache<String, CustomerAggregate> cache;
+
+    private final RulePlan rulePlan;
+
+    /**
+     * Shared aggregate of customers without accepted loads; never added to.
+     */
+    private final CustomerAggregate noLoads;
+
+    @Autowired
+    private FundLoadStore fundLoadStore;
+
+    @Autowired(required = false)
+    private FundLoadMetrics fundLoadMetrics;
+
+    @Value("${fund.load.snapshot.path:}")
+    private String snapshotPath;
+
+    /**
+     * Creates a store keeping the aggregates of every customer.
+     */
+    public LoadAggregateStore(RulePlan rulePlan) {
+        this(rulePlan, 0, 0);
+    }
+
+    /**
+     * Creates a store keeping the aggregates of every customer, or a cache of them.
+     *
+     * @param maxMemoryMb             The estimated heap of the cached aggregates, or {@code 0} to keep every customer.
+     * @param expireAfterAccessMillis The time after which an unused cached aggregate is evicted, or {@code 0} for none.
+     */
+    @Autowired
+    public LoadAggregateStore(RulePlan rulePlan,
+                              @Value("${fund.load.aggregates.max-memory-mb:0}") long maxMemoryMb,
+                              @Value("${fund.load.aggregates.expire-after-access-ms:0}") long expireAfterAccessMillis) {
+        this.rulePlan = rulePlan;
+        this.noLoads = new CustomerAggregate(rulePlan);
+        if (maxMemoryMb > 0) {
+            Caffeine<String, CustomerAggregate> builder = Caffeine.newBuilder()
+                    .maximumWeight(maxMemoryMb << 20)
+                    .weigher((String customerId, CustomerAggregate aggregate) ->
+                            2 * customerId.length() + aggregate.estimatedSize())
+                    .recordStats();
+            if (expireAfterAccessMillis > 0) {
+                builder.expireAfterAccess(expireAfterAccessMillis, TimeUnit.MILLISECONDS);
+            }
+            this.cache = builder.build();
+            this.customers = null;
+            this.customerAggregates = null;
+        } else {
+            this.cache = null;
+            this.customers = new CustomerDictionary();
+            this.customerAggregates = new DenseArray<>();
+        }
+    }
+
+    /**
+     * @return The rule plan the aggregates are kept for.
+     */
+    public RulePlan getRulePlan() {
+        return rulePlan;
+    }
+
+    /**
+     * Rebuilds the aggregates from the snapshot, if there is one, and the fund loads
+     * persisted after it, or else from every fund load in the {@link FundLoadStore}.
+     */
+    @PostConstruct
+    public void rebuild() {
+        clear();
+        if (fundLoadMetrics != null) {
+            if (cache != null) {
+                fundLoadMetrics.monitor(cache, "customer-aggregates");
+            } else {
+                fundLoadMetrics.monitor(customers);
+            }
+        }
+        long snapshotSequence = restoreSnapshot();
+        if (snapshotSequence < 0) {
+            if (cache == null) {
+                rebuildFromStore();
+            } else {
+                logger.info("Loading customer aggregates from the fund load store on demand");
+            }
+        } else {
+            replayFromStore(snapshotSequence);
+        }
+        sequence.set(Math.max(snapshotSequence, fundLoadStore.maxSequence()));
+        if (customers != null && customers.size() > 0) {
+            long indexBytes = customers.memoryBytes() + customerAggregates.memoryBytes();
+            if (customers.size() < MIN_CUSTOMERS_TO_EXTRAPOLATE) {
+                logger.info("Indexed {} customers in {} KiB", customers.size(), indexBytes >> 10);
+            } else {
+                logger.info("Indexed {} customers in {} KiB, {} MiB per million customers", customers.size(),
+                        indexBytes >> 10, indexBytes * 1_000_000 / customers.size() >> 20);
+            }
+        }
+    }
+
+    /**
+     * Restores the aggregates from the snapshot file.
+     *
+     * @return The sequence number of the snapshot, or {@code -1} if there is no usable snapshot.
+     */
+    private long restoreSnapshot() {
+        if (snapshotPath.isEmpty() || !Files.exists(Path.of(snapshotPath))) {
+            return -1;
+        }
+        try {
+            long snapshotSequence = AggregateSnapshot.readFrom(Path.of(snapshotPath), rulePlan, this::put);
+            if (snapshotSequence < 0) {
+                logger.warn("Ignoring snapshot {} taken for different rule windows", snapshotPath);
+                clear();
+            } else {
+                logger.info("Restored load aggregates for {} customers from snapshot {} at sequence {}",
+                        customerCount(), snapshotPath, snapshotSequence);
+            }
+            return snapshotSequence;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable snapshot {}", snapshotPath, e);
+            clear();
+            return -1;
+        }
+    }
+
+    /**
+     * Adds the fund loads persisted after a snapshot, skipping those each customer's
+     * snapshot already includes, and with a cache, those of customers it does not hold.
+     */
+    private void replayFromStore(long snapshotSequence) {
+        long[] replayed = {0};
+        fundLoadStore.forEachAfter(snapshotSequence, fundLoad -> {
+            CustomerAggregate aggregate = peek(fundLoad.getCustomerId());
+            if (aggregate == null && cache == null) {
+                aggregate = noLoads;
+            }
+            if (aggregate != null && fundLoad.getSequence() > aggregate.getLastSequence()) {
+                record(fundLoad);
+                replayed[0]++;
+            }
+        });
+        logger.info("Replayed {} fund loads persisted after sequence {}", replayed[0], snapshotSequence);
+    }
+
+    private void rebuildFromStore() {
+        long[] loaded = {0};
+        fundLoadStore.forEach(fundLoad -> {
+            record(fundLoad);
+            loaded[0]++;
+        });
+        logger.info("Rebuilt load aggregates for {} customers from {} fund loads", customerCount(), loaded[0]);
+    }
+
+    /**
+     * Returns the lock that must be held while deciding and recording a load of a customer.
+     *
+     * @param customerId The customer ID of the load.
+     * @return The customer's lock stripe.
+     */
+    public Lock customerLock(String customerId) {
+        return customerLocks.get(customerId);
+    }
+
+    /**
+     * Numbers an accepted load. Must be called under the customer's lock, right before
+     * the load is persisted and recorded.
+     *
+     * @return The sequence number of the load.
+     */
+    public long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Serializes the aggregates of every customer into a snapshot writer, without
+     * stopping decisions.
+     * <p>
+     * The snapshot sequence is read first; passing every lock stripe then waits for
+     * loads numbered up to it to be recorded. Each customer is written atomically with
+     * the sequence number of its latest load, one at a time, so loads recorded during
+     * the copy may or may not be included but are never replayed twice.
+     *
+     * @param writer The snapshot writer, to commit with the returned sequence number.
+     * @return The snapshot sequence number; every load up to it is included.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public long capture(AggregateSnapshot.Writer writer) throws IOException {
+        long snapshotSequence = sequence.get();
+        customerLocks.barrier();
+        try {
+            forEach((customerId, aggregate) -> {
+                try {
+                    writer.add(customerId, aggregate.snapshot());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return snapshotSequence;
+    }
+
+    /**
+     * Returns the aggregates of the given customer, loading them from the
+     * {@link FundLoadStore} if they are not cached. Must be called under the
+     * customer's lock when a cache is used.
+     *
+     * @param customerId The customer ID to look up.
+     * @return The customer's aggregates, or an empty aggregate if the customer has no accepted loads.
+     */
+    public CustomerAggregate get(String customerId) {
+        CustomerAggregate aggregate = peek(customerId);
+        if (aggregate != null) {
+            return aggregate;
+        }
+        return cache == null ? noLoads : load(customerId);
+    }
+
+    /**
+     * Builds a customer's aggregates from its stored loads and caches them. The store
+     * is flushed first, so that loads accepted since the customer was evicted are read.
+     */
+    private CustomerAggregate load(String customerId) {
+        fundLoadStore.flush();
+        CustomerAggregate aggregate = new CustomerAggregate(rulePlan);
+        fundLoadStore.forEachOfCustomer(customerId, fundLoad -> aggregate.add(fundLoad.getTime(),
+                Money.toCents(fundLoad.getLoadAmount()), fundLoad.getSequence() == null ? 0 : fundLoad.getSequence()));
+        CustomerAggregate cached = cache.asMap().putIfAbsent(customerId, aggregate);
+        return cached != null ? cached : aggregate;
+    }
+
+    /**
+     * Records an accepted fund load in its customer's aggregates.
+     *
+     * @param fundLoad The accepted fund load.
+     */
+    public void record(FundLoad fundLoad) {
+        record(fundLoad.getCustomerId(), fundLoad.getTime(), Money.toCents(fundLoad.getLoadAmount()),
+                fundLoad.getSequence() == null ? 0 : fundLoad.getSequence());
+    }
+
+    /**
+     * Records an accepted load in its customer's aggregates.
+     *
+     * @param customerId The customer ID of the load.
+     * @param time       The time of the load.
+     * @param cents      The amount of the load, in cents.
+     */
+    public void record(String customerId, LocalDateTime time, long cents) {
+        record(customerId, time, cents, 0);
+    }
+
+    /**
+     * Records an accepted load in its customer's aggregates. Must be called under the
+     * customer's lock, except while the store is rebuilt.
+     *
+     * @param customerId The customer ID of the load.
+     * @param time       The time of the load.
+     * @param cents      The amount of the load, in cents.
+     * @param sequence   The sequence number of the load, or {@code 0} if it has none.
+     */
+    public void record(String customerId, LocalDateTime time, long cents, long sequence) {
+        if (cache == null) {
+            int index = customers.intern(customerId);
+            CustomerAggregate aggregate = customerAggregates.get(index);
+            if (aggregate == null) {
+                aggregate = new CustomerAggregate(rulePlan);
+                customerAggregates.set(index, aggregate);
+            }
+            aggregate.add(time, cents, sequence);
+        } else {
+            // Replacing the aggregate with itself has the cache weigh it again
+            cache.asMap().computeIfPresent(customerId, (id, aggregate) -> {
+                aggregate.add(time, cents, sequence);
+                return aggregate;
+            });
+        }
+    }
+
+    /**
+     * Takes an accepted load that could not be persisted back out of its customer's
+     * aggregates. Must be called under the customer's lock.
+     *
+     * @param fundLoad The fund load recorded by {@link #record}.
+     */
+    public void unrecord(FundLoad fundLoad) {
+        CustomerAggregate aggregate = peek(fundLoad.getCustomerId());
+        if (aggregate != null) {
+            aggregate.remove(fundLoad.getTime(), Money.toCents(fundLoad.getLoadAmount()));
+        }
+    }
+
+    /**
+     * @return The aggregate kept for a customer, or {@code null} if there is none.
+     */
+    private CustomerAggregate peek(String customerId) {
+        if (cache != null) {
+            return cache.getIfPresent(customerId);
+        }
+        int index = customers.indexOf(customerId);
+        return index < 0 ? null : customerAggregates.get(index);
+    }
+
+    private void put(String customerId, CustomerAggregate aggregate) {
+        if (cache != null) {
+            cache.put(customerId, aggregate);
+        } else {
+            customerAggregates.set(customers.intern(customerId), aggregate);
+        }
+    }
+
+    private void forEach(BiConsumer<String, CustomerAggregate> consumer) {
+        if (cache != null) {
+            cache.asMap().forEach(consumer);
+            return;
+        }
+        int customerCount = customers.size();
+        for (int index = 0; index < customerCount; index++) {
+            CustomerAggregate aggregate = customerAggregates.get(index);
+            if (aggregate != null) {
+                consumer.accept(customers.customerId(index), aggregate);
+            }
+        }
+    }
+
+    private int customerCount() {
+        return cache != null ? cache.asMap().size() : customers.size();
+    }
+
+    private void clear() {
+        if (cache != null) {
+            cache.invalidateAll();
+        } else {
+            customers.clear();
+            customerAggregates.clear();
+        }
+    }
+}
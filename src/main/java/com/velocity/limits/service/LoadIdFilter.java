@@ -0,0 +1,239 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.util.BloomFilter;
+import com.velocity.limits.util.StripedLock;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Bounded in-memory record of the fund load ids already decided, used to answer
+ * resubmitted loads without evaluating the velocity rules again.
+ * <p>
+ * A {@link BloomFilter} holds every id seen: a miss proves the id is new, which is
+ * the answer for almost all loads and costs a few memory reads. A hit is resolved by
+ * an LRU of the most recent ids, which also remembers whether each was accepted, and
+ * only when the id has aged out of it, by a lookup in the {@link FundLoadStore}.
+ * Only accepted loads are persisted, so an id found there was accepted, and a Bloom
+ * false positive or an old rejected id found nowhere is decided as new.
+ * <p>
+ * The Bloom filter is sized for {@code fund.load.dedup.expected-ids}. Once its bits
+ * imply more than {@code fund.load.dedup.false-positive-rate}, a stage twice as large
+ * with half that rate is added for the ids that follow, and a warning logged, so the
+ * rate of lookups falling through to the store stays below twice the configured rate
+ * however many ids are seen. The number of set bits that rate implies is computed once
+ * per stage, and compared with a count of the bits set in it. Lookups check every stage. The fill of the newest stage
+ * and the combined false positive rate are published as meters.
+ * <p>
+ * Both structures are seeded from the fund load store at startup, the LRU with the
+ * latest decisions. Accepted loads not yet flushed by the store are in the LRU, which
+ * must therefore be larger than the number of loads a store buffers.
+ * <p>
+ * Ids are striped over locks of their own: {@link #idLock} must be held from the lookup
+ * of an id to remembering its outcome, so that loads with the same id and different
+ * customers, whose customer locks differ, are not both decided as new.
+ */
+@Component
+public class LoadIdFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadIdFilter.class);
+
+    /**
+     * Number of locks ids are striped over.
+     */
+    private static final int ID_LOCK_STRIPES = 1024;
+
+    private final StripedLock idLocks = new StripedLock(ID_LOCK_STRIPES);
+
+    private final FundLoadStore fundLoadStore;
+    private final long expectedIds;
+    private final double falsePositiveRate;
+
+    @Autowired(required = false)
+    private FundLoadMetrics fundLoadMetrics;
+
+    /**
+     * Bloom filter stages, oldest first; ids are added to the last one.
+     */
+    private volatile BloomFilter[] seenIds;
+
+    /**
+     * Outcome of the most recently decided ids, evicting the least recently used. Also
+     * guards the stage counters below and adding a stage.
+     */
+    private final Map<String, Boolean> recentOutcomes;
+
+    /**
+     * The bits set in the newest stage, and the number past which a stage is added.
+     */
+    private long stageSetBits;
+    private long stageSetBitsLimit;
+
+    public LoadIdFilter(FundLoadStore fundLoadStore,
+                        @Value("${fund.load.dedup.expected-ids:1000000}") long expectedIds,
+                        @Value("${fund.load.dedup.false-positive-rate:0.01}") double falsePositiveRate,
+                        @Value("${fund.load.dedup.recent-ids:100000}") int recentIds) {
+        if (recentIds <= 0) {
+            throw new IllegalArgumentException("Recent id count must be positive: " + recentIds);
+        }
+        this.fundLoadStore = fundLoadStore;
+        this.expectedIds = expectedIds;
+        this.falsePositiveRate = falsePositiveRate;
+        this.seenIds = new BloomFilter[]{new BloomFilter(expectedIds, falsePositiveRate)};
+        this.stageSetBitsLimit = seenIds[0].setBitsAt(falsePositiveRate);
+        this.recentOutcomes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > recentIds;
+            }
+        };
+    }
+
+    /**
+     * Seeds the filter with the id of every fund load in the {@link FundLoadStore},
+     * forgetting any other id.
+     */
+    @PostConstruct
+    public void seed() {
+        synchronized (recentOutcomes) {
+            seenIds = new BloomFilter[]{new BloomFilter(expectedIds, falsePositiveRate)};
+            stageSetBits = 0;
+            stageSetBitsLimit = seenIds[0].setBitsAt(falsePositiveRate);
+            recentOutcomes.clear();
+        }
+        long[] seeded = {0};
+        fundLoadStore.forEachId(id -> {
+            remember(id, true);
+            seeded[0]++;
+        });
+        logger.info("Seeded fund load id filter with {} ids ({} bits in {} stages)",
+                seeded[0], bitCount(), seenIds.length);
+        if (fundLoadMetrics != null) {
+            fundLoadMetrics.monitor(this);
+        }
+    }
+
+    /**
+     * Returns the lock that must be held while looking up an id and remembering the
+     * outcome of its load. Taken after the customer's lock.
+     *
+     * @param id The fund load id.
+     * @return The id's lock stripe.
+     */
+    public Lock idLock(String id) {
+        return idLocks.get(id);
+    }
+
+    /**
+     * Looks up the outcome of an earlier load with the given id.
+     *
+     * @param id The fund load id.
+     * @return Whether the earlier load was accepted, or {@code null} if the id is new.
+     */
+    public Boolean previousOutcome(String id) {
+        if (!mightContain(id)) {
+            return null;
+        }
+        Boolean outcome;
+        synchronized (recentOutcomes) {
+            outcome = recentOutcomes.get(id);
+        }
+        if (outcome != null) {
+            return outcome;
+        }
+        return fundLoadStore.exists(id) ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Records the outcome of a decided load.
+     *
+     * @param id       The fund load id.
+     * @param accepted Whether the load was accepted.
+     */
+    public void remember(String id, boolean accepted) {
+        synchronized (recentOutcomes) {
+            BloomFilter[] stages = seenIds;
+            stageSetBits += stages[stages.length - 1].put(id);
+            if (stageSetBits > stageSetBitsLimit) {
+                grow(stages);
+            }
+            recentOutcomes.put(id, accepted);
+        }
+    }
+
+    /**
+     * Forgets the outcome of an accepted load that could not be persisted, so that the
+     * id is decided as new when it is next submitted. It stays in the Bloom filter, whose
+     * hit then falls through to the {@link FundLoadStore}.
+     *
+     * @param id The fund load id.
+     */
+    public void forget(String id) {
+        synchronized (recentOutcomes) {
+            recentOutcomes.remove(id);
+        }
+    }
+
+    /**
+     * @return The fraction of bits set in the Bloom filter stage ids are added to.
+     */
+    public double fill() {
+        BloomFilter[] stages = seenIds;
+        return stages[stages.length - 1].fill();
+    }
+
+    /**
+     * @return The probability that a new id is found in some Bloom filter stage, given
+     * the bits currently set.
+     */
+    public double falsePositiveRate() {
+        double trueNegativeRate = 1;
+        for (BloomFilter stage : seenIds) {
+            trueNegativeRate *= 1 - stage.falsePositiveRate();
+        }
+        return 1 - trueNegativeRate;
+    }
+
+    /**
+     * @return The number of bits in every Bloom filter stage.
+     */
+    public long bitCount() {
+        long bitCount = 0;
+        for (BloomFilter stage : seenIds) {
+            bitCount += stage.bitCount();
+        }
+        return bitCount;
+    }
+
+    private boolean mightContain(String id) {
+        BloomFilter[] stages = seenIds;
+        // Newest first: resubmissions are mostly of recent ids
+        for (int stage = stages.length - 1; stage >= 0; stage--) {
+            if (stages[stage].mightContain(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void grow(BloomFilter[] full) {
+        BloomFilter[] stages = Arrays.copyOf(full, full.length + 1);
+        double stageRate = falsePositiveRate / (1L << full.length);
+        stages[full.length] = new BloomFilter(expectedIds << full.length, stageRate);
+        stageSetBits = 0;
+        stageSetBitsLimit = stages[full.length].setBitsAt(stageRate);
+        seenIds = stages;
+        logger.warn("Fund load id filter exceeded its false positive rate, added a stage of {} bits ({} bits in {} "
+                + "stages); raise fund.load.dedup.expected-ids", stages[full.length].bitCount(), bitCount(), stages.length);
+    }
+}
@@ -0,0 +1,92 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.persistence.FundLoadStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a snapshot of the {@link LoadAggregateStore} to
+ * {@code fund.load.snapshot.path}, and once more on shutdown, so that the next
+ * startup restores it instead of reading every stored fund load.
+ * <p>
+ * The aggregates are streamed into a temporary file, and the {@link FundLoadStore} is
+ * flushed before that file replaces the snapshot, so a snapshot never includes a load
+ * that is not persisted.
+ * Snapshots are disabled when no path is configured.
+ */
+@Component
+public class LoadSnapshotter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadSnapshotter.class);
+
+    @Autowired
+    private LoadAggregateStore loadAggregateStore;
+
+    @Autowired
+    private FundLoadStore fundLoadStore;
+
+    @Value("${fund.load.snapshot.path:}")
+    private String snapshotPath;
+
+    @Value("${fund.load.snapshot.interval-ms:60000}")
+    private long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (snapshotPath.isEmpty()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            snapshotQuietly();
+        }
+    }
+
+    /**
+     * Captures the aggregates, flushes buffered loads and commits the snapshot file.
+     *
+     * @throws IOException If the snapshot file cannot be written.
+     */
+    public synchronized void snapshot() throws IOException {
+        long start = System.nanoTime();
+        try (AggregateSnapshot.Writer writer = AggregateSnapshot.writer(Path.of(snapshotPath),
+                loadAggregateStore.getRulePlan())) {
+            long sequence = loadAggregateStore.capture(writer);
+            fundLoadStore.flush();
+            writer.commit(sequence);
+            logger.info("Wrote snapshot of {} customers at sequence {} in {} ms", writer.customerCount(),
+                    sequence, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            logger.error("Failed to write load aggregate snapshot", e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.velocity.limits.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Time-ordered accepted loads of one customer, for rolling window totals.
+ * <p>
+ * Load times (epoch seconds) are kept in a ring buffer of primitive arrays together
+ * with the running total of the amounts (cents) up to and including each load. The
+ * count and total of any interval {@code (from, to]} are then the difference of two
+ * positions found by binary search and of the running totals at those positions, so
+ * a query costs {@code O(log n)} with no allocation or summing loop.
+ * <p>
+ * Loads that can no longer fall in any window, because they are at least the
+ * retention period older than the newest load, are evicted from the head of the
+ * ring as new loads are added. Windows ending before the newest load are therefore
+ * only exact within the retention period of it. Not thread safe.
+ */
+class LoadTimeIndex {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final long retentionSeconds;
+
+    private long[] seconds = new long[INITIAL_CAPACITY];
+    private long[] runningCents = new long[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    /**
+     * Running total of every load evicted so far, i.e. the running total before the head.
+     */
+    private long evictedCents;
+
+    /**
+     * @param retentionSeconds The longest window the index must answer, in seconds.
+     */
+    LoadTimeIndex(long retentionSeconds) {
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    /**
+     * @return The number of loads with a time in {@code (from, to]}.
+     */
+    long count(long from, long to) {
+        return upperBound(to) - upperBound(from);
+    }
+
+    /**
+     * @return The total of the loads with a time in {@code (from, to]}, in cents.
+     */
+    long cents(long from, long to) {
+        return runningCentsBefore(upperBound(to)) - runningCentsBefore(upperBound(from));
+    }
+
+    /**
+     * @return The number of loads held.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a load, keeping the loads ordered by time, and evicts loads that have
+     * fallen out of the retention period.
+     *
+     * @throws ArithmeticException If the running total overflows.
+     */
+    void add(long time, long amount) {
+        long newest = size == 0 ? time : Math.max(time, seconds[physical(size - 1)]);
+        while (size > 0 && seconds[head] <= newest - retentionSeconds) {
+            evictedCents = runningCents[head];
+            head = (head + 1) & (seconds.length - 1);
+            size--;
+        }
+        if (time <= newest - retentionSeconds) {
+            return; // already outside every window
+        }
+        if (size == seconds.length) {
+            grow();
+        }
+
+        // Shift later loads one place to the right, adding the new amount to their running totals
+        int index = upperBound(time);
+        for (int i = size; i > index; i--) {
+            int to = physical(i);
+            int from = physical(i - 1);
+            seconds[to] = seconds[from];
+            runningCents[to] = Math.addExact(runningCents[from], amount);
+        }
+        int slot = physical(index);
+        seconds[slot] = time;
+        runningCents[slot] = Math.addExact(runningCentsBefore(index), amount);
+        size++;
+    }
+
+    /**
+     * Removes a load added with the given time and amount, if it is still held.
+     */
+    void remove(long time, long amount) {
+        int index = upperBound(time) - 1;
+        while (index >= 0 && seconds[physical(index)] == time
+                && runningCents[physical(index)] - runningCentsBefore(index) != amount) {
+            index--;
+        }
+        if (index < 0 || seconds[physical(index)] != time) {
+            return;
+        }
+        // Shift later loads one place to the left, taking the amount from their running totals
+        for (int i = index; i < size - 1; i++) {
+            int to = physical(i);
+            int from = physical(i + 1);
+            seconds[to] = seconds[from];
+            runningCents[to] = runningCents[from] - amount;
+        }
+        size--;
+    }
+
+    /**
+     * @return The number of bytes {@link #writeTo} writes.
+     */
+    int serializedSize() {
+        return Long.BYTES + Integer.BYTES + size * 2 * Long.BYTES;
+    }
+
+    /**
+     * Writes the evicted total and the number of loads, followed by each load time and
+     * running total in time order.
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.putLong(evictedCents).putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(seconds[physical(i)]).putLong(runningCents[physical(i)]);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo}.
+     *
+     * @param retentionSeconds The longest window the index must answer, in seconds.
+     */
+    static LoadTimeIndex readFrom(ByteBuffer buffer, long retentionSeconds) {
+        LoadTimeIndex index = new LoadTimeIndex(retentionSeconds);
+        index.evictedCents = buffer.getLong();
+        int size = buffer.getInt();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        index.seconds = new long[capacity];
+        index.runningCents = new long[capacity];
+        for (int i = 0; i < size; i++) {
+            index.seconds[i] = buffer.getLong();
+            index.runningCents[i] = buffer.getLong();
+        }
+        index.size = size;
+        return index;
+    }
+
+    /**
+     * @return The running total of the loads before the given position.
+     */
+    private long runningCentsBefore(int index) {
+        return index == 0 ? evictedCents : runningCents[physical(index - 1)];
+    }
+
+    /**
+     * @return The position of the first load later than {@code time}.
+     */
+    private int upperBound(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seconds[physical(mid)] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int physical(int index) {
+        return (head + index) & (seconds.length - 1);
+    }
+
+    private void grow() {
+        long[] newSeconds = new long[seconds.length * 2];
+        long[] newRunningCents = new long[seconds.length * 2];
+        for (int i = 0; i < size; i++) {
+            newSeconds[i] = seconds[physical(i)];
+            newRunningCents[i] = runningCents[physical(i)];
+        }
+        seconds = newSeconds;
+        runningCents = newRunningCents;
+        head = 0;
+    }
+}
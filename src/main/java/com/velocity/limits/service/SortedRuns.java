@@ -0,0 +1,179 @@
+package com.velocity.limits.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * External sort of replayed loads by customer, time and input position.
+ * <p>
+ * Loads are collected in memory up to the run size; each full run is sorted and spilled
+ * to a temporary file. {@link #merge} then passes every load to a consumer in sorted
+ * order, merging the spilled runs with the last one, which stays in memory. Memory use
+ * is bounded by the run size and a buffer per spilled run. Not thread safe.
+ */
+class SortedRuns implements Closeable {
+
+    /**
+     * A load to replay.
+     *
+     * @param customerId The customer ID.
+     * @param time       The load time, in epoch seconds.
+     * @param position   The position of the load in the input.
+     * @param id         The fund load id.
+     * @param cents      The amount, in cents.
+     */
+    record Load(String customerId, long time, long position, String id, long cents) {
+    }
+
+    static final Comparator<Load> ORDER = Comparator.comparing(Load::customerId)
+            .thenComparingLong(Load::time)
+            .thenComparingLong(Load::position);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final int runSize;
+    private final List<Load> run;
+    private final List<Path> spilled = new ArrayList<>();
+
+    /**
+     * @param directory The directory for spilled runs.
+     * @param runSize   The number of loads sorted in memory at a time.
+     */
+    SortedRuns(Path directory, int runSize) {
+        this.directory = directory;
+        this.runSize = runSize;
+        this.run = new ArrayList<>(Math.min(runSize, 1 << 16));
+    }
+
+    /**
+     * Adds a load, spilling the current run if it is full.
+     */
+    void add(Load load) throws IOException {
+        run.add(load);
+        if (run.size() == runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * @return The number of runs spilled to disk.
+     */
+    int spilledRuns() {
+        return spilled.size();
+    }
+
+    /**
+     * Passes every added load to the consumer, in {@link #ORDER}.
+     */
+    void merge(Consumer<Load> consumer) throws IOException {
+        run.sort(ORDER);
+        List<RunReader> readers = new ArrayList<>(spilled.size());
+        try {
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(Comparator.comparing(RunReader::head, ORDER));
+            for (Path file : spilled) {
+                RunReader reader = new RunReader(file);
+                readers.add(reader);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+            int next = 0;
+            while (!heads.isEmpty() || next < run.size()) {
+                if (heads.isEmpty() || next < run.size() && ORDER.compare(run.get(next), heads.peek().head()) < 0) {
+                    consumer.accept(run.get(next++));
+                } else {
+                    RunReader reader = heads.poll();
+                    consumer.accept(reader.head());
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes the spilled runs.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path file : spilled) {
+            Files.deleteIfExists(file);
+        }
+        spilled.clear();
+    }
+
+    private void spill() throws IOException {
+        run.sort(ORDER);
+        Path file = Files.createTempFile(directory, "fund-load-replay-", ".run");
+        spilled.add(file);
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+            for (Load load : run) {
+                output.writeUTF(load.customerId());
+                output.writeLong(load.time());
+                output.writeLong(load.position());
+                output.writeUTF(load.id());
+                output.writeLong(load.cents());
+            }
+        }
+        run.clear();
+    }
+
+    /**
+     * Reads a spilled run one load at a time.
+     */
+    private static final class RunReader implements Closeable {
+
+        private final DataInputStream input;
+        private Load head;
+
+        RunReader(Path file) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        }
+
+        Load head() {
+            return head;
+        }
+
+        /**
+         * Reads the next load into the head.
+         *
+         * @return {@code false} at the end of the run.
+         */
+        boolean advance() {
+            try {
+                head = new Load(input.readUTF(), input.readLong(), input.readLong(), input.readUTF(), input.readLong());
+                return true;
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.velocity.limits.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size Bloom filter of strings.
+ * <p>
+ * The filter answers "definitely not added" or "possibly added" in constant memory,
+ * sized up front for an expected number of entries and false positive rate. Bits are
+ * set with compare-and-set, so {@link #put} and {@link #mightContain} are safe to call
+ * from any thread without locking. Entries cannot be removed.
+ * <p>
+ * The bits set are counted as they are set, so the current fill and the false
+ * positive rate it implies can be read at any time, whatever the number of entries
+ * actually added.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder setBits = new LongAdder();
+
+    /**
+     * Creates a filter with the optimal bit and hash counts for the given capacity.
+     *
+     * @param expectedEntries   The number of entries the filter is sized for.
+     * @param falsePositiveRate The false positive rate once that many entries are added,
+     *                          between {@code 0} and {@code 1} exclusive.
+     */
+    public BloomFilter(long expectedEntries, double falsePositiveRate) {
+        if (expectedEntries <= 0) {
+            throw new IllegalArgumentException("Expected entries must be positive: " + expectedEntries);
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long optimalBits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = Math.toIntExact((optimalBits + Long.SIZE - 1) / Long.SIZE);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round((double) optimalBits / expectedEntries * Math.log(2)));
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value The value to add.
+     * @return The number of bits the value set that were not set before.
+     */
+    public int put(String value) {
+        long hash = Hashing.hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int newBits = 0;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    setBits.increment();
+                    newBits++;
+                    break;
+                }
+            }
+        }
+        return newBits;
+    }
+
+    /**
+     * @param value The value to look up.
+     * @return {@code false} if the value was definitely never added, {@code true} if it may have been.
+     */
+    public boolean mightContain(String value) {
+        long hash = Hashing.hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of bits in the filter.
+     */
+    public long bitCount() {
+        return bitCount;
+    }
+
+    /**
+     * @return The number of bits set per entry.
+     */
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * @return The fraction of bits set, between {@code 0} and {@code 1}.
+     */
+    public double fill() {
+        return (double) setBits.sum() / bitCount;
+    }
+
+    /**
+     * Returns the number of set bits at which the false positive rate reaches the given
+     * one, so callers can watch for it by counting the bits {@link #put} sets instead of
+     * computing {@link #falsePositiveRate()} on every put.
+     *
+     * @param falsePositiveRate The false positive rate.
+     * @return The number of set bits.
+     */
+    public long setBitsAt(double falsePositiveRate) {
+        return (long) (bitCount * Math.pow(falsePositiveRate, 1.0 / hashCount));
+    }
+
+    /**
+     * @return The probability that a value never added is reported as possibly added,
+     * given the bits currently set.
+     */
+    public double falsePositiveRate() {
+        return Math.pow(fill(), hashCount);
+    }
+
+    private long index(int combinedHash) {
+        // Double hashing (Kirsch-Mitzenmacher): the i-th bit is h1 + i * h2, the halves of a 64-bit hash.
+        return (combinedHash & 0xFFFFFFFFL) % bitCount;
+    }
+}
@@ -0,0 +1,275 @@
+package com.velocity.limits.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Interns customer ids as dense {@code int} indexes, numbered from {@code 0} in the
+ * order they are first seen, so that per-customer state can be kept in arrays
+ * indexed by customer instead of maps keyed by id strings.
+ * <p>
+ * Ids are encoded back to back in 1 MiB byte pages, each char as a 1 to 3 byte varint
+ * after the char count, so ASCII ids take one byte per char plus one. The position of
+ * each index's id is kept in chunks of a {@code long} array, and ids are found by
+ * linear probing in a power-of-two {@code long} table holding each id's
+ * {@link String#hashCode()} next to its index, filled to at most three quarters.
+ * A customer costs about its id length plus 20 to 30 bytes, against about 90 bytes
+ * plus its id for an entry of a {@code HashMap<String, ?>}.
+ * <p>
+ * {@link #indexOf} and {@link #customerId} never lock: new entries are published with
+ * release writes after their id and position, and the table is replaced whole when it
+ * grows. {@link #intern} serializes additions.
+ */
+public class CustomerDictionary {
+
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_TABLE_BITS = 30;
+
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Hash code in the high half and index plus one in the low half of each id, or
+     * {@code 0} for an empty slot.
+     */
+    private volatile long[] table;
+    private volatile byte[][] pages;
+    private volatile long[][] positions;
+    private volatile int size;
+
+    private int pageCount;
+    private int pageOffset;
+
+    public CustomerDictionary() {
+        clear();
+    }
+
+    /**
+     * Looks up the index of a customer id.
+     *
+     * @param customerId The customer id.
+     * @return The index of the id, or {@code -1} if it has not been interned.
+     */
+    public int indexOf(String customerId) {
+        long[] entries = table;
+        int hash = customerId.hashCode();
+        int mask = entries.length - 1;
+        for (int slot = slot(hash, entries.length); ; slot = (slot + 1) & mask) {
+            long entry = (long) ENTRIES.getAcquire(entries, slot);
+            if (entry == 0) {
+                return -1;
+            }
+            int index = (int) entry - 1;
+            if ((int) (entry >>> 32) == hash && matches(index, customerId)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of a customer id, assigning it the next index if it is new.
+     *
+     * @param customerId The customer id.
+     * @return The index of the id.
+     */
+    public int intern(String customerId) {
+        int index = indexOf(customerId);
+        return index >= 0 ? index : add(customerId);
+    }
+
+    private synchronized int add(String customerId) {
+        // Another thread may have added the id, or grown the table, since the lock-free lookup
+        int index = indexOf(customerId);
+        if (index >= 0) {
+            return index;
+        }
+        index = size;
+        if (index == Integer.MAX_VALUE - 1) {
+            throw new IllegalStateException("Customer dictionary is full");
+        }
+        setPosition(index, append(customerId));
+        if ((long) (index + 1) * 4 > (long) table.length * 3) {
+            grow();
+        }
+        long[] entries = table;
+        int hash = customerId.hashCode();
+        int mask = entries.length - 1;
+        int slot = slot(hash, entries.length);
+        while (entries[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        ENTRIES.setRelease(entries, slot, entry(hash, index));
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * Decodes the customer id of an index.
+     *
+     * @param index An index returned by {@link #intern}.
+     * @return The customer id.
+     */
+    public String customerId(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No customer with index " + index);
+        }
+        long position = positions[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+        byte[] page = pages[(int) (position >>> PAGE_BITS)];
+        int offset = (int) position & (PAGE_SIZE - 1);
+        int length = readVarint(page, offset);
+        offset += varintSize(length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int c = readVarint(page, offset);
+            offset += varintSize(c);
+            chars[i] = (char) c;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return The number of interned customer ids; indexes run from {@code 0} to one less.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The heap held by the dictionary's arrays, in bytes.
+     */
+    public synchronized long memoryBytes() {
+        long bytes = 16 + (long) table.length * Long.BYTES;
+        bytes += 16 + (long) pages.length * 4 + (long) pageCount * (16 + PAGE_SIZE);
+        for (long[] chunk : positions) {
+            bytes += 4 + (chunk == null ? 0 : 16 + (long) CHUNK_SIZE * Long.BYTES);
+        }
+        return bytes + 16;
+    }
+
+    /**
+     * Forgets every customer id; indexes are assigned from {@code 0} again.
+     */
+    public synchronized void clear() {
+        pageCount = 0;
+        pageOffset = 0;
+        pages = new byte[1][];
+        positions = new long[1][];
+        table = new long[1 << 4];
+        size = 0;
+    }
+
+    private boolean matches(int index, String customerId) {
+        long position = positions[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+        byte[] page = pages[(int) (position >>> PAGE_BITS)];
+        int offset = (int) position & (PAGE_SIZE - 1);
+        int length = readVarint(page, offset);
+        offset += varintSize(length);
+        if (length != customerId.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int c = readVarint(page, offset);
+            offset += varintSize(c);
+            if (c != customerId.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes an id at the end of the last page, starting a new page if it does not fit.
+     *
+     * @return The position of the encoded id.
+     */
+    private long append(String customerId) {
+        int maxLength = 5 + 3 * customerId.length();
+        if (maxLength > PAGE_SIZE) {
+            throw new IllegalArgumentException("Customer id of " + customerId.length() + " chars is too long");
+        }
+        if (pageCount == 0 || pageOffset + maxLength > PAGE_SIZE) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            pages[pageCount++] = new byte[PAGE_SIZE];
+            pageOffset = 0;
+        }
+        long position = ((long) (pageCount - 1) << PAGE_BITS) + pageOffset;
+        byte[] page = pages[pageCount - 1];
+        int offset = writeVarint(page, pageOffset, customerId.length());
+        for (int i = 0; i < customerId.length(); i++) {
+            offset = writeVarint(page, offset, customerId.charAt(i));
+        }
+        pageOffset = offset;
+        return position;
+    }
+
+    private void setPosition(int index, long position) {
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk == positions.length) {
+            positions = Arrays.copyOf(positions, chunk * 2);
+        }
+        if (positions[chunk] == null) {
+            positions[chunk] = new long[CHUNK_SIZE];
+        }
+        positions[chunk][index & (CHUNK_SIZE - 1)] = position;
+    }
+
+    /**
+     * Doubles the table, placing every entry again by its stored hash code.
+     */
+    private void grow() {
+        long[] entries = table;
+        if (entries.length == 1 << MAX_TABLE_BITS) {
+            throw new IllegalStateException("Customer dictionary is full");
+        }
+        long[] grown = new long[entries.length * 2];
+        int mask = grown.length - 1;
+        for (long entry : entries) {
+            if (entry != 0) {
+                int slot = slot((int) (entry >>> 32), grown.length);
+                while (grown[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                grown[slot] = entry;
+            }
+        }
+        table = grown;
+    }
+
+    private static int slot(int hash, int tableLength) {
+        // Fibonacci hashing: the high bits of the product depend on every bit of the hash
+        return (hash * 0x9e3779b9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(tableLength));
+    }
+
+    private static long entry(int hash, int index) {
+        return (long) hash << 32 | (index + 1L);
+    }
+
+    private static int readVarint(byte[] page, int offset) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = page[offset++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int varintSize(int value) {
+        return value < 1 << 7 ? 1 : value < 1 << 14 ? 2 : value < 1 << 21 ? 3 : value < 1 << 28 ? 4 : 5;
+    }
+
+    private static int writeVarint(byte[] page, int offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            page[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        page[offset++] = (byte) value;
+        return offset;
+    }
+}
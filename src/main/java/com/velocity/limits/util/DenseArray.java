@@ -0,0 +1,84 @@
+package com.velocity.limits.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A growable array of objects indexed by dense {@code int} keys, such as the indexes
+ * of a {@link CustomerDictionary}, stored in fixed chunks so that growing never
+ * copies the elements.
+ * <p>
+ * Elements are read and written with acquire and release semantics, so an element
+ * set by one thread is seen fully constructed by another. Growth is serialized;
+ * writes of the same index must be serialized by the caller.
+ */
+public class DenseArray<T> {
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private volatile Object[][] chunks = new Object[1][];
+
+    /**
+     * @param index A non-negative index.
+     * @return The element at the index, or {@code null} if none was set.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        Object[][] current = chunks;
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk >= current.length || current[chunk] == null) {
+            return null;
+        }
+        return (T) ELEMENTS.getAcquire(current[chunk], index & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Sets the element at an index, growing the array if needed.
+     *
+     * @param index A non-negative index.
+     * @param value The element, or {@code null} to clear it.
+     */
+    public void set(int index, T value) {
+        int chunk = index >>> CHUNK_BITS;
+        Object[][] current = chunks;
+        if (chunk >= current.length || current[chunk] == null) {
+            current = allocate(chunk);
+        }
+        ELEMENTS.setRelease(current[chunk], index & (CHUNK_SIZE - 1), value);
+    }
+
+    /**
+     * Removes every element and releases the chunks.
+     */
+    public synchronized void clear() {
+        chunks = new Object[1][];
+    }
+
+    /**
+     * @return The heap held by the array's chunks, excluding the elements, in bytes.
+     */
+    public long memoryBytes() {
+        Object[][] current = chunks;
+        long bytes = 16 + (long) current.length * 4;
+        for (Object[] chunk : current) {
+            bytes += chunk == null ? 0 : 16 + (long) CHUNK_SIZE * 4;
+        }
+        return bytes;
+    }
+
+    private synchronized Object[][] allocate(int chunk) {
+        Object[][] current = chunks;
+        if (chunk >= current.length) {
+            current = Arrays.copyOf(current, Math.max(chunk + 1, current.length * 2));
+        }
+        if (current[chunk] == null) {
+            current[chunk] = new Object[CHUNK_SIZE];
+        }
+        chunks = current;
+        return current;
+    }
+}
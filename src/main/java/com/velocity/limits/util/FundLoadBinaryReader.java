@@ -0,0 +1,179 @@
+package com.velocity.limits.util;
+
+import com.velocity.limits.dto.FundLoadRequest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads fund load requests in the binary columnar upload format written by
+ * {@link FundLoadBinaryWriter}.
+ * <p>
+ * Each block is read whole and its columns decoded into primitive arrays, then the
+ * requests are assembled one at a time; customer IDs are shared from the dictionary,
+ * so only the id string is created per load.
+ */
+public class FundLoadBinaryReader implements FundLoadRequestSource {
+
+    private final InputStream inputStream;
+    private final List<String> dictionary = new ArrayList<>();
+    private final String[] ids = new String[FundLoadBinaryWriter.BLOCK_ROWS];
+    private final int[] customers = new int[FundLoadBinaryWriter.BLOCK_ROWS];
+    private final long[] times = new long[FundLoadBinaryWriter.BLOCK_ROWS];
+    private final long[] cents = new long[FundLoadBinaryWriter.BLOCK_ROWS];
+    private byte[] payload = new byte[64 * 1024];
+    private int position;
+    private int limit;
+    private int rows;
+    private int row;
+    private long previousTime;
+    private boolean endOfStream;
+
+    /**
+     * @param inputStream The stream to read from; closed with the reader.
+     * @throws IOException If the stream does not start with the format's magic bytes.
+     */
+    public FundLoadBinaryReader(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+        byte[] magic = inputStream.readNBytes(FundLoadBinaryWriter.MAGIC.length);
+        if (!Arrays.equals(magic, FundLoadBinaryWriter.MAGIC)) {
+            throw new IOException("Not a binary fund load upload");
+        }
+    }
+
+    @Override
+    public FundLoadRequest next() throws IOException {
+        while (row == rows) {
+            if (endOfStream || !readBlock()) {
+                endOfStream = true;
+                return null;
+            }
+        }
+        FundLoadRequest request = new FundLoadRequest();
+        request.setId(ids[row]);
+        request.setCustomer_id(dictionary.get(customers[row]));
+        request.setLoad_amount(Money.fromCents(cents[row]));
+        request.setTime(LocalDateTime.ofEpochSecond(times[row], 0, ZoneOffset.UTC));
+        ids[row++] = null;
+        return request;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Reads and decodes the next block.
+     *
+     * @return {@code false} at the terminator.
+     */
+    private boolean readBlock() throws IOException {
+        long rowCount = readStreamVarint();
+        if (rowCount == 0) {
+            return false;
+        }
+        long payloadLength = readStreamVarint();
+        // Both come from the upload, so they are checked before anything is allocated for the block
+        if (rowCount < 0 || rowCount > FundLoadBinaryWriter.BLOCK_ROWS
+                || payloadLength < 0 || payloadLength > FundLoadBinaryWriter.MAX_BLOCK_BYTES) {
+            throw new IOException("Corrupt binary fund load block of " + rowCount + " rows in "
+                    + payloadLength + " bytes");
+        }
+        int blockRows = (int) rowCount;
+        int payloadBytes = (int) payloadLength;
+        // The payload buffer grows with the bytes actually received, not the length claimed
+        int read = 0;
+        while (read < payloadBytes) {
+            if (read == payload.length) {
+                payload = Arrays.copyOf(payload, Math.min(payloadBytes, payload.length * 2));
+            }
+            int n = inputStream.read(payload, read, Math.min(payloadBytes, payload.length) - read);
+            if (n < 0) {
+                throw new EOFException("Truncated binary fund load block");
+            }
+            read += n;
+        }
+
+        position = 0;
+        limit = payloadBytes;
+        long newCustomers = readVarint();
+        for (long i = 0; i < newCustomers; i++) {
+            dictionary.add(readString());
+        }
+        for (int i = 0; i < blockRows; i++) {
+            ids[i] = readString();
+        }
+        for (int i = 0; i < blockRows; i++) {
+            long customer = readVarint();
+            if (customer >= dictionary.size()) {
+                throw new IOException("Unknown customer " + customer + " in binary fund load block");
+            }
+            customers[i] = (int) customer;
+        }
+        for (int i = 0; i < blockRows; i++) {
+            previousTime += unzigzag(readVarint());
+            times[i] = previousTime;
+        }
+        for (int i = 0; i < blockRows; i++) {
+            cents[i] = unzigzag(readVarint());
+        }
+        if (position != limit) {
+            throw new IOException("Corrupt binary fund load block");
+        }
+        rows = blockRows;
+        row = 0;
+        return true;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) {
+                throw new EOFException("Truncated binary fund load block");
+            }
+            byte b = payload[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary fund load block");
+    }
+
+    private String readString() throws IOException {
+        int length = (int) readVarint();
+        if (length < 0 || length > limit - position) {
+            throw new EOFException("Truncated binary fund load block");
+        }
+        String value = new String(payload, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private long readStreamVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = inputStream.read();
+            if (b < 0) {
+                throw new EOFException("Truncated binary fund load upload");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary fund load upload");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,194 @@
+package com.velocity.limits.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes fund loads in the binary columnar upload format, read by {@link FundLoadBinaryReader}.
+ * <p>
+ * The stream starts with the magic bytes {@code VFL1}, followed by blocks of up to
+ * {@value #BLOCK_ROWS} loads and a terminating zero. Each block is:
+ * <pre>
+ * varint rows, varint payload bytes, then the payload:
+ *   varint new customers, each as varint length and UTF-8 bytes, appended to the dictionary
+ *   rows ids, each as varint length and UTF-8 bytes
+ *   rows customers, as varint dictionary indexes
+ *   rows times, as zigzag varint deltas in epoch seconds from the previous load's time
+ *   rows amounts, as zigzag varint cents
+ * </pre>
+ * The customer dictionary and the previous time carry over from block to block, so a
+ * repeat customer costs a byte or two and a load minutes after the last one costs two.
+ * <p>
+ * A block is ended early once its payload may reach half of {@value #MAX_BLOCK_BYTES}
+ * bytes, and ids and customer IDs are limited to {@value #MAX_STRING_LENGTH} characters,
+ * so that a reader can refuse larger blocks before allocating for them.
+ */
+public class FundLoadBinaryWriter implements Closeable {
+
+    static final byte[] MAGIC = {'V', 'F', 'L', '1'};
+
+    static final int BLOCK_ROWS = 4096;
+
+    static final int MAX_BLOCK_BYTES = 16 * 1024 * 1024;
+
+    static final int MAX_STRING_LENGTH = 16 * 1024;
+
+    private final OutputStream outputStream;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final String[] ids = new String[BLOCK_ROWS];
+    private final int[] customers = new int[BLOCK_ROWS];
+    private final long[] times = new long[BLOCK_ROWS];
+    private final long[] cents = new long[BLOCK_ROWS];
+    private final Buffer newCustomers = new Buffer();
+    private final Buffer payload = new Buffer();
+    private final Buffer header = new Buffer();
+    private int newCustomerCount;
+    private int rows;
+    private long previousTime;
+
+    /**
+     * An upper bound of the payload of the block being collected.
+     */
+    private long blockBytes;
+
+    /**
+     * @param outputStream The stream to write to; closed with the writer.
+     * @throws IOException If the magic bytes cannot be written.
+     */
+    public FundLoadBinaryWriter(OutputStream outputStream) throws IOException {
+        this.outputStream = outputStream;
+        outputStream.write(MAGIC);
+    }
+
+    /**
+     * Writes one fund load.
+     *
+     * @param id         The fund load id.
+     * @param customerId The customer ID.
+     * @param amount     The load amount, in dollars, with at most two decimals.
+     * @param time       The load time, in UTC.
+     * @throws IOException If writing a full block fails.
+     * @throws IllegalArgumentException If the id or customer ID is longer than {@value #MAX_STRING_LENGTH} characters.
+     */
+    public void write(String id, String customerId, BigDecimal amount, LocalDateTime time) throws IOException {
+        if (id.length() > MAX_STRING_LENGTH || customerId.length() > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Fund load id or customer ID longer than " + MAX_STRING_LENGTH
+                    + " characters: " + id.substring(0, Math.min(id.length(), 64)));
+        }
+        Integer customer = dictionary.get(customerId);
+        // At most 3 UTF-8 bytes per char, plus the varints
+        blockBytes += 3L * id.length() + 40;
+        if (customer == null) {
+            blockBytes += 3L * customerId.length() + 5;
+            customer = dictionary.size();
+            dictionary.put(customerId, customer);
+            newCustomers.putString(customerId);
+            newCustomerCount++;
+        }
+        ids[rows] = id;
+        customers[rows] = customer;
+        times[rows] = time.toEpochSecond(ZoneOffset.UTC);
+        cents[rows] = Money.toCents(amount);
+        if (++rows == BLOCK_ROWS || blockBytes >= MAX_BLOCK_BYTES / 2) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the last block and the terminator, then closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                writeBlock();
+            }
+            outputStream.write(0);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        payload.clear();
+        payload.putVarint(newCustomerCount);
+        payload.putBytes(newCustomers);
+        for (int row = 0; row < rows; row++) {
+            payload.putString(ids[row]);
+        }
+        for (int row = 0; row < rows; row++) {
+            payload.putVarint(customers[row]);
+        }
+        for (int row = 0; row < rows; row++) {
+            payload.putVarint(zigzag(times[row] - previousTime));
+            previousTime = times[row];
+        }
+        for (int row = 0; row < rows; row++) {
+            payload.putVarint(zigzag(cents[row]));
+        }
+        header.clear();
+        header.putVarint(rows);
+        header.putVarint(payload.size);
+        outputStream.write(header.bytes, 0, header.size);
+        outputStream.write(payload.bytes, 0, payload.size);
+        Arrays.fill(ids, 0, rows, null);
+        newCustomers.clear();
+        newCustomerCount = 0;
+        rows = 0;
+        blockBytes = 0;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * A growable byte buffer with varint encoding.
+     */
+    private static final class Buffer {
+
+        private byte[] bytes = new byte[64 * 1024];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void putString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void putBytes(Buffer other) {
+            ensure(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.velocity.limits.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.velocity.limits.dto.FundLoadRequest;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Converts a fund load file between the {@link UploadFormat}s, chosen by file extension:
+ * {@code .gz} and {@code .zst} for compressed NDJSON, {@code .vfl} for the binary
+ * columnar format and anything else for plain NDJSON.
+ * <pre>
+ * java -cp limits.jar -Dloader.main=com.velocity.limits.util.FundLoadFileConverter \
+ *     org.springframework.boot.loader.PropertiesLauncher &lt;input&gt; &lt;output&gt;
+ * </pre>
+ */
+public final class FundLoadFileConverter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FundLoadFileConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FundLoadFileConverter <input> <output>");
+            System.exit(2);
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        long loads = convert(input, UploadFormat.ofFileName(input.toString()),
+                output, UploadFormat.ofFileName(output.toString()));
+        System.out.printf("Converted %d fund loads: %d bytes to %d bytes%n", loads, Files.size(input), Files.size(output));
+    }
+
+    /**
+     * Converts a fund load file.
+     *
+     * @param input        The file to read.
+     * @param inputFormat  The format of the input.
+     * @param output       The file to write, replaced if it exists.
+     * @param outputFormat The format of the output.
+     * @return The number of fund loads converted.
+     * @throws IOException If the input cannot be read or the output written.
+     */
+    public static long convert(Path input, UploadFormat inputFormat, Path output, UploadFormat outputFormat)
+            throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        long loads = 0;
+        try (FundLoadRequestSource source = inputFormat.open(Files.newInputStream(input), objectMapper);
+             Sink sink = sink(Files.newOutputStream(output), outputFormat, objectMapper.getFactory())) {
+            FundLoadRequest request;
+            while ((request = source.next()) != null) {
+                sink.write(request);
+                loads++;
+            }
+        }
+        return loads;
+    }
+
+    private interface Sink extends AutoCloseable {
+
+        void write(FundLoadRequest request) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static Sink sink(OutputStream outputStream, UploadFormat format, JsonFactory jsonFactory)
+            throws IOException {
+        OutputStream buffered = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        if (format == UploadFormat.BINARY) {
+            FundLoadBinaryWriter writer = new FundLoadBinaryWriter(buffered);
+            return new Sink() {
+                @Override
+                public void write(FundLoadRequest request) throws IOException {
+                    writer.write(request.getId(), request.getCustomer_id(), request.getLoad_amount(), request.getTime());
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+        OutputStream text = switch (format) {
+            case GZIP -> new GZIPOutputStream(buffered, BUFFER_SIZE);
+            case ZSTD -> new ZstdOutputStream(buffered);
+            default -> buffered;
+        };
+        JsonGenerator generator = jsonFactory.createGenerator(text);
+        generator.setRootValueSeparator(null);
+        return new Sink() {
+            @Override
+            public void write(FundLoadRequest request) throws IOException {
+                FundLoadLineWriter.write(generator, request.getId(), request.getCustomer_id(),
+                        request.getLoad_amount(), request.getTime());
+            }
+
+            @Override
+            public void close() throws IOException {
+                generator.close();
+            }
+        };
+    }
+}
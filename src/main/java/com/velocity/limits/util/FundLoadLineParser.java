@@ -0,0 +1,237 @@
+package com.velocity.limits.util;
+
+import com.velocity.limits.dto.FundLoadRequest;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Fast-path parser for a fund load line of the known form
+ * {@code {"id":"1","customer_id":"2","load_amount":"$123.45","time":"2000-01-01T00:00:00Z"}}.
+ * <p>
+ * The parser works directly on the line's bytes: keys are matched in place, the amount
+ * is accumulated into a scaled {@code long} and the timestamp is decoded digit by digit,
+ * so the only objects allocated per line are the two ID strings, the amount and the
+ * request itself. Keys may appear in any order and whitespace between tokens is allowed.
+ * <p>
+ * Anything outside that shape (escaped strings, unknown keys, non-string values, more
+ * than two decimal places, other timestamp formats) makes {@link #parse} return
+ * {@code null}, and the caller falls back to Jackson.
+ */
+public final class FundLoadLineParser {
+
+    private static final byte[] ID = bytes("id");
+    private static final byte[] CUSTOMER_ID = bytes("customer_id");
+    private static final byte[] LOAD_AMOUNT = bytes("load_amount");
+    private static final byte[] TIME = bytes("time");
+
+    /**
+     * Digits beyond this could overflow the scaled {@code long}.
+     */
+    private static final int MAX_AMOUNT_DIGITS = 18;
+
+    private FundLoadLineParser() {
+    }
+
+    /**
+     * Parses a fund load line.
+     *
+     * @param line   The buffer holding the line.
+     * @param offset The offset of the first byte of the line.
+     * @param length The length of the line, without the line terminator.
+     * @return The parsed request, or {@code null} if the line is not in the expected form.
+     */
+    public static FundLoadRequest parse(byte[] line, int offset, int length) {
+        int end = offset + length;
+        int pos = skipWhitespace(line, offset, end);
+        if (pos >= end || line[pos] != '{') {
+            return null;
+        }
+        FundLoadRequest request = new FundLoadRequest();
+        pos++;
+        while (true) {
+            pos = skipWhitespace(line, pos, end);
+            // key
+            int keyStart = pos + 1;
+            int keyEnd = stringEnd(line, pos, end);
+            if (keyEnd < 0) {
+                return null;
+            }
+            pos = skipWhitespace(line, keyEnd + 1, end);
+            if (pos >= end || line[pos] != ':') {
+                return null;
+            }
+            pos = skipWhitespace(line, pos + 1, end);
+            // value
+            int valueStart = pos + 1;
+            int valueEnd = stringEnd(line, pos, end);
+            if (valueEnd < 0) {
+                return null;
+            }
+            if (matches(line, keyStart, keyEnd, ID)) {
+                request.setId(string(line, valueStart, valueEnd));
+            } else if (matches(line, keyStart, keyEnd, CUSTOMER_ID)) {
+                request.setCustomer_id(string(line, valueStart, valueEnd));
+            } else if (matches(line, keyStart, keyEnd, LOAD_AMOUNT)) {
+                BigDecimal amount = parseAmount(line, valueStart, valueEnd);
+                if (amount == null) {
+                    return null;
+                }
+                request.setLoad_amount(amount);
+            } else if (matches(line, keyStart, keyEnd, TIME)) {
+                LocalDateTime time = parseTime(line, valueStart, valueEnd);
+                if (time == null) {
+                    return null;
+                }
+                request.setTime(time);
+            } else {
+                return null;
+            }
+            pos = skipWhitespace(line, valueEnd + 1, end);
+            if (pos >= end) {
+                return null;
+            }
+            if (line[pos] == '}') {
+                break;
+            }
+            if (line[pos] != ',') {
+                return null;
+            }
+            pos++;
+        }
+        if (request.getId() == null || request.getCustomer_id() == null
+                || request.getLoad_amount() == null || request.getTime() == null
+                || skipWhitespace(line, pos + 1, end) != end) {
+            return null;
+        }
+        return request;
+    }
+
+    /**
+     * Parses an amount of the form {@code $123}, {@code $123.4} or {@code $123.45}, the
+     * dollar sign being optional, into a {@link BigDecimal} with the same scale as written.
+     *
+     * @return The amount, or {@code null} if it is not in that form.
+     */
+    static BigDecimal parseAmount(byte[] buffer, int start, int end) {
+        int pos = start;
+        if (pos < end && buffer[pos] == '$') {
+            pos++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; pos < end; pos++) {
+            byte b = buffer[pos];
+            if (b == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if (b < '0' || b > '9') {
+                return null;
+            }
+            unscaled = unscaled * 10 + (b - '0');
+            digits++;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0 || digits > MAX_AMOUNT_DIGITS || scale == 0 || scale > 2) {
+            return null;
+        }
+        return BigDecimal.valueOf(unscaled, Math.max(scale, 0));
+    }
+
+    /**
+     * Parses a UTC timestamp of the exact form {@code yyyy-MM-ddTHH:mm:ssZ}.
+     *
+     * @return The timestamp, or {@code null} if it is not in that form.
+     */
+    static LocalDateTime parseTime(byte[] buffer, int start, int end) {
+        if (end - start != 20
+                || buffer[start + 4] != '-' || buffer[start + 7] != '-' || buffer[start + 10] != 'T'
+                || buffer[start + 13] != ':' || buffer[start + 16] != ':' || buffer[start + 19] != 'Z') {
+            return null;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        int hour = digits(buffer, start + 11, 2);
+        int minute = digits(buffer, start + 14, 2);
+        int second = digits(buffer, start + 17, 2);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static int digits(byte[] buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the index of the closing quote of the string starting at {@code pos}, or
+     * {@code -1} if there is no string there or it contains escapes.
+     */
+    private static int stringEnd(byte[] buffer, int pos, int end) {
+        if (pos >= end || buffer[pos] != '"') {
+            return -1;
+        }
+        for (int i = pos + 1; i < end; i++) {
+            if (buffer[i] == '"') {
+                return i;
+            }
+            if (buffer[i] == '\\') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] buffer, int start, int end, byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(byte[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < 0) {
+                return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+            }
+        }
+        // ASCII only: Latin-1 decoding is a straight copy into a compact string
+        return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int skipWhitespace(byte[] buffer, int pos, int end) {
+        while (pos < end && (buffer[pos] == ' ' || buffer[pos] == '\t' || buffer[pos] == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,40 @@
+package com.velocity.limits.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes fund loads as lines of the NDJSON upload format read by {@link FundLoadRequestReader}.
+ */
+public final class FundLoadLineWriter {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private FundLoadLineWriter() {
+    }
+
+    /**
+     * Writes one fund load followed by a newline. The generator must have no root value separator.
+     *
+     * @param generator  The generator to write to.
+     * @param id         The fund load id.
+     * @param customerId The customer ID.
+     * @param amount     The load amount, in dollars.
+     * @param time       The load time, in UTC.
+     * @throws IOException If writing fails.
+     */
+    public static void write(JsonGenerator generator, String id, String customerId, BigDecimal amount,
+                             LocalDateTime time) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", id);
+        generator.writeStringField("customer_id", customerId);
+        generator.writeStringField("load_amount", "$" + amount.toPlainString());
+        generator.writeStringField("time", time.format(TIME_FORMAT));
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
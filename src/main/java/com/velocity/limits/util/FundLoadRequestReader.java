@@ -0,0 +1,110 @@
+package com.velocity.limits.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.dto.FundLoadRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads newline-delimited fund load requests from a UTF-8 input stream.
+ * <p>
+ * Lines are split directly in a reusable byte buffer and handed to
+ * {@link FundLoadLineParser}; only lines it cannot handle are decoded by Jackson,
+ * so the common case never builds an intermediate {@code String} for the line.
+ * Blank lines are skipped. This is the {@link UploadFormat#NDJSON} format, also read
+ * through a decompressing stream for the compressed formats.
+ */
+public class FundLoadRequestReader implements FundLoadRequestSource {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream inputStream;
+    private final ObjectMapper objectMapper;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    /**
+     * @param inputStream  The stream to read lines from.
+     * @param objectMapper The mapper used for lines the fast path cannot parse.
+     */
+    public FundLoadRequestReader(InputStream inputStream, ObjectMapper objectMapper) {
+        this.inputStream = inputStream;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads the next fund load request.
+     *
+     * @return The next request, or {@code null} at the end of the stream.
+     * @throws IOException If reading fails or a line is not a valid fund load request.
+     */
+    @Override
+    public FundLoadRequest next() throws IOException {
+        while (true) {
+            int lineEnd = indexOfNewline();
+            while (lineEnd < 0 && !endOfStream) {
+                fill();
+                lineEnd = indexOfNewline();
+            }
+            if (lineEnd < 0) {
+                if (position == limit) {
+                    return null;
+                }
+                lineEnd = limit; // last line without a terminator
+            }
+            int start = position;
+            int end = lineEnd > start && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            position = Math.min(lineEnd + 1, limit);
+            if (end > start) {
+                return parse(start, end - start);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private FundLoadRequest parse(int offset, int length) throws IOException {
+        FundLoadRequest request = FundLoadLineParser.parse(buffer, offset, length);
+        if (request == null) {
+            request = objectMapper.readValue(buffer, offset, length, FundLoadRequest.class);
+        }
+        return request;
+    }
+
+    private int indexOfNewline() {
+        for (int i = position; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads more bytes after the unconsumed ones, compacting or growing the buffer as needed.
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+}
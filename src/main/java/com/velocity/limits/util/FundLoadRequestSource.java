@@ -0,0 +1,20 @@
+package com.velocity.limits.util;
+
+import com.velocity.limits.dto.FundLoadRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of fund load requests read from an upload, in one of the {@link UploadFormat}s.
+ */
+public interface FundLoadRequestSource extends Closeable {
+
+    /**
+     * Reads the next fund load request.
+     *
+     * @return The next request, or {@code null} at the end of the upload.
+     * @throws IOException If reading fails or the upload is malformed.
+     */
+    FundLoadRequest next() throws IOException;
+}
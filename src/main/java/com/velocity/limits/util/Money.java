@@ -0,0 +1,56 @@
+package com.velocity.limits.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between {@link BigDecimal} amounts and {@code long} cents.
+ * <p>
+ * Limit checks work on cents so that the per-load path does only primitive
+ * arithmetic; {@link BigDecimal} is used at the API and persistence boundaries.
+ * Conversions are exact: an amount with fractions of a cent, or one too large
+ * for a {@code long} number of cents, is rejected rather than rounded. Load amounts,
+ * which may have more decimals, are {@link #roundToCents rounded} as they enter.
+ */
+public final class Money {
+
+    private static final int CENTS_SCALE = 2;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount to cents.
+     *
+     * @param amount The amount, with at most two significant decimal places.
+     * @return The amount in cents.
+     * @throws ArithmeticException If the amount has fractions of a cent or overflows a {@code long}.
+     */
+    public static long toCents(BigDecimal amount) {
+        if (amount.scale() == CENTS_SCALE && amount.precision() < 19) {
+            // Already in cents and small enough to fit a long
+            return amount.unscaledValue().longValue();
+        }
+        return amount.setScale(CENTS_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Rounds an amount to whole cents, half up, as the fund load table stores it.
+     *
+     * @param amount The amount.
+     * @return The amount with two decimal places.
+     */
+    public static BigDecimal roundToCents(BigDecimal amount) {
+        return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Converts cents to an amount with two decimal places.
+     *
+     * @param cents The amount in cents.
+     * @return The amount.
+     */
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, CENTS_SCALE);
+    }
+}
@@ -0,0 +1,359 @@
+package com.velocity.limits.util;
+
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads one file part of an upload straight from the request body, as it arrives.
+ * <p>
+ * The container's multipart support spools every part to memory or disk before the
+ * controller runs, so a file is held twice and a large one is only decided once it has
+ * been wholly received. Here the body of a {@code multipart/form-data} request is
+ * scanned for the boundary through a buffer of {@value #BUFFER_SIZE} bytes: parts
+ * before the wanted one are skipped, and the wanted one is returned as a stream ending
+ * at its closing boundary, so only the buffer is held whatever the size of the file.
+ * A request of any other Content-Type is taken as the file itself.
+ * <p>
+ * At most {@code maxBytes} of the body are read; the read past them throws a
+ * {@link MaxUploadSizeExceededException}.
+ */
+public final class MultipartUpload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+
+    private final String contentType;
+    private final InputStream inputStream;
+
+    private MultipartUpload(String contentType, InputStream inputStream) {
+        this.contentType = contentType;
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Opens the file part of an upload, reading the body up to the start of its content.
+     *
+     * @param body        The request body.
+     * @param contentType The Content-Type of the request, or {@code null}.
+     * @param partName    The name of the file part of a multipart request.
+     * @param maxBytes    The most bytes of the body read.
+     * @return The upload, whose stream must be read to its end before the response is complete.
+     * @throws IOException If the body cannot be read, or a multipart body has no such part.
+     */
+    public static MultipartUpload open(InputStream body, String contentType, String partName, long maxBytes)
+            throws IOException {
+        InputStream limited = new LimitedInputStream(body, maxBytes);
+        String boundary = boundary(contentType);
+        if (boundary == null) {
+            return new MultipartUpload(contentType, limited);
+        }
+        Parts parts = new Parts(limited, boundary);
+        while (parts.next()) {
+            if (partName.equals(parts.name)) {
+                return new MultipartUpload(parts.contentType, parts);
+            }
+            parts.skip();
+        }
+        throw new IOException("The upload has no part named " + partName);
+    }
+
+    /**
+     * @return The Content-Type of the file, or {@code null}.
+     */
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @return The content of the file.
+     */
+    public InputStream inputStream() {
+        return inputStream;
+    }
+
+    /**
+     * @return The boundary of a {@code multipart/form-data} Content-Type, or {@code null}
+     * for any other.
+     */
+    private static String boundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String[] parameters = contentType.split(";");
+        if (!parameters[0].trim().equalsIgnoreCase("multipart/form-data")) {
+            return null;
+        }
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                return unquote(parameter.substring("boundary=".length()));
+            }
+        }
+        return null;
+    }
+
+    private static String unquote(String value) {
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1) : value;
+    }
+
+    /**
+     * The parts of a multipart body, read one at a time; reading returns the content of
+     * the current part.
+     */
+    private static final class Parts extends InputStream {
+
+        private final InputStream body;
+        /**
+         * CRLF, two dashes and the boundary, which precede every part and the end of the body.
+         */
+        private final byte[] delimiter;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private boolean bodyEnded;
+        private boolean partEnded;
+        private boolean lastPart;
+
+        private String name;
+        private String contentType;
+
+        Parts(InputStream body, String boundary) {
+            this.body = body;
+            this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+            // The first delimiter opens the body, without the CRLF ending a previous part
+            buffer[0] = '\r';
+            buffer[1] = '\n';
+            limit = 2;
+        }
+
+        /**
+         * Moves past the end of the current part, or the preamble, to the headers of the
+         * next part.
+         *
+         * @return Whether there is a next part.
+         */
+        boolean next() throws IOException {
+            skip();
+            if (lastPart) {
+                return false;
+            }
+            // The delimiter is followed by "--" after the last part, or by CRLF and the headers
+            String line = readLine();
+            if (line.startsWith("--")) {
+                lastPart = true;
+                return false;
+            }
+            name = null;
+            contentType = null;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = line.substring(colon + 1).trim();
+                if (header.equals("content-type")) {
+                    contentType = value;
+                } else if (header.equals("content-disposition")) {
+                    name = dispositionName(value);
+                }
+            }
+            partEnded = false;
+            return true;
+        }
+
+        /**
+         * Discards the rest of the current part.
+         */
+        void skip() throws IOException {
+            while (!partEnded) {
+                int available = scan();
+                position += available;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (!partEnded) {
+                int available = scan();
+                if (available > 0) {
+                    int read = Math.min(length, available);
+                    System.arraycopy(buffer, position, bytes, offset, read);
+                    position += read;
+                    return read;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Drains the body, so the container can reuse the connection
+            skip();
+            while (next()) {
+                skip();
+            }
+            body.close();
+        }
+
+        /**
+         * Finds how many bytes from the position are content of the current part, reading
+         * more of the body if needed. Sets {@link #partEnded} and moves past the delimiter
+         * once it is at the position.
+         *
+         * @return The number of content bytes buffered at the position, which may be zero.
+         */
+        private int scan() throws IOException {
+            if (limit - position < delimiter.length && !bodyEnded) {
+                fill();
+            }
+            int match = indexOf(delimiter, position, limit);
+            if (match == position) {
+                position += delimiter.length;
+                partEnded = true;
+                return 0;
+            }
+            if (match > position) {
+                return match - position;
+            }
+            if (bodyEnded) {
+                throw new EOFException("The upload ended before its closing boundary");
+            }
+            // Holds back a tail that may be the start of the delimiter
+            int available = limit - position - (delimiter.length - 1);
+            if (available <= 0) {
+                fill();
+            }
+            return Math.max(0, available);
+        }
+
+        private void fill() throws IOException {
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            int read = body.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                bodyEnded = true;
+            } else {
+                limit += read;
+            }
+        }
+
+        private int indexOf(byte[] pattern, int from, int to) {
+            outer:
+            for (int i = from; i <= to - pattern.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (buffer[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Reads a line, ending in CRLF, of the multipart framing, or the rest of the body.
+         */
+        private String readLine() throws IOException {
+            int scanned = position;
+            while (true) {
+                for (int i = scanned; i < limit - 1; i++) {
+                    if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                        String line = new String(buffer, position, i - position, StandardCharsets.UTF_8);
+                        position = i + 2;
+                        return line;
+                    }
+                }
+                if (limit - position >= MAX_HEADER_BYTES) {
+                    throw new IOException("Multipart header line longer than " + MAX_HEADER_BYTES + " bytes");
+                }
+                if (bodyEnded) {
+                    // The closing delimiter needs no CRLF after it
+                    String line = new String(buffer, position, limit - position, StandardCharsets.UTF_8);
+                    position = limit;
+                    return line;
+                }
+                // Compacting the buffer moves what was scanned along with the position
+                scanned = Math.max(position, limit - 1) - position;
+                fill();
+                scanned += position;
+            }
+        }
+
+        /**
+         * @return The {@code name} parameter of a Content-Disposition header, or {@code null}.
+         */
+        private static String dispositionName(String disposition) {
+            for (String parameter : disposition.split(";")) {
+                String trimmed = parameter.trim();
+                if (trimmed.toLowerCase(Locale.ROOT).startsWith("name=")) {
+                    return unquote(trimmed.substring("name=".length()));
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the request body and refuses to read past the limit.
+     */
+    private static final class LimitedInputStream extends InputStream {
+
+        private final InputStream body;
+        private final long maxBytes;
+        private long read;
+
+        LimitedInputStream(InputStream body, long maxBytes) {
+            this.body = body;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = body.read();
+            if (value >= 0) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = body.read(bytes, offset, length);
+            if (count > 0) {
+                count(count);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+
+        private void count(int bytes) {
+            read += bytes;
+            if (read > maxBytes) {
+                throw new MaxUploadSizeExceededException(maxBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.velocity.limits.util;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by hashing keys onto them.
+ * <p>
+ * Every key maps to the same lock for the lifetime of the instance, so work for
+ * one key is serialized while keys that land on different stripes proceed in
+ * parallel. Memory is bounded by the stripe count rather than the number of keys.
+ */
+public class StripedLock {
+
+    private final Lock[] stripes;
+    private final int mask;
+
+    /**
+     * Creates a striped lock with at least the given number of stripes.
+     *
+     * @param minimumStripes The minimum number of stripes, rounded up to a power of two.
+     */
+    public StripedLock(int minimumStripes) {
+        if (minimumStripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + minimumStripes);
+        }
+        int size = minimumStripes == 1 ? 1 : Integer.highestOneBit(minimumStripes - 1) << 1;
+        this.stripes = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the lock guarding the given key.
+     *
+     * @param key The key to lock.
+     * @return The stripe for the key.
+     */
+    public Lock get(Object key) {
+        return stripes[spread(key.hashCode()) & mask];
+    }
+
+    /**
+     * Acquires and releases every stripe in turn, so that each critical section
+     * entered before the call has finished when it returns. Sections entered later
+     * are not waited for, and stripes are never all held at once.
+     */
+    public void barrier() {
+        for (Lock stripe : stripes) {
+            stripe.lock();
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * @return The number of stripes.
+     */
+    public int size() {
+        return stripes.length;
+    }
+
+    private static int spread(int hash) {
+        // Mix the high bits into the low ones, as ConcurrentHashMap does.
+        return hash ^ (hash >>> 16);
+    }
+}
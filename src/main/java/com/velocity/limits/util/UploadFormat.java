@@ -0,0 +1,95 @@
+package com.velocity.limits.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The formats {@code loadFromFile} accepts, chosen by the Content-Type of the uploaded
+ * file part. Any other or missing Content-Type is read as plain NDJSON.
+ */
+public enum UploadFormat {
+
+    /** Newline-delimited JSON, one fund load per line. */
+    NDJSON("application/x-ndjson", ".ndjson"),
+    /** Gzip-compressed NDJSON. */
+    GZIP("application/gzip", ".gz"),
+    /** Zstandard-compressed NDJSON. */
+    ZSTD("application/zstd", ".zst"),
+    /** The binary columnar format of {@link FundLoadBinaryWriter}. */
+    BINARY("application/vnd.velocity.fund-loads", ".vfl");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String contentType;
+    private final String extension;
+
+    UploadFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    /**
+     * @return The Content-Type selecting the format.
+     */
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Selects the format of an uploaded file part.
+     *
+     * @param contentType The Content-Type of the part, possibly with parameters, or {@code null}.
+     * @return The format; {@link #NDJSON} for unknown types.
+     */
+    public static UploadFormat ofContentType(String contentType) {
+        if (contentType == null) {
+            return NDJSON;
+        }
+        String mediaType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return switch (mediaType) {
+            case "application/gzip", "application/x-gzip" -> GZIP;
+            case "application/zstd" -> ZSTD;
+            case "application/vnd.velocity.fund-loads" -> BINARY;
+            default -> NDJSON;
+        };
+    }
+
+    /**
+     * Selects a format by file name extension.
+     *
+     * @param fileName The file name.
+     * @return The format; {@link #NDJSON} for unknown extensions.
+     */
+    public static UploadFormat ofFileName(String fileName) {
+        String lowerCase = fileName.toLowerCase(Locale.ROOT);
+        for (UploadFormat format : values()) {
+            if (lowerCase.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return NDJSON;
+    }
+
+    /**
+     * Opens an upload in this format.
+     *
+     * @param inputStream  The uploaded bytes; closed with the source.
+     * @param objectMapper The mapper for NDJSON lines the fast path cannot parse.
+     * @return The fund load requests of the upload.
+     * @throws IOException If the upload does not start like this format.
+     */
+    public FundLoadRequestSource open(InputStream inputStream, ObjectMapper objectMapper) throws IOException {
+        return switch (this) {
+            case NDJSON -> new FundLoadRequestReader(inputStream, objectMapper);
+            case GZIP -> new FundLoadRequestReader(new GZIPInputStream(inputStream, BUFFER_SIZE), objectMapper);
+            case ZSTD -> new FundLoadRequestReader(new ZstdInputStream(inputStream), objectMapper);
+            case BINARY -> new FundLoadBinaryReader(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        };
+    }
+}
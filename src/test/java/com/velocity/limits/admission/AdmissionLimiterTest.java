@@ -0,0 +1,125 @@
+package com.velocity.limits.admission;
+
+import com.velocity.limits.admission.AdmissionLimiter.Lane;
+import com.velocity.limits.admission.AdmissionLimiter.Permit;
+import com.velocity.limits.exception.OverloadedException;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.metrics.FundLoadMetrics.Stage;
+import com.velocity.limits.persistence.ConnectionPermits;
+import com.velocity.limits.rules.TestRulePlans;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+class AdmissionLimiterTest {
+
+    @Mock
+    private ConnectionPermits connectionPermits;
+
+    @Spy
+    private FundLoadMetrics fundLoadMetrics = new FundLoadMetrics(new SimpleMeterRegistry(), TestRulePlans.defaultPlan());
+
+    @InjectMocks
+    private AdmissionLimiter admissionLimiter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(admissionLimiter, "enabled", true);
+        ReflectionTestUtils.setField(admissionLimiter, "minLimit", 2);
+        ReflectionTestUtils.setField(admissionLimiter, "maxLimit", 4);
+        ReflectionTestUtils.setField(admissionLimiter, "singleReserve", 2);
+        ReflectionTestUtils.setField(admissionLimiter, "targetLatencyMillis", 100L);
+        // Adjusted by the tests only
+        ReflectionTestUtils.setField(admissionLimiter, "adjustIntervalMillis", TimeUnit.HOURS.toMillis(1));
+        ReflectionTestUtils.setField(admissionLimiter, "singleQueue", 1);
+        ReflectionTestUtils.setField(admissionLimiter, "bulkQueue", 1);
+        ReflectionTestUtils.setField(admissionLimiter, "queueTimeoutMillis", 50L);
+        admissionLimiter.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        admissionLimiter.stop();
+    }
+
+    @Test
+    void testBulkRequestsLeaveTheSingleReserve() throws Exception {
+        Permit firstBulk = admissionLimiter.acquire(Lane.BULK);
+        admissionLimiter.acquire(Lane.BULK);
+
+        // The third bulk request queues and is turned away once the queue timeout expires
+        OverloadedException timedOut = assertThrows(OverloadedException.class, () -> admissionLimiter.acquire(Lane.BULK));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, timedOut.getStatus());
+        assertEquals(1, timedOut.getRetryAfterSeconds());
+
+        // Single loads still get the reserved permits
+        admissionLimiter.acquire(Lane.SINGLE);
+        admissionLimiter.acquire(Lane.SINGLE);
+        assertEquals(2, admissionLimiter.inFlight(Lane.SINGLE));
+
+        // A queued request is admitted when a permit is released
+        ReflectionTestUtils.setField(admissionLimiter, "queueTimeoutMillis", 10_000L);
+        CompletableFuture<Permit> queuedSingle = CompletableFuture.supplyAsync(() -> admissionLimiter.acquire(Lane.SINGLE));
+        while (admissionLimiter.queued(Lane.SINGLE) == 0) {
+            Thread.onSpinWait();
+        }
+        OverloadedException queueFull = assertThrows(OverloadedException.class, () -> admissionLimiter.acquire(Lane.SINGLE));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, queueFull.getStatus());
+
+        firstBulk.close();
+        firstBulk.close();
+        queuedSingle.get(5, TimeUnit.SECONDS);
+        assertEquals(3, admissionLimiter.inFlight(Lane.SINGLE));
+        assertEquals(1, admissionLimiter.inFlight(Lane.BULK));
+    }
+
+    @Test
+    void testLimitFollowsRepositoryLatency() {
+        when(connectionPermits.sampleLatencyNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(500));
+        admissionLimiter.adjust();
+        assertEquals(3, admissionLimiter.limit());
+        admissionLimiter.adjust();
+        admissionLimiter.adjust();
+        assertEquals(2, admissionLimiter.limit());
+
+        // Healthy latency raises the limit only while requests are held back by it
+        when(connectionPermits.sampleLatencyNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(5));
+        admissionLimiter.adjust();
+        assertEquals(2, admissionLimiter.limit());
+
+        admissionLimiter.acquire(Lane.SINGLE);
+        admissionLimiter.acquire(Lane.SINGLE);
+        assertThrows(OverloadedException.class, () -> admissionLimiter.acquire(Lane.SINGLE));
+        admissionLimiter.adjust();
+        assertEquals(3, admissionLimiter.limit());
+    }
+
+    @Test
+    void testLimitFollowsFlushLatencyWithoutRepository() {
+        // As with the write-ahead log, which makes no repository calls
+        when(connectionPermits.sampleLatencyNanos()).thenReturn(-1L);
+        fundLoadMetrics.record(Stage.FLUSH, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(500));
+        admissionLimiter.adjust();
+        assertEquals(3, admissionLimiter.limit());
+
+        // Each sample covers only the flushes since the previous one
+        fundLoadMetrics.record(Stage.FLUSH, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        admissionLimiter.adjust();
+        assertEquals(3, admissionLimiter.limit());
+    }
+}
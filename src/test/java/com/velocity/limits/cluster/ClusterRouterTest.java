@@ -0,0 +1,152 @@
+package com.velocity.limits.cluster;
+
+import com.velocity.limits.LimitsApplication;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.repository.FundLoadRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a cluster of three nodes on localhost ports, each with its own database.
+ */
+class ClusterRouterTest {
+
+    private static final int NODES = 3;
+    private static final int CUSTOMERS = 30;
+
+    private static final List<String> urls = new ArrayList<>();
+    private static final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @BeforeAll
+    static void startNodes() throws IOException {
+        for (int node = 0; node < NODES; node++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls.add("http://localhost:" + socket.getLocalPort());
+            }
+        }
+        for (int node = 0; node < NODES; node++) {
+            contexts.add(new SpringApplicationBuilder(LimitsApplication.class).run(
+                    "--server.port=" + urls.get(node).substring(urls.get(node).lastIndexOf(':') + 1),
+                    "--spring.datasource.url=jdbc:h2:mem:cluster-node-" + node,
+                    "--fund.load.cluster.nodes=" + String.join(",", urls),
+                    "--fund.load.cluster.self=" + urls.get(node)));
+        }
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void testDecidesEachCustomerOnItsOwner() {
+        // Four loads per customer on one day: the fourth breaks the daily count limit
+        List<String> lines = new ArrayList<>();
+        for (int load = 1; load <= 4; load++) {
+            for (int customer = 0; customer < CUSTOMERS; customer++) {
+                lines.add(line("c" + customer + "-" + load, "c" + customer, "2000-01-03T0" + load + ":00:00Z"));
+            }
+        }
+        List<FundStatus> statuses = upload(0, lines);
+        assertEquals(lines.size(), statuses.size());
+        for (int i = 0; i < statuses.size(); i++) {
+            assertEquals("c" + (i % CUSTOMERS) + "-" + (i / CUSTOMERS + 1), statuses.get(i).getId());
+            assertEquals(i < 3 * CUSTOMERS, statuses.get(i).isAccepted());
+        }
+
+        // The limits hold when later loads arrive through another node
+        List<FundStatus> later = upload(1, List.of(line("c0-5", "c0", "2000-01-03T05:00:00Z"),
+                line("new-1", "new", "2000-01-03T05:00:00Z")));
+        assertFalse(later.get(0).isAccepted());
+        assertTrue(later.get(1).isAccepted());
+
+        // Every node stored only the loads of its own customers
+        ConsistentHashRing ring = new ConsistentHashRing(urls, 160);
+        long stored = 0;
+        for (int node = 0; node < NODES; node++) {
+            assertTrue(contexts.get(node).getBean(ClusterRouter.class).isClustered());
+            for (FundLoad fundLoad : contexts.get(node).getBean(FundLoadRepository.class).findAll()) {
+                assertEquals(urls.get(node), ring.owner(fundLoad.getCustomerId()));
+                stored++;
+            }
+        }
+        assertEquals(3 * CUSTOMERS + 1, stored);
+    }
+
+    @Test
+    void testRejectsMisroutedRequests() {
+        ConsistentHashRing ring = new ConsistentHashRing(urls, 160);
+        String customerId = "c0";
+        for (int customer = 1; ring.owner(customerId).equals(urls.get(0)); customer++) {
+            customerId = "c" + customer;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String shard = "[" + line("misrouted", customerId, "2000-01-03T01:00:00Z") + "]";
+        HttpClientErrorException misdirected = assertThrows(HttpClientErrorException.class, () ->
+                restTemplate.postForEntity(urls.get(0) + ClusterRouter.SHARD_PATH, new HttpEntity<>(shard, headers),
+                        String.class));
+        assertEquals(421, misdirected.getStatusCode().value());
+
+        HttpClientErrorException replay = assertThrows(HttpClientErrorException.class, () ->
+                restTemplate.postForEntity(urls.get(0) + "/api/v1/fund-loads/loadFromFile?mode=replay",
+                        new HttpEntity<>(multipart(List.of()), multipartHeaders()), String.class));
+        assertEquals(HttpStatus.CONFLICT, replay.getStatusCode());
+    }
+
+    private List<FundStatus> upload(int node, List<String> lines) {
+        return restTemplate.exchange(urls.get(node) + "/api/v1/fund-loads/loadFromFile", HttpMethod.POST,
+                new HttpEntity<>(multipart(lines), multipartHeaders()), new ParameterizedTypeReference<List<FundStatus>>() {
+                }).getBody();
+    }
+
+    private static LinkedMultiValueMap<String, Object> multipart(List<String> lines) {
+        ByteArrayResource file = new ByteArrayResource(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public String getFilename() {
+                return "loads.txt";
+            }
+        };
+        LinkedMultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", file);
+        return body;
+    }
+
+    private static HttpHeaders multipartHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        return headers;
+    }
+
+    private static String line(String id, String customerId, String time) {
+        return "{\"id\":\"" + id + "\",\"customer_id\":\"" + customerId + "\",\"load_amount\":\"$100.00\",\"time\":\""
+                + time + "\"}";
+    }
+}
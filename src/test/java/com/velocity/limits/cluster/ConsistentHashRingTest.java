@@ -0,0 +1,48 @@
+package com.velocity.limits.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+    private static final List<String> NODES = List.of("http://a:8080", "http://b:8080", "http://c:8080");
+
+    @Test
+    void testSpreadsKeysEvenlyInAnyNodeOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 160);
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of(NODES.get(2), NODES.get(0), NODES.get(1)), 160);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int customer = 0; customer < 30_000; customer++) {
+            String owner = ring.owner(Integer.toString(customer));
+            assertEquals(owner, reordered.owner(Integer.toString(customer)));
+            owned.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(3, owned.size());
+        owned.values().forEach(count -> assertTrue(count > 8_000 && count < 12_000, "Uneven share: " + owned));
+    }
+
+    @Test
+    void testAddingNodeOnlyMovesKeysToIt() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 160);
+        ConsistentHashRing grown = new ConsistentHashRing(List.of(NODES.get(0), NODES.get(1), NODES.get(2),
+                "http://d:8080"), 160);
+
+        int moved = 0;
+        for (int customer = 0; customer < 30_000; customer++) {
+            String before = ring.owner(Integer.toString(customer));
+            String after = grown.owner(Integer.toString(customer));
+            if (!before.equals(after)) {
+                assertEquals("http://d:8080", after);
+                moved++;
+            }
+        }
+        assertTrue(moved > 5_000 && moved < 10_000, "Moved " + moved);
+    }
+}
@@ -0,0 +1,242 @@
+package com.velocity.limits.controller;
+
+import com.velocity.limits.util.UploadFormat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+class FundsControllerTest {
+
+    private static final String BOUNDARY = "fund-loads-boundary";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void testLoadFromFile() throws Exception {
+        MockMultipartFile file = file(
+                "{\"id\":\"c1-1\",\"customer_id\":\"c1\",\"load_amount\":\"$3000.00\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":\"c1-2\",\"customer_id\":\"c1\",\"load_amount\":\"$2500.00\",\"time\":\"2000-01-01T01:00:00Z\"}");
+
+        mockMvc.perform(upload(file))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":\"c1-1\",\"customer_id\":\"c1\",\"accepted\":true},"
+                        + "{\"id\":\"c1-2\",\"customer_id\":\"c1\",\"accepted\":false}]", true));
+    }
+
+    @Test
+    void testStreamFromFile() throws Exception {
+        MockMultipartFile file = file(
+                "{\"id\":\"c2-1\",\"customer_id\":\"c2\",\"load_amount\":\"$3000.00\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":\"c3-1\",\"customer_id\":\"c3\",\"load_amount\":\"$6000.00\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":\"c2-2\",\"customer_id\":\"c2\",\"load_amount\":\"$1000.00\",\"time\":\"2000-01-01T01:00:00Z\"}");
+
+        MvcResult mvcResult = mockMvc.perform(upload(file)
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("{\"id\":\"c2-1\",\"customer_id\":\"c2\",\"accepted\":true}\n"
+                + "{\"id\":\"c3-1\",\"customer_id\":\"c3\",\"accepted\":false}\n"
+                + "{\"id\":\"c2-2\",\"customer_id\":\"c2\",\"accepted\":true}\n", body);
+    }
+
+    @Test
+    void testLoadFromGzipFile() throws Exception {
+        byte[] lines = String.join("\n",
+                "{\"id\":\"c4-1\",\"customer_id\":\"c4\",\"load_amount\":\"$3000.00\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":\"c4-2\",\"customer_id\":\"c4\",\"load_amount\":\"$2500.00\",\"time\":\"2000-01-01T01:00:00Z\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream outputStream = new GZIPOutputStream(gzipped)) {
+            outputStream.write(lines);
+        }
+        MockMultipartFile file = new MockMultipartFile("file", "loads.gz", UploadFormat.GZIP.contentType(),
+                gzipped.toByteArray());
+
+        mockMvc.perform(upload(file))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":\"c4-1\",\"customer_id\":\"c4\",\"accepted\":true},"
+                        + "{\"id\":\"c4-2\",\"customer_id\":\"c4\",\"accepted\":false}]", true));
+    }
+
+    @Test
+    void testReplayFromFileDecidesInTimeOrder() throws Exception {
+        // The later $4000 load comes first in the file but is decided after the $3000 one
+        MockMultipartFile file = file(
+                "{\"id\":\"c5-2\",\"customer_id\":\"c5\",\"load_amount\":\"$4000.00\",\"time\":\"2000-01-01T05:00:00Z\"}",
+                "{\"id\":\"c5-1\",\"customer_id\":\"c5\",\"load_amount\":\"$3000.00\",\"time\":\"2000-01-01T01:00:00Z\"}");
+
+        MvcResult mvcResult = mockMvc.perform(upload(file)
+                        .param("mode", "replay"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("{\"id\":\"c5-2\",\"customer_id\":\"c5\",\"accepted\":false}\n"
+                + "{\"id\":\"c5-1\",\"customer_id\":\"c5\",\"accepted\":true}\n", body);
+    }
+
+    @Test
+    void testStreamFromFileLargerThanTheContainerDefaults() throws Exception {
+        // 2 MiB and more of loads, sent as they are generated, past the container's default 1 MB part limit
+        int loads = 25_000;
+        byte[] head = multipartHead(MediaType.TEXT_PLAIN_VALUE);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        URI uri = URI.create("http://localhost:" + port + "/api/v1/fund-loads/loadFromFile");
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", MediaType.MULTIPART_FORM_DATA_VALUE + "; boundary=" + BOUNDARY)
+                .header("Accept", MediaType.APPLICATION_NDJSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new SequenceInputStream(
+                        new ByteArrayInputStream(head),
+                        new SequenceInputStream(new GeneratedLoads(loads), new ByteArrayInputStream(tail)))))
+                .build();
+
+        HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+                .send(request, HttpResponse.BodyHandlers.ofLines());
+
+        assertEquals(200, response.statusCode());
+        assertEquals(loads, response.body().filter(line -> line.endsWith("\"accepted\":true}")).count());
+    }
+
+    @Test
+    void testLoadFromFileRefusesIdsTooLongToStore() throws Exception {
+        String longId = "c9-".repeat(100);
+        MockMultipartFile file = file(
+                "{\"id\":\"c9-1\",\"customer_id\":\"c9\",\"load_amount\":\"$100.00\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":\"" + longId + "\",\"customer_id\":\"c9\",\"load_amount\":\"$100.00\",\"time\":\"2000-01-01T00:00:00Z\"}");
+
+        mockMvc.perform(upload(file))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Fund load id and customer_id are limited to 255 bytes of UTF-8: " + longId));
+
+        // Nothing of the refused batch was decided
+        mockMvc.perform(upload(file(
+                        "{\"id\":\"c9-1\",\"customer_id\":\"c9\",\"load_amount\":\"$100.00\",\"time\":\"2000-01-01T00:00:00Z\"}")))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":\"c9-1\",\"customer_id\":\"c9\",\"accepted\":true}]", true));
+    }
+
+    @Test
+    void testLoadSingle() throws Exception {
+        String load = "{\"id\":\"c8-1\",\"customer_id\":\"c8\",\"load_amount\":\"$6000.00\",\"time\":\"2000-01-01T00:00:00Z\"}";
+
+        mockMvc.perform(post("/api/v1/fund-loads").contentType(MediaType.APPLICATION_JSON).content(load))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"id\":\"c8-1\",\"customer_id\":\"c8\",\"accepted\":false}", true));
+    }
+
+    @Test
+    void testPrecheckDoesNotRecordLoads() throws Exception {
+        mockMvc.perform(upload(file(
+                        "{\"id\":\"c6-1\",\"customer_id\":\"c6\",\"load_amount\":\"$3000.00\",\"time\":\"2000-01-01T00:00:00Z\"}")))
+                .andExpect(status().isOk());
+
+        String precheck = "[{\"customer_id\":\"c6\",\"load_amount\":\"$2000.00\",\"time\":\"2000-01-01T02:00:00Z\"},"
+                + "{\"customer_id\":\"c7\",\"time\":\"2000-01-01T02:00:00Z\"}]";
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/api/v1/fund-loads/precheck").contentType(MediaType.APPLICATION_JSON).content(precheck))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].accepted").value(true))
+                    .andExpect(jsonPath("$[0].headroom[1].rule").value("daily-amount"))
+                    .andExpect(jsonPath("$[0].headroom[1].remaining").value(2000.0))
+                    .andExpect(jsonPath("$[1].customer_id").value("c7"))
+                    .andExpect(jsonPath("$[1].accepted").doesNotExist())
+                    .andExpect(jsonPath("$[1].headroom[0].remaining").value(3));
+        }
+    }
+
+    /**
+     * @return A request uploading the file as the {@code file} part of a multipart body.
+     */
+    private static MockHttpServletRequestBuilder upload(MockMultipartFile file) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(multipartHead(file.getContentType()));
+        body.write(file.getBytes());
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return post("/api/v1/fund-loads/loadFromFile")
+                .contentType(MediaType.MULTIPART_FORM_DATA_VALUE + "; boundary=" + BOUNDARY)
+                .content(body.toByteArray());
+    }
+
+    private static byte[] multipartHead(String contentType) {
+        return ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"loads.txt\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * NDJSON lines of one small load for each of many customers, generated as they are read.
+     */
+    private static final class GeneratedLoads extends InputStream {
+
+        private final int loads;
+        private int next;
+        private byte[] line = new byte[0];
+        private int position;
+
+        GeneratedLoads(int loads) {
+            this.loads = loads;
+        }
+
+        @Override
+        public int read() {
+            if (position == line.length) {
+                if (next == loads) {
+                    return -1;
+                }
+                line = ("{\"id\":\"large-" + next + "\",\"customer_id\":\"large-" + next
+                        + "\",\"load_amount\":\"$10.00\",\"time\":\"2000-01-01T00:00:00Z\"}\n")
+                        .getBytes(StandardCharsets.UTF_8);
+                position = 0;
+                next++;
+            }
+            return line[position++];
+        }
+    }
+
+    private static MockMultipartFile file(String... lines) {
+        return new MockMultipartFile("file", "loads.txt", MediaType.TEXT_PLAIN_VALUE,
+                String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,70 @@
+package com.velocity.limits.events;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DecisionOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReopenResumesAtTheCursorAndDropsATornLine() throws Exception {
+        try (DecisionOutbox outbox = DecisionOutbox.open(directory, 16)) {
+            outbox.append(lines("{\"e\":0}\n{\"e\":1}\n"), 2);
+            outbox.append(lines("{\"e\":2}\n"), 1);
+            outbox.append(lines("{\"e\":3}\n"), 1);
+            DecisionBatch batch = outbox.read(10);
+            assertEquals(0, batch.firstEvent());
+            assertEquals(2, batch.count());
+            assertEquals("{\"e\":0}\n{\"e\":1}\n", text(batch));
+            outbox.acknowledge(batch);
+            assertEquals(2, outbox.pending());
+        }
+        // The first segment is wholly acknowledged and deleted, leaving the cursor; a crash tears a line of the last
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        Path last = directory.resolve(String.format("outbox-%020d.ndjson", 2));
+        Files.writeString(last, "{\"e\":", StandardOpenOption.APPEND);
+
+        try (DecisionOutbox outbox = DecisionOutbox.open(directory, 16)) {
+            assertEquals(4, outbox.appended());
+            assertEquals(2, outbox.pending());
+            DecisionBatch batch = outbox.read(10);
+            assertEquals(2, batch.firstEvent());
+            assertEquals(2, batch.count());
+            assertEquals("{\"e\":2}\n{\"e\":3}\n", text(batch));
+            outbox.acknowledge(batch);
+            // The segment being full, the next batch starts a new one
+            outbox.append(lines("{\"e\":4}\n"), 1);
+            batch = outbox.read(10);
+            assertEquals(4, batch.firstEvent());
+            assertEquals("{\"e\":4}\n", text(batch));
+            outbox.acknowledge(batch);
+            assertNull(outbox.read(10));
+            assertEquals(0, outbox.pending());
+        }
+    }
+
+    private static ByteBuffer lines(String lines) {
+        return ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(DecisionBatch batch) {
+        ByteBuffer payload = batch.payload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,159 @@
+package com.velocity.limits.events;
+
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.persistence.FundLoadStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.velocity.limits.model.TestFundLoads.fundLoad;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+
+class DecisionStreamTest {
+
+    private static final int LOADS = 20;
+    private static final LocalDateTime TIME = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private FundLoadStore fundLoadStore;
+
+    @InjectMocks
+    private DecisionStream decisionStream;
+
+    private final InMemoryDecisionBroker broker = new InMemoryDecisionBroker();
+    private final AtomicBoolean failNext = new AtomicBoolean(true);
+    private volatile boolean brokerDown;
+
+    private DecisionSink flakyBroker;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // The broker fails its first batch, which is then retried
+        flakyBroker = new DecisionSink() {
+            @Override
+            public String name() {
+                return "flaky";
+            }
+
+            @Override
+            public void publish(DecisionBatch batch) throws IOException {
+                if (brokerDown || failNext.getAndSet(false)) {
+                    throw new IOException("Broker unavailable");
+                }
+                broker.publish(batch);
+            }
+        };
+        configure(decisionStream);
+    }
+
+    private void configure(DecisionStream stream) {
+        ReflectionTestUtils.setField(stream, "fundLoadStore", fundLoadStore);
+        ReflectionTestUtils.setField(stream, "sinks",
+                List.of(flakyBroker, new FileDecisionSink(directory.resolve("events").toString())));
+        ReflectionTestUtils.setField(stream, "bufferSize", 32);
+        ReflectionTestUtils.setField(stream, "batchSize", 4);
+        ReflectionTestUtils.setField(stream, "retryBackoffMillis", 1L);
+        ReflectionTestUtils.setField(stream, "drainTimeoutMillis", 5_000L);
+        ReflectionTestUtils.setField(stream, "outboxDirectory", directory.resolve("outbox").toString());
+        ReflectionTestUtils.setField(stream, "outboxSegmentBytes", 1024L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        decisionStream.stop();
+    }
+
+    @Test
+    void testEveryDecisionIsDeliveredInOrder() throws Exception {
+        decisionStream.start();
+        for (int i = 0; i < LOADS; i++) {
+            FundLoad fundLoad = fundLoad("event-" + i, "events", "12.50", TIME);
+            boolean accepted = i % 2 == 0;
+            fundLoad.setSequence(accepted ? (long) i + 1 : null);
+            decisionStream.publish(fundLoad, accepted, false, accepted ? null : "daily_amount");
+        }
+
+        List<String> events = broker.awaitEvents(LOADS, 5, TimeUnit.SECONDS);
+        assertEquals(LOADS, events.size());
+        for (int i = 0; i < LOADS; i++) {
+            assertTrue(events.get(i).startsWith("{\"id\":\"event-" + i + "\",\"customer_id\":\"events\","
+                    + "\"load_amount\":\"$12.50\",\"time\":\"2000-01-01T00:00:00Z\""), events.get(i));
+        }
+        assertTrue(events.get(0).contains("\"accepted\":true,\"sequence\":1,"), events.get(0));
+        assertTrue(events.get(1).contains("\"accepted\":false,\"rule\":\"daily_amount\","), events.get(1));
+        // A duplicate is answered before its fields are checked, so it may lack some
+        FundLoad duplicate = fundLoad("event-0", "events", "12.50", TIME);
+        duplicate.setTime(null);
+        decisionStream.publish(duplicate, true, true, null);
+        events = broker.awaitEvents(LOADS + 1, 5, TimeUnit.SECONDS);
+        assertTrue(events.get(LOADS).contains("\"time\":null,\"accepted\":true,\"duplicate\":true,"),
+                events.get(LOADS));
+        // Accepted loads are persisted before their events are delivered
+        verify(fundLoadStore, atLeastOnce()).flush();
+        assertTrue(decisionStream.deliveryFailures() >= 1);
+
+        decisionStream.stop();
+        assertEquals(0, decisionStream.buffered());
+        assertEquals(0, decisionStream.pending());
+        try (var files = Files.list(directory.resolve("events"))) {
+            Path file = files.findFirst().orElseThrow();
+            assertTrue(file.getFileName().toString().matches("decisions-\\d{4}-\\d{2}-\\d{2}\\.ndjson"));
+            assertEquals(events, Files.readAllLines(file));
+        }
+    }
+
+    @Test
+    void testSinkOutageQueuesDecisionsInTheOutbox() throws Exception {
+        brokerDown = true;
+        ReflectionTestUtils.setField(decisionStream, "bufferSize", 8);
+        ReflectionTestUtils.setField(decisionStream, "drainTimeoutMillis", 100L);
+        decisionStream.start();
+
+        // More decisions than the ring holds are published without waiting for the broker
+        for (int i = 0; i < LOADS; i++) {
+            decisionStream.publish(fundLoad("event-" + i, "events", "12.50", TIME), false, false, "daily_amount");
+        }
+        decisionStream.sync();
+        assertEquals(LOADS, decisionStream.pending());
+
+        // Nothing is dropped when the drain times out; only a decision made once the outbox is closed is
+        decisionStream.stop();
+        assertEquals(0, decisionStream.dropped());
+        decisionStream.publish(fundLoad("late", "events", "12.50", TIME), false, false, "daily_amount");
+        assertEquals(1, decisionStream.dropped());
+        assertTrue(broker.events().isEmpty());
+
+        // The next start delivers every queued decision once the broker is back
+        brokerDown = false;
+        decisionStream = new DecisionStream();
+        configure(decisionStream);
+        decisionStream.start();
+        List<String> events = broker.awaitEvents(LOADS, 5, TimeUnit.SECONDS);
+        assertEquals(LOADS, events.size());
+        for (int i = 0; i < LOADS; i++) {
+            assertTrue(events.get(i).startsWith("{\"id\":\"event-" + i + "\","), events.get(i));
+        }
+        decisionStream.stop();
+        assertEquals(0, decisionStream.pending());
+    }
+}
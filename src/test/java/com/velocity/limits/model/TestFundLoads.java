@@ -0,0 +1,49 @@
+package com.velocity.limits.model;
+
+import com.velocity.limits.dto.FundLoadRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Fund loads and fund load requests for tests.
+ */
+public final class TestFundLoads {
+
+    private TestFundLoads() {
+    }
+
+    /**
+     * @return A new fund load, as decided from a request.
+     */
+    public static FundLoad fundLoad(String id, String customerId, String amount, LocalDateTime time) {
+        FundLoad fundLoad = new FundLoad();
+        fundLoad.setId(id);
+        fundLoad.setCustomerId(customerId);
+        fundLoad.setLoadAmount(new BigDecimal(amount));
+        fundLoad.setTime(time);
+        return fundLoad;
+    }
+
+    /**
+     * @return A fund load as read back from a store: numbered, and no longer new.
+     */
+    public static FundLoad stored(String id, String customerId, String amount, LocalDateTime time, long sequence) {
+        FundLoad fundLoad = fundLoad(id, customerId, amount, time);
+        fundLoad.setSequence(sequence);
+        fundLoad.setNew(false);
+        return fundLoad;
+    }
+
+    /**
+     * @return A fund load request.
+     */
+    public static FundLoadRequest request(String id, String customerId, String amount, LocalDateTime time) {
+        FundLoadRequest request = new FundLoadRequest();
+        request.setId(id);
+        request.setCustomer_id(customerId);
+        request.setLoad_amount(new BigDecimal(amount));
+        request.setTime(time);
+        return request;
+    }
+}
@@ -0,0 +1,144 @@
+package com.velocity.limits.persistence;
+
+import com.velocity.limits.model.FundLoad;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.velocity.limits.model.TestFundLoads.stored;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FundLoadLogTest {
+
+    /**
+     * Ten records per segment, so the tests span several segments.
+     */
+    private static final int SEGMENT_BYTES = 10 * FundLoadLog.RECORD_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecoversAppendedLoads() throws Exception {
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            for (int i = 1; i <= 25; i++) {
+                log.append(logged(String.valueOf(i), i));
+            }
+            log.sync();
+        }
+
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            List<FundLoad> loads = new ArrayList<>();
+            log.forEach(0, loads::add);
+            assertEquals(25, loads.size());
+            assertEquals(logged("7", 7), loads.get(6));
+            assertEquals(25, log.maxSequence());
+            // Ids are indexed per segment, and found in any of them
+            assertTrue(log.contains("1"));
+            assertTrue(log.contains("25"));
+            assertFalse(log.contains("26"));
+
+            List<FundLoad> after = new ArrayList<>();
+            log.forEach(20, after::add);
+            assertEquals(5, after.size());
+            assertEquals(21, after.get(0).getSequence());
+
+            // Appending continues after the recovered records
+            log.append(logged("26", 26));
+            assertEquals(26, log.recordCount());
+        }
+    }
+
+    @Test
+    void testSkipsSupersededRecords() throws Exception {
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            for (int i = 1; i <= 12; i++) {
+                log.append(logged(String.valueOf(i), i));
+            }
+            // Saved again in the next segment, as the JPA store would overwrite its row
+            log.append(stored("3", "customer", "50.00", LocalDateTime.of(2000, 1, 2, 0, 0), 13));
+            List<FundLoad> loads = new ArrayList<>();
+            log.forEach(0, loads::add);
+            assertEquals(12, loads.size());
+            assertEquals("4", loads.get(2).getId());
+            assertEquals(13, loads.get(11).getSequence());
+        }
+
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            List<FundLoad> loads = new ArrayList<>();
+            log.forEach(0, loads::add);
+            assertEquals(12, loads.size());
+            assertEquals(stored("3", "customer", "50.00", LocalDateTime.of(2000, 1, 2, 0, 0), 13), loads.get(11));
+            assertEquals(13, log.recordCount());
+        }
+    }
+
+    @Test
+    void testDropsTornTail() throws Exception {
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            for (int i = 1; i <= 5; i++) {
+                log.append(logged(String.valueOf(i), i));
+            }
+        }
+        // Damage the fourth record; the fifth reached the disk but must not be resurrected
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(3L * FundLoadLog.RECORD_SIZE + 40);
+            file.write(0x7F);
+        }
+
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(3, log.recordCount());
+            assertFalse(log.contains("5"));
+            log.append(logged("6", 6));
+        }
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            List<String> ids = new ArrayList<>();
+            log.forEach(0, fundLoad -> ids.add(fundLoad.getId()));
+            assertEquals(List.of("1", "2", "3", "6"), ids);
+        }
+    }
+
+    @Test
+    void testCompactionKeepsLastRecordOfEachId() throws Exception {
+        Path source = directory.resolve("source");
+        try (FundLoadLog log = FundLoadLog.open(source, SEGMENT_BYTES)) {
+            for (int i = 1; i <= 15; i++) {
+                log.append(logged(String.valueOf(i % 10), i));
+            }
+        }
+
+        FundLoadLogCompactor.Result result = FundLoadLogCompactor.compact(source, directory.resolve("target"), SEGMENT_BYTES);
+        assertEquals(new FundLoadLogCompactor.Result(15, 10), result);
+        try (FundLoadLog log = FundLoadLog.open(directory.resolve("target"), SEGMENT_BYTES)) {
+            List<Long> sequences = new ArrayList<>();
+            log.forEach(0, fundLoad -> sequences.add(fundLoad.getSequence()));
+            assertEquals(List.of(6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L), sequences);
+        }
+    }
+
+    @Test
+    void testRejectsLongIds() throws Exception {
+        try (FundLoadLog log = FundLoadLog.open(directory, SEGMENT_BYTES)) {
+            assertThrows(IllegalArgumentException.class, () -> log.append(logged("x".repeat(64), 1)));
+        }
+    }
+
+    private static FundLoad logged(String id, long sequence) {
+        return stored(id, "customer-" + sequence % 3, "123.45", LocalDateTime.of(2000, 1, 1, 0, 0).plusMinutes(sequence),
+                sequence);
+    }
+}
@@ -0,0 +1,102 @@
+package com.velocity.limits.persistence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.repository.FundLoadRepository;
+import com.velocity.limits.util.FundLoadRequestReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static com.velocity.limits.model.TestFundLoads.fundLoad;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:retention",
+        "fund.load.retention.weeks=2",
+        "fund.load.retention.interval-ms=3600000"
+})
+class FundLoadRetentionTest {
+
+    @TempDir
+    static Path archiveDirectory;
+
+    @DynamicPropertySource
+    static void archiveDirectory(DynamicPropertyRegistry registry) {
+        registry.add("fund.load.retention.archive-directory", archiveDirectory::toString);
+    }
+
+    @Autowired
+    private FundLoadRetention fundLoadRetention;
+
+    @Autowired
+    private FundLoadRepository fundLoadRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void testArchivesWeeksOlderThanRetention() throws Exception {
+        // Two loads in each of four weeks, starting on Monday 2000-01-03
+        LocalDateTime monday = LocalDateTime.of(2000, 1, 3, 12, 0);
+        long sequence = 0;
+        for (int week = 0; week < 4; week++) {
+            for (int load = 0; load < 2; load++) {
+                FundLoad fundLoad = fundLoad("w" + week + "-" + load, "c" + load, "12.50",
+                        monday.plusWeeks(week).plusDays(load * 6L));
+                fundLoad.setSequence(++sequence);
+                fundLoadRepository.save(fundLoad);
+            }
+        }
+        // A load dated in the future does not move the retention forward
+        FundLoad future = fundLoad("future", "c0", "12.50", LocalDateTime.of(2099, 1, 1, 12, 0));
+        future.setSequence(++sequence);
+        fundLoadRepository.save(future);
+        // A row without a time has no week to record, and is skipped
+        FundLoad timeless = fundLoad("timeless", "c0", "12.50", null);
+        timeless.setSequence(++sequence);
+        fundLoadRepository.save(timeless);
+
+        assertEquals(4, fundLoadRetention.archive());
+
+        assertEquals(LocalDate.of(2000, 1, 17), fundLoadRepository.findOldestWeek());
+        assertEquals(6, fundLoadRepository.count());
+        List<Path> archives;
+        try (Stream<Path> files = Files.list(archiveDirectory)) {
+            archives = files.sorted().toList();
+        }
+        assertEquals(List.of("fund-loads-2000-01-03-2.ndjson.gz", "fund-loads-2000-01-10-4.ndjson.gz"),
+                archives.stream().map(path -> path.getFileName().toString()).toList());
+
+        List<FundLoadRequest> archived = new ArrayList<>();
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(archives.get(1)));
+             FundLoadRequestReader reader = new FundLoadRequestReader(inputStream, objectMapper)) {
+            FundLoadRequest fundLoadRequest;
+            while ((fundLoadRequest = reader.next()) != null) {
+                archived.add(fundLoadRequest);
+            }
+        }
+        assertEquals(2, archived.size());
+        assertEquals("w1-1", archived.get(1).getId());
+        assertEquals("c1", archived.get(1).getCustomer_id());
+        assertEquals(0, new BigDecimal("12.50").compareTo(archived.get(1).getLoad_amount()));
+        assertEquals(LocalDateTime.of(2000, 1, 16, 12, 0), archived.get(1).getTime());
+
+        assertEquals(0, fundLoadRetention.archive());
+    }
+}
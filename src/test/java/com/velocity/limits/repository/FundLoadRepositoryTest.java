@@ -10,6 +10,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
+import static com.velocity.limits.model.TestFundLoads.fundLoad;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @DataJpaTest
@@ -49,5 +50,46 @@ class FundLoadRepositoryTest {
         assertEquals(new BigDecimal("1000"), result.get(0).getLoadAmount());
         assertEquals(new BigDecimal("1500"), result.get(1).getLoadAmount());
     }
-}
 
+    @Test
+    void findTotalsByCustomerIdAndTimeBetween() {
+        // Given
+        LocalDateTime time = LocalDateTime.of(2000, 1, 5, 12, 0);
+        fundLoadRepository.save(fundLoad("t1", "totals", "1000.50", time));
+        fundLoadRepository.save(fundLoad("t2", "totals", "1500", time.plusHours(1)));
+        fundLoadRepository.save(fundLoad("t3", "totals", "700", time.plusDays(1)));
+        fundLoadRepository.save(fundLoad("t4", "other", "900", time));
+
+        // When
+        LoadWindowTotals totals = fundLoadRepository.findTotalsByCustomerIdAndTimeBetween(
+                "totals", time, time.plusHours(2));
+        LoadWindowTotals none = fundLoadRepository.findTotalsByCustomerIdAndTimeBetween(
+                "nobody", time, time.plusHours(2));
+
+        // Then
+        assertEquals(2, totals.count());
+        assertEquals(0, new BigDecimal("2500.50").compareTo(totals.total()));
+        assertEquals(0, none.count());
+        assertEquals(0, BigDecimal.ZERO.compareTo(none.total()));
+    }
+
+    @Test
+    void findDayWeekTotals() {
+        // Given: Wednesday 2000-01-05, in the week of Monday 2000-01-03
+        LocalDateTime time = LocalDateTime.of(2000, 1, 5, 12, 0);
+        fundLoadRepository.save(fundLoad("w1", "dayweek", "100", time));
+        fundLoadRepository.save(fundLoad("w2", "dayweek", "200", time.withHour(23).withMinute(59)));
+        fundLoadRepository.save(fundLoad("w3", "dayweek", "400", LocalDateTime.of(2000, 1, 3, 0, 0)));
+        fundLoadRepository.save(fundLoad("w4", "dayweek", "800", LocalDateTime.of(2000, 1, 9, 23, 59, 59)));
+        fundLoadRepository.save(fundLoad("w5", "dayweek", "1600", LocalDateTime.of(2000, 1, 10, 0, 0)));
+
+        // When
+        DayWeekTotals totals = fundLoadRepository.findDayWeekTotals("dayweek", time);
+
+        // Then
+        assertEquals(2, totals.dailyCount());
+        assertEquals(0, new BigDecimal("300").compareTo(totals.dailyTotal()));
+        assertEquals(4, totals.weeklyCount());
+        assertEquals(0, new BigDecimal("1500").compareTo(totals.weeklyTotal()));
+    }
+}
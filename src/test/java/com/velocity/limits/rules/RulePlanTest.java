@@ -0,0 +1,58 @@
+package com.velocity.limits.rules;
+
+import com.velocity.limits.service.CustomerAggregate;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RulePlanTest {
+
+    @Test
+    void testCompileSharesWindows() {
+        RulePlan plan = TestRulePlans.defaultPlan();
+
+        assertEquals(4, plan.ruleCount());
+        assertEquals(2, plan.windowCount());
+        assertEquals(plan.windowIndex(0), plan.windowIndex(1));
+        assertEquals(500_000, plan.limit(1));
+        assertEquals(3, plan.limit(2));
+    }
+
+    @Test
+    void testCompileRejectsInvalidRules() {
+        assertThrows(IllegalArgumentException.class, () -> RulePlan.compile(List.of(
+                new RuleDefinition("rolling", RuleMetric.COUNT, WindowType.ROLLING, 0, "3"))));
+        assertThrows(IllegalArgumentException.class, () -> RulePlan.compile(List.of(
+                new RuleDefinition("cents", RuleMetric.AMOUNT, WindowType.DAY, 0, "0.001"))));
+        assertThrows(IllegalArgumentException.class, () -> RulePlan.compile(List.of(
+                new RuleDefinition(null, RuleMetric.COUNT, WindowType.DAY, 0, "3"))));
+    }
+
+    @Test
+    void testRollingAndMonthlyWindows() {
+        RulePlan plan = RulePlan.compile(List.of(
+                new RuleDefinition("rolling-24h-amount", RuleMetric.AMOUNT, WindowType.ROLLING, 24, "100"),
+                new RuleDefinition("monthly-count", RuleMetric.COUNT, WindowType.MONTH, 0, "3")));
+        CustomerAggregate aggregate = new CustomerAggregate(plan);
+        LocalDateTime time = LocalDateTime.of(2000, 1, 31, 12, 0);
+
+        aggregate.add(time, 6_000);
+        aggregate.add(time.plusHours(1), 4_000);
+
+        // $100 already loaded in the last 24 hours
+        assertEquals(0, aggregate.firstViolatedRule(time.plusHours(2), 1));
+        // The first load leaves the rolling window exactly 24 hours later
+        assertEquals(RulePlan.ACCEPTED, aggregate.firstViolatedRule(time.plusHours(24), 6_000));
+        assertEquals(0, aggregate.firstViolatedRule(time.plusHours(24), 6_001));
+
+        aggregate.add(time.plusHours(2).minusDays(1), 0);
+        // Third load in January
+        assertEquals(1, aggregate.firstViolatedRule(time.plusHours(3), 0));
+        // February is a new month, and the rolling window is empty again
+        assertEquals(RulePlan.ACCEPTED, aggregate.firstViolatedRule(time.plusDays(2), 10_000));
+    }
+}
@@ -0,0 +1,34 @@
+package com.velocity.limits.rules;
+
+import java.util.List;
+
+/**
+ * Rule plans for tests.
+ */
+public final class TestRulePlans {
+
+    private TestRulePlans() {
+    }
+
+    /**
+     * @return The default rules of application.properties: at most 3 loads and $5000 per day,
+     * 3 loads and $20000 per week.
+     */
+    public static RulePlan defaultPlan() {
+        return RulePlan.compile(List.of(
+                new RuleDefinition("daily-count", RuleMetric.COUNT, WindowType.DAY, 0, "3"),
+                new RuleDefinition("daily-amount", RuleMetric.AMOUNT, WindowType.DAY, 0, "5000"),
+                new RuleDefinition("weekly-count", RuleMetric.COUNT, WindowType.WEEK, 0, "3"),
+                new RuleDefinition("weekly-amount", RuleMetric.AMOUNT, WindowType.WEEK, 0, "20000")));
+    }
+
+    /**
+     * @return At most $5000 per day and $12000 per week, with no count limits, so that the
+     * weekly amount is reachable within a week.
+     */
+    public static RulePlan weeklyAmountPlan() {
+        return RulePlan.compile(List.of(
+                new RuleDefinition("daily-amount", RuleMetric.AMOUNT, WindowType.DAY, 0, "5000"),
+                new RuleDefinition("weekly-amount", RuleMetric.AMOUNT, WindowType.WEEK, 0, "12000")));
+    }
+}
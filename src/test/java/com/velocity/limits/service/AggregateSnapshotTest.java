@@ -0,0 +1,121 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.rules.RuleDefinition;
+import com.velocity.limits.rules.RuleMetric;
+import com.velocity.limits.rules.RulePlan;
+import com.velocity.limits.rules.TestRulePlans;
+import com.velocity.limits.rules.WindowType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregateSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRestoresEveryWindow() throws Exception {
+        List<RuleDefinition> definitions = new ArrayList<>();
+        definitions.add(new RuleDefinition("daily-count", RuleMetric.COUNT, WindowType.DAY, 0, "3"));
+        definitions.add(new RuleDefinition("weekly-amount", RuleMetric.AMOUNT, WindowType.WEEK, 0, "20000"));
+        definitions.add(new RuleDefinition("rolling-24h-amount", RuleMetric.AMOUNT, WindowType.ROLLING, 24, "5000"));
+        RulePlan rulePlan = RulePlan.compile(definitions);
+
+        LoadAggregateStore store = new LoadAggregateStore(rulePlan);
+        Random random = new Random(42);
+        LocalDateTime time = LocalDateTime.of(2000, 1, 1, 0, 0);
+        for (int i = 0; i < 1_000; i++) {
+            time = time.plusMinutes(random.nextInt(600));
+            store.record("customer-" + random.nextInt(20), time, 1 + random.nextInt(100_000), store.nextSequence());
+        }
+
+        Path file = directory.resolve("aggregates.snapshot");
+        int customerCount;
+        try (AggregateSnapshot.Writer writer = AggregateSnapshot.writer(file, rulePlan)) {
+            writer.commit(store.capture(writer));
+            customerCount = writer.customerCount();
+        }
+
+        Map<String, CustomerAggregate> restored = new HashMap<>();
+        assertEquals(1_000, AggregateSnapshot.readFrom(file, rulePlan, restored::put));
+        assertEquals(customerCount, restored.size());
+        assertEquals(List.of(file), listFiles());
+        for (Map.Entry<String, CustomerAggregate> customer : restored.entrySet()) {
+            CustomerAggregate original = store.get(customer.getKey());
+            assertEquals(original.getLastSequence(), customer.getValue().getLastSequence());
+            for (LocalDateTime at = time.minusDays(14); !at.isAfter(time); at = at.plusHours(5)) {
+                for (int window = 0; window < rulePlan.windowCount(); window++) {
+                    assertEquals(original.count(window, at), customer.getValue().count(window, at));
+                    assertEquals(original.cents(window, at), customer.getValue().cents(window, at));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testIgnoresSnapshotOfOtherWindows() throws Exception {
+        RulePlan rulePlan = TestRulePlans.defaultPlan();
+        LoadAggregateStore store = new LoadAggregateStore(rulePlan);
+        store.record("1", LocalDateTime.of(2000, 1, 1, 0, 0), 100, store.nextSequence());
+        Path file = directory.resolve("aggregates.snapshot");
+        try (AggregateSnapshot.Writer writer = AggregateSnapshot.writer(file, rulePlan)) {
+            writer.commit(store.capture(writer));
+        }
+
+        RulePlan dailyOnly = RulePlan.compile(List.of(
+                new RuleDefinition("daily-count", RuleMetric.COUNT, WindowType.DAY, 0, "3")));
+        Map<String, CustomerAggregate> restored = new HashMap<>();
+        assertEquals(-1, AggregateSnapshot.readFrom(file, dailyOnly, restored::put));
+        assertTrue(restored.isEmpty());
+    }
+
+    @Test
+    void testRestoresAggregatesLargerThanTheBuffer() throws Exception {
+        RulePlan rulePlan = TestRulePlans.defaultPlan();
+        Path file = directory.resolve("aggregates.snapshot");
+        LoadAggregateStore store = new LoadAggregateStore(rulePlan);
+        store.record("1", LocalDateTime.of(2000, 1, 1, 0, 0), 100, store.nextSequence());
+        byte[] aggregate = store.get("1").snapshot();
+        try (AggregateSnapshot.Writer writer = AggregateSnapshot.writer(file, rulePlan)) {
+            // Pads past the read buffer so later customers straddle refills
+            for (int i = 0; i < 100_000; i++) {
+                writer.add("customer-" + i, aggregate);
+            }
+            writer.commit(1);
+        }
+
+        Map<String, CustomerAggregate> restored = new HashMap<>();
+        assertEquals(1, AggregateSnapshot.readFrom(file, rulePlan, restored::put));
+        assertEquals(100_000, restored.size());
+        assertEquals(100, restored.get("customer-99999").cents(0, LocalDateTime.of(2000, 1, 1, 1, 0)));
+    }
+
+    @Test
+    void testDiscardsUncommittedSnapshot() throws Exception {
+        RulePlan rulePlan = TestRulePlans.defaultPlan();
+        Path file = directory.resolve("aggregates.snapshot");
+        try (AggregateSnapshot.Writer writer = AggregateSnapshot.writer(file, rulePlan)) {
+            writer.add("1", new byte[16]);
+        }
+        assertTrue(listFiles().isEmpty());
+    }
+
+    private List<Path> listFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+}
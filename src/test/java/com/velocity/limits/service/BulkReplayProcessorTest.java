@@ -0,0 +1,113 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.util.FundLoadRequestSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static com.velocity.limits.model.TestFundLoads.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkReplayProcessorTest {
+
+    @Mock
+    private FundLoadService fundLoadService;
+
+    @Mock
+    private FundLoadStore fundLoadStore;
+
+    @InjectMocks
+    private BulkReplayProcessor bulkReplayProcessor;
+
+    @TempDir
+    Path spillDirectory;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(bulkReplayProcessor, "runSize", 16);
+        ReflectionTestUtils.setField(bulkReplayProcessor, "spillDirectory", spillDirectory.toString());
+    }
+
+    @Test
+    void testDecidesInCustomerTimeOrderAndEmitsInInputOrder() throws Exception {
+        // 200 loads of 5 customers in shuffled times, so several runs are spilled
+        Random random = new Random(3);
+        List<FundLoadRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            requests.add(request("id-" + i, "c" + random.nextInt(5), "100.00",
+                    LocalDateTime.of(2000, 1, 1, 0, 0).plusMinutes(random.nextInt(100))));
+        }
+
+        List<FundLoadRequest> decided = new ArrayList<>();
+        when(fundLoadService.processLoadBatched(any())).thenAnswer(invocation -> {
+            FundLoadRequest request = invocation.getArgument(0);
+            decided.add(request);
+            // Accept a customer's first three loads in time order
+            long earlier = decided.stream().filter(r -> r.getCustomer_id().equals(request.getCustomer_id())).count();
+            return new FundStatus(request.getId(), request.getCustomer_id(), earlier <= 3);
+        });
+
+        List<FundStatus> statuses = new ArrayList<>();
+        assertEquals(200, bulkReplayProcessor.replay(source(requests), statuses::add));
+
+        // Decisions ran grouped by customer, in time order, ties in input order
+        for (int i = 1; i < decided.size(); i++) {
+            FundLoadRequest previous = decided.get(i - 1);
+            FundLoadRequest current = decided.get(i);
+            int byCustomer = previous.getCustomer_id().compareTo(current.getCustomer_id());
+            assertTrue(byCustomer < 0 || byCustomer == 0 && (previous.getTime().isBefore(current.getTime())
+                    || previous.getTime().equals(current.getTime())
+                    && requests.indexOf(previous) < requests.indexOf(current)));
+        }
+        // Statuses follow the input, and each customer's three earliest loads were accepted
+        assertEquals(200, statuses.size());
+        for (int i = 0; i < requests.size(); i++) {
+            FundLoadRequest request = requests.get(i);
+            assertEquals(request.getId(), statuses.get(i).getId());
+            assertEquals(request.getCustomer_id(), statuses.get(i).getCustomer_id());
+            long before = requests.stream().filter(r -> r.getCustomer_id().equals(request.getCustomer_id())
+                    && (r.getTime().isBefore(request.getTime())
+                    || r.getTime().equals(request.getTime()) && requests.indexOf(r) < requests.indexOf(request))).count();
+            assertEquals(before < 3, statuses.get(i).isAccepted());
+        }
+        verify(fundLoadStore).flush();
+        try (Stream<Path> leftovers = Files.list(spillDirectory)) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+
+    private static FundLoadRequestSource source(List<FundLoadRequest> requests) {
+        Iterator<FundLoadRequest> iterator = requests.iterator();
+        return new FundLoadRequestSource() {
+            @Override
+            public FundLoadRequest next() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
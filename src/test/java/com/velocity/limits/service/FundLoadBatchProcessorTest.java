@@ -0,0 +1,83 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.persistence.FundLoadStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.velocity.limits.model.TestFundLoads.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FundLoadBatchProcessorTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2000, 1, 3, 9, 0);
+
+    @Mock
+    private FundLoadService fundLoadService;
+
+    @Mock
+    private FundLoadStore fundLoadStore;
+
+    @InjectMocks
+    private FundLoadBatchProcessor fundLoadBatchProcessor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        fundLoadBatchProcessor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fundLoadBatchProcessor.stop();
+    }
+
+    @Test
+    void testProcessKeepsInputOrder() {
+        // Mocking data: 1000 requests interleaved over 7 customers
+        List<FundLoadRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(request(String.valueOf(i), String.valueOf(i % 7), "100", TIME));
+        }
+
+        Map<String, List<String>> processedIdsByCustomer = new ConcurrentHashMap<>();
+        when(fundLoadService.processLoadBatched(any())).thenAnswer(invocation -> {
+            FundLoadRequest request = invocation.getArgument(0);
+            processedIdsByCustomer.computeIfAbsent(request.getCustomer_id(),
+                    customerId -> Collections.synchronizedList(new ArrayList<>())).add(request.getId());
+            return new FundStatus(request.getId(), request.getCustomer_id(), true);
+        });
+
+        // Testing process method
+        List<FundStatus> statuses = fundLoadBatchProcessor.process(requests);
+
+        // Results come back in input order
+        assertEquals(requests.size(), statuses.size());
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals(requests.get(i).getId(), statuses.get(i).getId());
+        }
+        // Each customer's requests were processed in input order
+        processedIdsByCustomer.forEach((customerId, ids) -> {
+            for (int i = 1; i < ids.size(); i++) {
+                assertEquals(Integer.parseInt(ids.get(i - 1)) + 7, Integer.parseInt(ids.get(i)));
+            }
+        });
+        // Accepted loads were flushed before returning
+        verify(fundLoadStore).flush();
+    }
+}
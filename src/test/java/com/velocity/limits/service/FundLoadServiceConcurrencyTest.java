@@ -0,0 +1,143 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.rules.TestRulePlans;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.velocity.limits.model.TestFundLoads.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Stress test for concurrent {@link FundLoadService#processLoad} calls.
+ * <p>
+ * Many threads submit loads for a shared set of customers on the same day. The
+ * test checks that no customer ever ends up with more accepted loads or a higher
+ * accepted total than the limits allow, and logs throughput per thread count.
+ */
+class FundLoadServiceConcurrencyTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FundLoadServiceConcurrencyTest.class);
+
+    private static final int CUSTOMERS = 200;
+    private static final int LOADS_PER_THREAD = 2_000;
+    private static final LocalDateTime DAY = LocalDateTime.of(2000, 1, 3, 0, 0);
+
+    @Test
+    void concurrentLoadsNeverOvershootLimits() throws Exception {
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(threads);
+        }
+    }
+
+    private void run(int threads) throws Exception {
+        FundLoadService service = newService();
+        Map<String, AtomicLong> acceptedCounts = new ConcurrentHashMap<>();
+        Map<String, AtomicLong> acceptedCents = new ConcurrentHashMap<>();
+        AtomicLong sequence = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < LOADS_PER_THREAD; i++) {
+                        long cents = random.nextLong(1, 300_000);
+                        FundLoadRequest request = request(String.valueOf(sequence.incrementAndGet()),
+                                String.valueOf(random.nextInt(CUSTOMERS)), BigDecimal.valueOf(cents, 2).toPlainString(),
+                                DAY.plusSeconds(i));
+                        FundStatus status = service.processLoad(request);
+                        if (status.isAccepted()) {
+                            acceptedCounts.computeIfAbsent(status.getCustomer_id(), c -> new AtomicLong()).incrementAndGet();
+                            acceptedCents.computeIfAbsent(status.getCustomer_id(), c -> new AtomicLong()).addAndGet(cents);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - started;
+            logger.info("{} threads processed {} loads/s", threads,
+                    (long) threads * LOADS_PER_THREAD * 1_000_000_000L / elapsedNanos);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(CUSTOMERS, acceptedCounts.size());
+        acceptedCounts.forEach((customerId, count) ->
+                assertTrue(count.get() <= 3, "Customer " + customerId + " accepted " + count + " loads"));
+        acceptedCents.forEach((customerId, cents) ->
+                assertTrue(cents.get() <= 500_000, "Customer " + customerId + " accepted " + cents + " cents"));
+    }
+
+    @Test
+    void concurrentLoadsWithOneIdAreDecidedOnce() throws Exception {
+        int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            FundLoadService service = newService();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<FundStatus>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    // The same id for a different customer each time, so customer locks do not serialize them
+                    String customerId = "customer-" + t;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        return service.processLoad(request("shared", customerId, "1.00", DAY));
+                    }));
+                }
+                start.countDown();
+                int decided = 0;
+                for (Future<FundStatus> future : futures) {
+                    if (!future.get().isDuplicate()) {
+                        decided++;
+                    }
+                }
+                assertEquals(1, decided);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static FundLoadService newService() {
+        FundLoadService service = new FundLoadService();
+        // Stub-only mocks do not record invocations, so they stay cheap and thread safe under load
+        FundLoadStore store = mock(FundLoadStore.class, withSettings().stubOnly());
+        service.setFundLoadStore(store);
+        service.setLoadIdFilter(new LoadIdFilter(store, 100_000, 0.01, 100_000));
+        service.setLoadAggregateStore(new LoadAggregateStore(TestRulePlans.defaultPlan()));
+        service.setFundLoadMetrics(new FundLoadMetrics(new SimpleMeterRegistry(), TestRulePlans.defaultPlan()));
+        return service;
+    }
+}
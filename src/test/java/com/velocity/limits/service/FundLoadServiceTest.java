@@ -1,33 +1,52 @@
 package com.velocity.limits.service;
 
 import com.velocity.limits.dto.FundLoadRequest;
+import com.velocity.limits.dto.FundStatus;
+import com.velocity.limits.dto.LoadPrecheck;
+import com.velocity.limits.dto.LoadPrecheckRequest;
+import com.velocity.limits.dto.RuleHeadroom;
+import com.velocity.limits.events.DecisionStream;
+import com.velocity.limits.metrics.FundLoadMetrics;
 import com.velocity.limits.model.FundLoad;
-import com.velocity.limits.repository.FundLoadRepository;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.rules.TestRulePlans;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.beans.factory.annotation.Value;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
+import static com.velocity.limits.model.TestFundLoads.fundLoad;
+import static com.velocity.limits.model.TestFundLoads.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 class FundLoadServiceTest {
 
+    private static final LocalDateTime TIME = LocalDateTime.of(2000, 1, 3, 9, 0);
+
+    @Mock
+    private FundLoadStore fundLoadStore;
+
     @Mock
-    private FundLoadRepository fundLoadRepository;
+    private DecisionStream decisionStream;
 
-    @Value("${max.weekly.load.amount}")
-    private String maxWeeklyLoadAmount;
+    @Spy
+    private LoadAggregateStore loadAggregateStore = new LoadAggregateStore(TestRulePlans.defaultPlan());
 
-    @Value("${max.daily.load.amount}")
-    private String maxDailyLoadAmount;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private FundLoadMetrics fundLoadMetrics = new FundLoadMetrics(meterRegistry, TestRulePlans.defaultPlan());
 
     @InjectMocks
     private FundLoadService fundLoadService;
@@ -35,67 +54,138 @@ class FundLoadServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        fundLoadService.setMaxDailyLoadAmount("5000");
-        fundLoadService.setMaxWeeklyLoadAmount("20000");
+        fundLoadService.setLoadIdFilter(new LoadIdFilter(fundLoadStore, 1_000, 0.01, 100));
     }
 
     @Test
     void testIsLoadAccepted() {
         // Mocking data
-        FundLoad fundLoad = new FundLoad();
-        fundLoad.setId("1");
-        fundLoad.setCustomerId("1");
-        fundLoad.setLoadAmount(new BigDecimal("1000"));
-        fundLoad.setTime(LocalDateTime.now());
+        FundLoad fundLoad = fundLoad("1", "1", "1000", TIME);
 
-        List<FundLoad> dailyLoads = new ArrayList<>();
-        dailyLoads.add(fundLoad);
+        loadAggregateStore.record(fundLoad);
 
-        List<FundLoad> weeklyLoads = new ArrayList<>();
-        weeklyLoads.add(fundLoad);
+        // Testing isLoadAccepted method
+        assertTrue(fundLoadService.isLoadAccepted(fundLoad));
 
-        // Mocking repository methods
-        when(fundLoadRepository.findByCustomerIdAndTimeBetween(anyString(), any(), any())).thenReturn(dailyLoads);
-        when(fundLoadRepository.findByCustomerIdAndTimeBetween(anyString(), any(), any())).thenReturn(weeklyLoads);
+        // Verifying the decision did not hit the store
+        verifyNoInteractions(fundLoadStore);
+    }
 
+    @Test
+    void testIsLoadAcceptedWhenDailyCountExceeded() {
+        LocalDateTime time = LocalDateTime.of(2000, 1, 3, 9, 0);
+        for (int i = 0; i < 3; i++) {
+            loadAggregateStore.record(fundLoad(String.valueOf(i), "1", "100", time.plusHours(i)));
+        }
 
-        // Testing isLoadAccepted method
-        assertTrue(fundLoadService.isLoadAccepted(fundLoad));
+        assertFalse(fundLoadService.isLoadAccepted(fundLoad("4", "1", "100", time.plusHours(4))));
+    }
 
-        // Verifying repository methods were called
-        verify(fundLoadRepository, times(2)).findByCustomerIdAndTimeBetween(anyString(), any(), any());
+    @Test
+    void testIsLoadAcceptedWhenWeeklyAmountExceeded() {
+        // The default weekly count caps a week at $15000, below its weekly amount
+        LoadAggregateStore weeklyStore = new LoadAggregateStore(TestRulePlans.weeklyAmountPlan());
+        ReflectionTestUtils.setField(fundLoadService, "loadAggregateStore", weeklyStore);
+        // Monday and Wednesday of the same ISO week
+        weeklyStore.record(fundLoad("1", "1", "5000", LocalDateTime.of(2000, 1, 3, 9, 0)));
+        weeklyStore.record(fundLoad("2", "1", "5000", LocalDateTime.of(2000, 1, 5, 9, 0)));
+
+        // The load itself is counted once: $12000 reaches the weekly limit without exceeding it
+        assertTrue(fundLoadService.isLoadAccepted(fundLoad("3", "1", "2000", LocalDateTime.of(2000, 1, 9, 9, 0))));
+        assertFalse(fundLoadService.isLoadAccepted(fundLoad("3", "1", "2000.01", LocalDateTime.of(2000, 1, 9, 9, 0))));
+
+        LoadPrecheckRequest precheckRequest = new LoadPrecheckRequest();
+        precheckRequest.setCustomer_id("1");
+        precheckRequest.setTime(LocalDateTime.of(2000, 1, 9, 9, 0));
+        precheckRequest.setLoad_amount(new BigDecimal("2000.01"));
+        assertEquals("weekly-amount", fundLoadService.precheck(precheckRequest).getViolated_rule());
+
+        // The following Monday starts a new week
+        assertTrue(fundLoadService.isLoadAccepted(fundLoad("3", "1", "5000", LocalDateTime.of(2000, 1, 10, 9, 0))));
     }
 
     @Test
     void testProcessLoad() {
         // Mocking data
-        FundLoadRequest fundLoadRequest = new FundLoadRequest();
-        fundLoadRequest.setId("1");
-        fundLoadRequest.setCustomer_id("1");
-        fundLoadRequest.setLoad_amount(new BigDecimal("1000"));
-        fundLoadRequest.setTime(LocalDateTime.now());
+        FundLoadRequest fundLoadRequest = request("1", "1", "1000", TIME);
 
         // Testing processLoad method
         fundLoadService.processLoad(fundLoadRequest);
 
-        // Verifying repository method was called
-        verify(fundLoadRepository, times(1)).save(any());
+        // Verifying store method was called
+        verify(fundLoadStore, times(1)).save(any());
+        verify(loadAggregateStore, times(1)).record(anyString(), any(), anyLong(), anyLong());
     }
 
     @Test
     void testProcessLoadWhenLimitExceed() {
         // Mocking data
-        FundLoadRequest fundLoadRequest = new FundLoadRequest();
-        fundLoadRequest.setId("1");
-        fundLoadRequest.setCustomer_id("1");
-        fundLoadRequest.setLoad_amount(new BigDecimal("6000"));  // Exceeds daily limit
-        fundLoadRequest.setTime(LocalDateTime.now());
+        FundLoadRequest fundLoadRequest = request("1", "1", "6000", TIME); // Exceeds daily limit
 
         // Testing processLoad method
         fundLoadService.processLoad(fundLoadRequest);
 
-        // Verifying repository method was not called
-        verify(fundLoadRepository, never()).save(any());
+        // Verifying store method was not called
+        verify(fundLoadStore, never()).save(any());
+
+        // Verifying the rejection was counted against the daily amount rule
+        assertEquals(1, meterRegistry.get("fund.loads.rejections").tag("rule", "daily-amount").counter().count());
+        verify(decisionStream).publish(any(), eq(false), eq(false), eq("daily-amount"));
+    }
+
+    @Test
+    void testProcessLoadWhenDuplicate() {
+        FundLoadRequest fundLoadRequest = request("1", "1", "1000", TIME);
+
+        FundStatus first = fundLoadService.processLoad(fundLoadRequest);
+        FundStatus second = fundLoadService.processLoad(fundLoadRequest);
+
+        // The resubmitted load repeats the first outcome without being decided or saved again
+        assertTrue(first.isAccepted());
+        assertFalse(first.isDuplicate());
+        assertTrue(second.isAccepted());
+        assertTrue(second.isDuplicate());
+        verify(fundLoadStore, times(1)).save(any());
+        verify(fundLoadStore, never()).exists(any());
+        verify(loadAggregateStore, times(1)).record(anyString(), any(), anyLong(), anyLong());
+
+        // Both decisions are streamed, the second marked as a duplicate
+        verify(decisionStream).publish(any(), eq(true), eq(false), isNull());
+        verify(decisionStream).publish(any(), eq(true), eq(true), isNull());
+    }
+
+    @Test
+    void testProcessLoadRoundsFractionsOfACent() {
+        FundLoadRequest fundLoadRequest = request("1", "1", "1.005", TIME);
+
+        assertTrue(fundLoadService.processLoad(fundLoadRequest).isAccepted());
+        verify(fundLoadStore).save(argThat(fundLoad -> fundLoad.getLoadAmount().equals(new BigDecimal("1.01"))));
+        verify(loadAggregateStore).record(anyString(), any(), eq(101L), anyLong());
     }
-}
 
+    @Test
+    void testPrecheck() {
+        LocalDateTime time = LocalDateTime.of(2000, 1, 3, 9, 0);
+        loadAggregateStore.record(fundLoad("1", "1", "3000", time));
+
+        LoadPrecheckRequest precheckRequest = new LoadPrecheckRequest();
+        precheckRequest.setCustomer_id("1");
+        precheckRequest.setTime(time.plusHours(1));
+        precheckRequest.setLoad_amount(new BigDecimal("2500"));
+        LoadPrecheck precheck = fundLoadService.precheck(precheckRequest);
+
+        assertEquals(Boolean.FALSE, precheck.getAccepted());
+        assertEquals("daily-amount", precheck.getViolated_rule());
+        RuleHeadroom dailyAmount = precheck.getHeadroom().get(1);
+        assertEquals("daily-amount", dailyAmount.getRule());
+        assertEquals(0, new BigDecimal("2000").compareTo(dailyAmount.getRemaining()));
+        RuleHeadroom weeklyCount = precheck.getHeadroom().get(2);
+        assertEquals(0, BigDecimal.valueOf(2).compareTo(weeklyCount.getRemaining()));
+
+        // Without an amount only the headroom is returned, and nothing is recorded either way
+        precheckRequest.setLoad_amount(null);
+        assertNull(fundLoadService.precheck(precheckRequest).getAccepted());
+        assertEquals(1, loadAggregateStore.get("1").count(0, time));
+        verifyNoInteractions(fundLoadStore);
+    }
+}
@@ -0,0 +1,122 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.metrics.FundLoadMetrics;
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.persistence.ConnectionPermits;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.repository.FundLoadRepository;
+import com.velocity.limits.rules.TestRulePlans;
+import com.velocity.limits.util.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.velocity.limits.model.TestFundLoads.fundLoad;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class FundLoadWriterTest {
+
+    @Autowired
+    private FundLoadWriter fundLoadWriter;
+
+    @Autowired
+    private FundLoadRepository fundLoadRepository;
+
+    @Test
+    void testFlushInsertsBufferedLoads() {
+        LocalDateTime time = LocalDateTime.of(2001, 1, 1, 0, 0);
+        for (int i = 0; i < 3; i++) {
+            fundLoadWriter.write(fundLoad("writer-" + i, "writer", "100", time));
+        }
+
+        fundLoadWriter.flush();
+
+        List<FundLoad> saved = fundLoadRepository.findByCustomerIdAndTimeBetween("writer", time, time);
+        assertEquals(3, saved.size());
+    }
+
+    @Test
+    void testFlushOverwritesExistingId() {
+        LocalDateTime time = LocalDateTime.of(2001, 2, 1, 0, 0);
+        fundLoadWriter.write(fundLoad("writer-dup", "writer", "100", time));
+        fundLoadWriter.flush();
+
+        fundLoadWriter.write(fundLoad("writer-dup", "writer", "200", time));
+        fundLoadWriter.write(fundLoad("writer-new", "writer", "300", time));
+        fundLoadWriter.flush();
+
+        List<FundLoad> saved = fundLoadRepository.findByCustomerIdAndTimeBetween("writer", time, time);
+        assertEquals(2, saved.size());
+        assertEquals(0, new BigDecimal("200").compareTo(saved.stream()
+                .filter(fundLoad -> fundLoad.getId().equals("writer-dup"))
+                .findFirst().orElseThrow().getLoadAmount()));
+    }
+
+    @Test
+    void testRollsBackLoadsOfABatchThatFinallyFails() {
+        FundLoadRepository failingRepository = mock(FundLoadRepository.class);
+        when(failingRepository.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        LoadAggregateStore loadAggregateStore = new LoadAggregateStore(TestRulePlans.defaultPlan());
+        LoadIdFilter loadIdFilter = new LoadIdFilter(mock(FundLoadStore.class), 1_000, 0.01, 100);
+
+        FundLoadWriter writer = new FundLoadWriter();
+        ReflectionTestUtils.setField(writer, "fundLoadRepository", failingRepository);
+        ReflectionTestUtils.setField(writer, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(writer, "fundLoadMetrics", mock(FundLoadMetrics.class));
+        ReflectionTestUtils.setField(writer, "connectionPermits", new ConnectionPermits(1));
+        ReflectionTestUtils.setField(writer, "loadAggregateStore", loadAggregateStore);
+        ReflectionTestUtils.setField(writer, "loadIdFilter", loadIdFilter);
+        ReflectionTestUtils.setField(writer, "batchSize", 10);
+        ReflectionTestUtils.setField(writer, "maxAttempts", 3);
+
+        // Both loads are decided as accepted, then never persisted
+        LocalDateTime time = LocalDateTime.of(2001, 3, 1, 0, 0);
+        for (FundLoad fundLoad : List.of(fundLoad("lost-1", "lost", "100", time),
+                fundLoad("lost-2", "lost", "50", time.plusHours(1)))) {
+            loadAggregateStore.record(fundLoad.getCustomerId(), fundLoad.getTime(),
+                    Money.toCents(fundLoad.getLoadAmount()), loadAggregateStore.nextSequence());
+            loadIdFilter.remember(fundLoad.getId(), true);
+            writer.write(fundLoad);
+        }
+
+        for (int attempt = 1; attempt < 3; attempt++) {
+            assertThrows(DataAccessResourceFailureException.class, writer::flush);
+            assertEquals(2, loadAggregateStore.get("lost").count(0, time));
+        }
+        assertThrows(DataAccessResourceFailureException.class, writer::flush);
+
+        verify(failingRepository, times(3)).saveAll(anyList());
+        assertEquals(0, loadAggregateStore.get("lost").count(0, time));
+        assertEquals(0, loadAggregateStore.get("lost").cents(1, time));
+        assertNull(loadIdFilter.previousOutcome("lost-1"));
+        assertNull(loadIdFilter.previousOutcome("lost-2"));
+
+        // Nothing is left to retry
+        writer.flush();
+        verify(failingRepository, times(3)).saveAll(anyList());
+    }
+}
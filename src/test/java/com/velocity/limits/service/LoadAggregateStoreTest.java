@@ -0,0 +1,84 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.FundLoad;
+import com.velocity.limits.persistence.FundLoadStore;
+import com.velocity.limits.rules.TestRulePlans;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+import static com.velocity.limits.model.TestFundLoads.stored;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LoadAggregateStoreTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2000, 1, 3, 10, 0);
+
+    @Mock
+    private FundLoadStore fundLoadStore;
+
+    @InjectMocks
+    private LoadAggregateStore cachedStore = new LoadAggregateStore(TestRulePlans.defaultPlan(), 1, 60_000);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testLoadsUncachedCustomerFromStore() {
+        doAnswer(invocation -> {
+            Consumer<FundLoad> consumer = invocation.getArgument(1);
+            consumer.accept(stored("1", "cold", "100.00", TIME, 1));
+            consumer.accept(stored("2", "cold", "50.00", TIME.plusDays(1), 2));
+            return null;
+        }).when(fundLoadStore).forEachOfCustomer(eq("cold"), any());
+
+        CustomerAggregate aggregate = cachedStore.get("cold");
+
+        verify(fundLoadStore).flush();
+        assertEquals(1, aggregate.count(0, TIME));
+        assertEquals(2, aggregate.count(1, TIME));
+        assertEquals(15_000, aggregate.cents(1, TIME));
+        assertEquals(2, aggregate.getLastSequence());
+    }
+
+    @Test
+    void testRecordsIntoCachedCustomer() {
+        cachedStore.get("hot");
+        cachedStore.record("hot", TIME, 10_000, 7);
+        cachedStore.record("unseen", TIME, 10_000, 8);
+
+        assertEquals(1, cachedStore.get("hot").count(0, TIME));
+        verify(fundLoadStore, times(1)).forEachOfCustomer(eq("hot"), any());
+        // A load of a customer that is not cached is read from the store instead
+        assertEquals(0, cachedStore.get("unseen").count(0, TIME));
+    }
+
+    @Test
+    void testDropsBucketsOlderThanLongestWindow() {
+        CustomerAggregate aggregate = new CustomerAggregate(TestRulePlans.defaultPlan());
+        aggregate.add(TIME, 100);
+        int size = aggregate.estimatedSize();
+        for (int day = 1; day < 365; day++) {
+            aggregate.add(TIME.plusDays(day), 100);
+        }
+
+        // The days and weeks within a week of the newest load are kept, the rest dropped
+        LocalDateTime newest = TIME.plusDays(364);
+        assertEquals(0, aggregate.count(0, TIME));
+        assertEquals(0, aggregate.count(1, TIME));
+        assertEquals(1, aggregate.count(0, newest.minusDays(7)));
+        assertEquals(1, aggregate.count(0, newest));
+        assertEquals(7, aggregate.count(1, newest.minusDays(7)));
+        assertEquals(size + 7 * 20 + 20, aggregate.estimatedSize());
+    }
+}
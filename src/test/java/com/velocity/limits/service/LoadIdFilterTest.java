@@ -0,0 +1,35 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.persistence.FundLoadStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class LoadIdFilterTest {
+
+    @Test
+    void testGrowsPastExpectedIds() {
+        FundLoadStore store = mock(FundLoadStore.class);
+        LoadIdFilter filter = new LoadIdFilter(store, 1_000, 0.01, 100);
+        long initialBits = filter.bitCount();
+        for (int i = 0; i < 10_000; i++) {
+            filter.remember("load-" + i, true);
+        }
+
+        // Ten times the expected ids are held in larger stages at about the configured rate
+        assertTrue(filter.bitCount() > 10 * initialBits, filter.bitCount() + " bits");
+        assertTrue(filter.falsePositiveRate() < 0.02, "false positive rate " + filter.falsePositiveRate());
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(filter.previousOutcome("other-" + i));
+        }
+        // Only false positives fall through to the store
+        verify(store, atMost(200)).exists(anyString());
+        assertEquals(Boolean.TRUE, filter.previousOutcome("load-9999"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.velocity.limits.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadTimeIndexTest {
+
+    private static final long DAY = 86_400;
+    private static final long WEEK = 7 * DAY;
+
+    @Test
+    void testWindowsMatchBruteForce() {
+        Random random = new Random(42);
+        LoadTimeIndex index = new LoadTimeIndex(WEEK);
+        List<long[]> loads = new ArrayList<>();
+        long newest = 0;
+
+        for (int i = 0; i < 5_000; i++) {
+            // Mostly in time order, sometimes up to a day late
+            long time = newest + random.nextInt(4 * 3_600) - (random.nextInt(10) == 0 ? random.nextInt((int) DAY) : 0);
+            long cents = 1 + random.nextInt(100_000);
+            index.add(time, cents);
+            loads.add(new long[]{time, cents});
+            newest = Math.max(newest, time);
+
+            long to = newest + random.nextInt((int) DAY);
+            for (long window : new long[]{3_600, DAY, WEEK}) {
+                long count = 0;
+                long total = 0;
+                for (long[] load : loads) {
+                    if (load[0] > to - window && load[0] <= to) {
+                        count++;
+                        total += load[1];
+                    }
+                }
+                assertEquals(count, index.count(to - window, to));
+                assertEquals(total, index.cents(to - window, to));
+            }
+        }
+    }
+
+    @Test
+    void testEvictsLoadsOutsideRetention() {
+        LoadTimeIndex index = new LoadTimeIndex(DAY);
+        for (int hour = 0; hour < 24 * 30; hour++) {
+            index.add(hour * 3_600L, 100);
+        }
+
+        // Only the loads of the last 24 hours are kept
+        assertTrue(index.size() <= 24);
+        long newest = (24 * 30 - 1) * 3_600L;
+        assertEquals(24, index.count(newest - DAY, newest));
+        assertEquals(2_400, index.cents(newest - DAY, newest));
+    }
+
+    @Test
+    void testRemovesALoad() {
+        LoadTimeIndex index = new LoadTimeIndex(DAY);
+        index.add(100, 1);
+        index.add(200, 20);
+        index.add(200, 300);
+        index.add(300, 4_000);
+
+        index.remove(200, 20);
+        index.remove(250, 5);
+
+        assertEquals(3, index.count(0, 300));
+        assertEquals(4_301, index.cents(0, 300));
+        assertEquals(300, index.cents(100, 200));
+        assertEquals(4_000, index.cents(200, 300));
+    }
+}
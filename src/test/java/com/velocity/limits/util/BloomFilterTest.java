@@ -0,0 +1,47 @@
+package com.velocity.limits.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void testContainsEveryAddedValue() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("load-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("load-" + i), "load-" + i);
+        }
+    }
+
+    @Test
+    void testFalsePositiveRateAtCapacity() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        long setBits = 0;
+        for (int i = 0; i < 10_000; i++) {
+            setBits += filter.put("load-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, falsePositives + " false positives in 100000 lookups");
+        assertTrue(filter.fill() > 0.4 && filter.fill() < 0.6, "fill " + filter.fill());
+        assertEquals(0.01, filter.falsePositiveRate(), 0.005);
+        assertEquals(filter.fill() * filter.bitCount(), setBits, 0.5);
+        assertEquals(filter.setBitsAt(0.01), setBits, filter.bitCount() / 20.0);
+    }
+
+    @Test
+    void testRejectsInvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1));
+    }
+}
@@ -0,0 +1,95 @@
+package com.velocity.limits.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomerDictionaryTest {
+
+    @Test
+    void testInternsDenseIndexesInOrder() {
+        CustomerDictionary customers = new CustomerDictionary();
+
+        assertEquals(-1, customers.indexOf("c1"));
+        assertEquals(0, customers.intern("c1"));
+        assertEquals(1, customers.intern("c2"));
+        assertEquals(0, customers.intern("c1"));
+        assertEquals(1, customers.indexOf("c2"));
+        assertEquals(2, customers.size());
+
+        customers.clear();
+        assertEquals(-1, customers.indexOf("c1"));
+        assertEquals(0, customers.intern("c2"));
+    }
+
+    @Test
+    void testDecodesEveryId() {
+        CustomerDictionary customers = new CustomerDictionary();
+        List<String> ids = List.of("", "customer-1", "klëant-2", "顧客-3", "x".repeat(300));
+        for (String id : ids) {
+            customers.intern(id);
+        }
+        for (int index = 0; index < ids.size(); index++) {
+            assertEquals(ids.get(index), customers.customerId(index));
+            assertEquals(index, customers.indexOf(ids.get(index)));
+        }
+    }
+
+    @Test
+    void testGrowsAcrossTablesPagesAndChunks() {
+        CustomerDictionary customers = new CustomerDictionary();
+        int count = 300_000;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, customers.intern("customer-" + i));
+        }
+        for (int i = 0; i < count; i += 997) {
+            assertEquals(i, customers.indexOf("customer-" + i));
+            assertEquals("customer-" + i, customers.customerId(i));
+        }
+        assertEquals(-1, customers.indexOf("customer-" + count));
+
+        // 15 char ids: about 16 bytes of id, 8 of position and 11 to 21 of table each
+        long bytesPerCustomer = customers.memoryBytes() / count;
+        assertTrue(bytesPerCustomer < 60, bytesPerCustomer + " bytes per customer");
+    }
+
+    @Test
+    void testConcurrentInternsAgree() throws Exception {
+        CustomerDictionary customers = new CustomerDictionary();
+        int threads = 8;
+        int count = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                results.add(executor.submit(() -> {
+                    int[] indexes = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        int id = (i + offset * 997) % count;
+                        indexes[id] = customers.intern("c" + id);
+                    }
+                    return indexes;
+                }));
+            }
+            int[] first = results.get(0).get();
+            for (Future<int[]> result : results) {
+                int[] indexes = result.get();
+                for (int id = 0; id < count; id++) {
+                    assertEquals(first[id], indexes[id]);
+                    assertEquals("c" + id, customers.customerId(indexes[id]));
+                }
+            }
+            assertEquals(count, customers.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
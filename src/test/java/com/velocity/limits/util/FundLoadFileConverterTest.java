@@ -0,0 +1,119 @@
+package com.velocity.limits.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.velocity.limits.dto.FundLoadRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FundLoadFileConverterTest {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testConvertsBetweenEveryFormat() throws IOException {
+        // More loads than a binary block, with times going backwards now and then
+        Random random = new Random(7);
+        StringBuilder lines = new StringBuilder();
+        LocalDateTime time = LocalDateTime.of(2000, 1, 1, 0, 0);
+        for (int i = 0; i < 10_000; i++) {
+            time = time.plusSeconds(random.nextInt(3_600) - 600);
+            lines.append("{\"id\":\"").append(i == 42 ? "Zoë-\\\"42\\\"" : i)
+                    .append("\",\"customer_id\":\"").append(random.nextInt(500))
+                    .append("\",\"load_amount\":\"$").append(random.nextInt(300_000) / 100.0)
+                    .append("\",\"time\":\"").append(TIME_FORMAT.format(time)).append("\"}\n");
+        }
+        Path ndjson = directory.resolve("loads.ndjson");
+        Files.writeString(ndjson, lines, StandardCharsets.UTF_8);
+        List<FundLoadRequest> expected = read(ndjson);
+        assertEquals(10_000, expected.size());
+        assertEquals("Zoë-\"42\"", expected.get(42).getId());
+
+        Path previous = ndjson;
+        for (String name : List.of("loads.gz", "loads.zst", "loads.vfl", "loads-again.ndjson")) {
+            Path converted = directory.resolve(name);
+            assertEquals(10_000, FundLoadFileConverter.convert(previous, UploadFormat.ofFileName(previous.toString()),
+                    converted, UploadFormat.ofFileName(name)));
+            assertSameLoads(expected, read(converted));
+            previous = converted;
+        }
+        assertTrue(Files.size(directory.resolve("loads.vfl")) * 3 < Files.size(ndjson));
+    }
+
+    @Test
+    void testRejectsTruncatedBinary() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (FundLoadBinaryWriter writer = new FundLoadBinaryWriter(bytes)) {
+            writer.write("1", "2", new BigDecimal("3.45"), LocalDateTime.of(2000, 1, 1, 0, 0));
+        }
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+        try (FundLoadRequestSource source = new FundLoadBinaryReader(new ByteArrayInputStream(truncated))) {
+            assertThrows(IOException.class, source::next);
+        }
+        assertThrows(IOException.class, () -> new FundLoadBinaryReader(new ByteArrayInputStream("{}".getBytes())));
+    }
+
+    @Test
+    void testRejectsOversizedBinaryBlocks() throws IOException {
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        rows.write(FundLoadBinaryWriter.MAGIC);
+        // A block claiming 2^28 rows
+        rows.write(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01, 0x01});
+        try (FundLoadRequestSource source = new FundLoadBinaryReader(new ByteArrayInputStream(rows.toByteArray()))) {
+            assertThrows(IOException.class, source::next);
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(FundLoadBinaryWriter.MAGIC);
+        // A block of one row claiming a 2 GiB payload
+        payload.write(new byte[]{0x01, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+        try (FundLoadRequestSource source = new FundLoadBinaryReader(new ByteArrayInputStream(payload.toByteArray()))) {
+            assertThrows(IOException.class, source::next);
+        }
+    }
+
+    private List<FundLoadRequest> read(Path file) throws IOException {
+        List<FundLoadRequest> requests = new ArrayList<>();
+        try (FundLoadRequestSource source = UploadFormat.ofFileName(file.toString())
+                .open(Files.newInputStream(file), objectMapper)) {
+            FundLoadRequest request;
+            while ((request = source.next()) != null) {
+                requests.add(request);
+            }
+        }
+        return requests;
+    }
+
+    private static void assertSameLoads(List<FundLoadRequest> expected, List<FundLoadRequest> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getCustomer_id(), actual.get(i).getCustomer_id());
+            assertEquals(0, expected.get(i).getLoad_amount().compareTo(actual.get(i).getLoad_amount()));
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.velocity.limits.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.velocity.limits.dto.FundLoadRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FundLoadRequestReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void testFastPathMatchesJackson() throws IOException {
+        String[] lines = {
+                "{\"id\":\"15887\",\"customer_id\":\"528\",\"load_amount\":\"$3318.47\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{ \"time\" : \"2000-02-29T23:59:59Z\", \"load_amount\" : \"$12\", \"customer_id\" : \"1\", \"id\" : \"2\" }",
+                "{\"id\":\"3\",\"customer_id\":\"Zoë\",\"load_amount\":\"$0.5\",\"time\":\"2000-01-01T00:00:00Z\"}"
+        };
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            FundLoadRequest fast = FundLoadLineParser.parse(bytes, 0, bytes.length);
+            assertNotNull(fast, line);
+            assertEquals(objectMapper.readValue(line, FundLoadRequest.class), fast);
+        }
+    }
+
+    @Test
+    void testFastPathDeclinesUnexpectedLines() {
+        String[] lines = {
+                "{\"id\":\"1\",\"customer_id\":\"1\",\"load_amount\":\"$1.001\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":\"1\",\"customer_id\":\"1\",\"load_amount\":\"$1.00\",\"time\":\"2000-01-01 00:00:00\"}",
+                "{\"id\":\"1\",\"customer_id\":\"1\",\"load_amount\":\"$1.00\",\"time\":\"2000-02-30T00:00:00Z\"}",
+                "{\"id\":\"1\\\"\",\"customer_id\":\"1\",\"load_amount\":\"$1.00\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":1,\"customer_id\":\"1\",\"load_amount\":\"$1.00\",\"time\":\"2000-01-01T00:00:00Z\"}",
+                "{\"id\":\"1\",\"customer_id\":\"1\",\"load_amount\":\"$1.00\"}"
+        };
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            assertNull(FundLoadLineParser.parse(bytes, 0, bytes.length), line);
+        }
+    }
+
+    @Test
+    void testReaderFallsBackToJackson() throws IOException {
+        String content = "{\"id\":\"1\",\"customer_id\":\"1\",\"load_amount\":\"$1.00\",\"time\":\"2000-01-01T00:00:00Z\"}\r\n"
+                + "\n"
+                + "{\"id\":1,\"customer_id\":\"2\",\"load_amount\":\"$1.005\",\"time\":\"2000-01-01T00:00:00Z\"}";
+
+        List<FundLoadRequest> requests = new ArrayList<>();
+        try (FundLoadRequestReader reader = new FundLoadRequestReader(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), objectMapper)) {
+            FundLoadRequest request;
+            while ((request = reader.next()) != null) {
+                requests.add(request);
+            }
+        }
+
+        assertEquals(2, requests.size());
+        assertEquals("1", requests.get(0).getCustomer_id());
+        assertEquals("1", requests.get(1).getId());
+        assertEquals(new BigDecimal("1.005"), requests.get(1).getLoad_amount());
+        assertEquals(LocalDateTime.of(2000, 1, 1, 0, 0), requests.get(1).getTime());
+    }
+}
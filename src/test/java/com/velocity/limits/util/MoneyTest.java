@@ -0,0 +1,35 @@
+package com.velocity.limits.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+
+    @Test
+    void testRoundTrip() {
+        for (String amount : new String[]{"0", "0.5", "3318.47", "5000", "92233720368547758.07"}) {
+            BigDecimal value = new BigDecimal(amount);
+            assertEquals(0, value.compareTo(Money.fromCents(Money.toCents(value))), amount);
+        }
+        assertEquals(331847, Money.toCents(new BigDecimal("3318.47")));
+        assertEquals(500000, Money.toCents(new BigDecimal("5000")));
+        assertEquals(new BigDecimal("3318.47"), Money.fromCents(331847));
+    }
+
+    @Test
+    void testRejectsInexactAmounts() {
+        assertThrows(ArithmeticException.class, () -> Money.toCents(new BigDecimal("1.001")));
+        assertThrows(ArithmeticException.class, () -> Money.toCents(new BigDecimal("92233720368547758.08")));
+    }
+
+    @Test
+    void testRoundToCents() {
+        assertEquals(new BigDecimal("1.01"), Money.roundToCents(new BigDecimal("1.005")));
+        assertEquals(new BigDecimal("1.00"), Money.roundToCents(new BigDecimal("1.0049")));
+        assertEquals(new BigDecimal("5000.00"), Money.roundToCents(new BigDecimal("5000")));
+    }
+}
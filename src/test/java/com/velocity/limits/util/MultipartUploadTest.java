@@ -0,0 +1,70 @@
+package com.velocity.limits.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MultipartUploadTest {
+
+    private static final String CONTENT_TYPE = "multipart/form-data; boundary=\"xyz\"";
+
+    @Test
+    void testReadsTheFilePartAcrossShortReads() throws IOException {
+        // Content larger than the buffer, holding near-misses of the delimiter
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; content.length() < 200_000; i++) {
+            content.append("line ").append(i).append(" \r\n--xy \r\n-\r\n");
+        }
+        String body = "preamble\r\n--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"mode\"\r\n\r\n"
+                + "replay\r\n--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"loads.gz\"\r\n"
+                + "Content-Type: application/gzip\r\n\r\n"
+                + content
+                + "\r\n--xyz--";
+        for (int chunk : new int[]{1, 7, 1 << 16}) {
+            MultipartUpload upload = MultipartUpload.open(chunked(body, chunk), CONTENT_TYPE, "file", Long.MAX_VALUE);
+            assertEquals("application/gzip", upload.contentType());
+            assertArrayEquals(content.toString().getBytes(StandardCharsets.UTF_8), upload.inputStream().readAllBytes());
+            upload.inputStream().close();
+        }
+    }
+
+    @Test
+    void testTakesAnyOtherBodyAsTheFile() throws IOException {
+        MultipartUpload upload = MultipartUpload.open(chunked("{}\n", 3), "application/x-ndjson", "file", 3);
+        assertEquals("application/x-ndjson", upload.contentType());
+        assertEquals("{}\n", new String(upload.inputStream().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRefusesMissingPartsAndLargeUploads() throws IOException {
+        String body = "--xyz\r\nContent-Disposition: form-data; name=\"other\"\r\n\r\n0123456789\r\n--xyz--\r\n";
+        assertThrows(IOException.class, () -> MultipartUpload.open(chunked(body, 8), CONTENT_TYPE, "file", 1024));
+
+        String file = body.replace("other", "file");
+        MultipartUpload upload = MultipartUpload.open(chunked(file, 8), CONTENT_TYPE, "file", 60);
+        assertThrows(MaxUploadSizeExceededException.class, () -> upload.inputStream().readAllBytes());
+    }
+
+    /**
+     * @return The body, read at most the given number of bytes at a time.
+     */
+    private static InputStream chunked(String body, int chunk) {
+        return new FilterInputStream(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return super.read(bytes, offset, Math.min(length, chunk));
+            }
+        };
+    }
+}